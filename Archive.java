@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes the files of a Commit as a tar or zip archive, the way git
+ *  archive does, without checking them out.
+ *
+ *  Each file's content is streamed from its Blob file into the archive
+ *  through a fixed buffer, so memory holds the list of file names and
+ *  nothing that grows with their sizes.  Files are written in order of
+ *  name, with the Commit's time, so one Commit always gives the same
+ *  archive.  As in git, the Commit's UID is recorded in the archive: in a
+ *  pax global header of a tar, and as the comment of a zip.
+ *  @author Enran Wu
+ */
+class Archive {
+
+    /** The formats an archive can be written in. */
+    static final String TAR = "tar", ZIP = "zip";
+
+    /** Size of a tar block. */
+    private static final int BLOCK = 512;
+
+    /** Size of a tar record; the archive is padded to a whole one. */
+    private static final int RECORD = 20 * BLOCK;
+
+    /** Size of the output buffer and of the copy buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where the archive goes. */
+    private final OutputStream out;
+
+    /** Copy buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Number of bytes of tar written so far. */
+    private long written;
+
+    Archive(OutputStream sink) {
+        out = new BufferedOutputStream(sink, BUFFER_SIZE);
+    }
+
+    /** Writes the files of COMMIT in FORMAT, which is TAR or ZIP. */
+    void write(Commit commit, String format) throws IOException {
+        String[] names = commit.getFiles().keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        if (format.equals(ZIP)) {
+            writeZip(commit, names);
+        } else {
+            writeTar(commit, names);
+        }
+        out.flush();
+    }
+
+    /** Writes the files NAMES of COMMIT as a ustar archive. */
+    private void writeTar(Commit commit, String[] names) throws IOException {
+        long time = commit.getTime().getTime() / 1000;
+        byte[] comment = pax("comment", commit.getId().toHex());
+        writeHeader("pax_global_header", comment.length, time, 'g');
+        out.write(comment);
+        pad(comment.length);
+
+        for (String name: names) {
+            File file = blobFile(commit, name);
+            long length = Blob.contentLength(file);
+            if (!fitsHeader(name)) {
+                byte[] path = pax("path", name);
+                writeHeader("PaxHeader", path.length, time, 'x');
+                out.write(path);
+                pad(path.length);
+            }
+            writeHeader(name, length, time, '0');
+            copy(file, length);
+            pad(length);
+        }
+
+        // Two empty blocks end the archive, and it is padded to a record
+        long end = written + 2 * BLOCK;
+        end += (RECORD - end % RECORD) % RECORD;
+        Arrays.fill(buffer, 0, BLOCK, (byte) 0);
+        while (written < end) {
+            out.write(buffer, 0, BLOCK);
+            written += BLOCK;
+        }
+    }
+
+    /** Writes the files NAMES of COMMIT as a zip archive, compressed as
+     *  they are streamed in. */
+    private void writeZip(Commit commit, String[] names) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setComment(commit.getId().toHex());
+        long time = commit.getTime().getTime();
+        for (String name: names) {
+            File file = blobFile(commit, name);
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(time);
+            zip.putNextEntry(entry);
+            copy(file, Blob.contentLength(file), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /** Returns the Blob file of file NAME in COMMIT. */
+    private static File blobFile(Commit commit, String name) {
+        return Repository.objectFile(Repository.blobsDir(), commit.getFiles().get(name));
+    }
+
+    /** Copies the LENGTH bytes of content of the Blob file FILE into the
+     *  tar. */
+    private void copy(File file, long length) throws IOException {
+        copy(file, length, out);
+        written += length;
+    }
+
+    /** Copies the LENGTH bytes of content of the Blob file FILE to SINK. */
+    private void copy(File file, long length, OutputStream sink) throws IOException {
+        long copied = 0;
+        try (InputStream in = Blob.openContent(file)) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                sink.write(buffer, 0, n);
+                copied += n;
+            }
+        }
+        if (copied != length) {
+            throw new IOException("blob " + file.getName() + " is corrupt");
+        }
+        Trace.read(copied);
+    }
+
+    /** Pads an entry of LENGTH bytes out to a whole block. */
+    private void pad(long length) throws IOException {
+        int rest = (int) ((BLOCK - length % BLOCK) % BLOCK);
+        Arrays.fill(buffer, 0, rest, (byte) 0);
+        out.write(buffer, 0, rest);
+        written += length + rest;
+    }
+
+    /** Returns whether the file name NAME fits the name and prefix fields
+     *  of a tar header. */
+    private static boolean fitsHeader(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= 100) {
+            return true;
+        }
+        return splitAt(bytes) >= 0;
+    }
+
+    /** Returns the index of the slash at which the file name BYTES can be
+     *  split into a prefix of at most 155 bytes and a name of at most 100,
+     *  or -1 if there is none. */
+    private static int splitAt(byte[] bytes) {
+        for (int i = Math.min(bytes.length - 2, 155); i > 0; i -= 1) {
+            if (bytes[i] == '/' && bytes.length - i - 1 <= 100) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Writes a tar header for an entry NAME of LENGTH bytes, changed at
+     *  TIME seconds, of type TYPE.  A NAME too long for the header is cut
+     *  short; a pax header ahead of it gives it whole. */
+    private void writeHeader(String name, long length, long time, char type)
+            throws IOException {
+        byte[] header = new byte[BLOCK];
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= 100) {
+            System.arraycopy(bytes, 0, header, 0, bytes.length);
+        } else {
+            int slash = splitAt(bytes);
+            if (slash < 0) {
+                System.arraycopy(bytes, 0, header, 0, 100);
+            } else {
+                System.arraycopy(bytes, slash + 1, header, 0, bytes.length - slash - 1);
+                System.arraycopy(bytes, 0, header, 345, slash);
+            }
+        }
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, length);
+        octal(header, 136, 12, time);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        System.arraycopy("root".getBytes(StandardCharsets.US_ASCII), 0, header, 265, 4);
+        System.arraycopy("root".getBytes(StandardCharsets.US_ASCII), 0, header, 297, 4);
+
+        // The checksum is taken with its own field as spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b: header) {
+            sum += b & 0xff;
+        }
+        octal(header, 148, 7, sum);
+        out.write(header);
+        written += BLOCK;
+    }
+
+    /** Writes VALUE into the WIDTH bytes of HEADER at OFFSET as octal
+     *  digits ending with a NUL. */
+    private static void octal(byte[] header, int offset, int width, long value) {
+        String digits = Long.toOctalString(value);
+        int start = offset + width - 1 - digits.length();
+        Arrays.fill(header, offset, start, (byte) '0');
+        for (int i = 0; i < digits.length(); i += 1) {
+            header[start + i] = (byte) digits.charAt(i);
+        }
+        header[offset + width - 1] = 0;
+    }
+
+    /** Returns the pax record setting KEY to VALUE: its length in bytes,
+     *  the length included, then "KEY=VALUE" and a newline. */
+    private static byte[] pax(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = body + Integer.toString(body).length();
+        if (Integer.toString(length).length() > Integer.toString(body).length()) {
+            length += 1;
+        }
+        return (length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
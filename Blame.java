@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Works out which Commit last changed each line of a file.
+ *
+ *  The walk follows first parents back from a Commit and compares the
+ *  UID of the file's Blob in each Commit with the one in its parent.  A
+ *  Commit that leaves the UID unchanged cannot have touched any line, so
+ *  it is skipped without loading the Blob.  For a Commit in the
+ *  commit-graph, the parent is taken from the graph, and one whose
+ *  changed-path filter says it did not change the file is skipped without
+ *  loading the Commit either, so Commits are loaded only where the file
+ *  may have changed and for the lines blamed on them.  Only when the UID
+ *  changes is the parent's version loaded and diffed against the newer
+ *  one: lines in a changed region are blamed on the Commit that made the
+ *  change, and the rest are carried back to their place in the parent's
+ *  version.  Once no line is left unblamed the walk stops, so the work
+ *  done is proportional to the number of versions of the file, not the
+ *  number of Commits.
+ *  @author Enran Wu
+ */
+class Blame {
+
+    /** Lines of the file, as in the Commit blame started from. */
+    private final List<String> lines;
+
+    /** UID of the Commit that last changed each line. */
+    private final ObjectId[] commits;
+
+    /** The Commits lines are blamed on, once loaded. */
+    private final Map<ObjectId, Commit> blamed = new HashMap<>();
+
+    /** Blames the file NAME as tracked by the Commit HEAD, which must
+     *  track it. */
+    Blame(Commit head, String name) {
+        ObjectId version = head.getFiles().get(name);
+        List<String> current = Diff.lines(Blob.findBlob(version).getContent());
+        lines = current;
+        commits = new ObjectId[current.size()];
+        blamed.put(head.getId(), head);
+        CommitGraph graph = CommitGraph.read();
+
+        // Where each line of the current version is in lines, or -1 once
+        // the line has been blamed
+        int[] origin = new int[current.size()];
+        Arrays.setAll(origin, i -> i);
+        int live = origin.length;
+
+        // The Commit walked to, and the Commit itself if it was loaded
+        ObjectId commit = head.getId();
+        Commit known = head;
+        while (live > 0) {
+            int position = graph == null ? -1 : graph.find(commit);
+            ObjectId parentId;
+            if (position >= 0) {
+                parentId = graph.parent(position);
+            } else {
+                if (known == null) {
+                    known = Commit.findCommit(commit);
+                }
+                parentId = known.getParent();
+            }
+            if (parentId == null) {
+                break;
+            }
+            if (position >= 0 && !graph.mayHaveChanged(position, name)) {
+                commit = parentId;
+                known = null;
+                continue;
+            }
+            Commit parent = Commit.findCommit(parentId);
+            ObjectId parentVersion = parent.getFiles().get(name);
+            if (version.equals(parentVersion)) {
+                commit = parentId;
+                known = parent;
+                continue;
+            }
+            if (parentVersion == null) {
+                break;
+            }
+
+            List<String> older = Diff.lines(Blob.findBlob(parentVersion).getContent());
+            int[] olderOrigin = new int[older.size()];
+            Arrays.fill(olderOrigin, -1);
+            int nextA = 0, nextB = 0;
+            for (Diff.Edit edit: Diff.diff(older, current)) {
+                for (; nextB < edit.beginB; nextA += 1, nextB += 1) {
+                    olderOrigin[nextA] = origin[nextB];
+                }
+                for (int i = edit.beginB; i < edit.endB; i += 1) {
+                    if (origin[i] >= 0) {
+                        commits[origin[i]] = commit;
+                        live -= 1;
+                    }
+                }
+                nextA = edit.endA;
+                nextB = edit.endB;
+            }
+            for (; nextB < current.size(); nextA += 1, nextB += 1) {
+                olderOrigin[nextA] = origin[nextB];
+            }
+
+            current = older;
+            origin = olderOrigin;
+            version = parentVersion;
+            commit = parentId;
+            known = parent;
+        }
+
+        // Whatever is left was added by the Commit that added the file
+        for (int i: origin) {
+            if (i >= 0) {
+                commits[i] = commit;
+            }
+        }
+    }
+
+    /** Returns the lines of the file. */
+    List<String> getLines() {
+        return lines;
+    }
+
+    /** Returns the Commit that last changed line I of the file. */
+    Commit getCommit(int i) {
+        return blamed.computeIfAbsent(commits[i], Commit::findCommit);
+    }
+}
@@ -1,48 +1,97 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 /** Represents a gitlet Blob object.
+ *
+ *  A Blob file is a serialized Blob, which is the same HEADER for every
+ *  Blob, then the length of the content as four bytes, then the content
+ *  itself up to the end of the file.  openContent, content and write rely
+ *  on this to move content in and out of the store without deserializing
+ *  it, so it is never held whole unless it must be.
  *  @author Enran Wu
  */
 public class Blob implements Serializable {
 
-    /** Name of the Blob. */
-    private String name;
+    /** The UID Blobs are serialized with.  It is part of every Blob
+     *  file, and so of every Blob's UID, so it must not change with the
+     *  methods of the class.  Blobs of the first version of Gitlet, which
+     *  hashed the name of their file too, are rewritten by Format. */
+    private static final long serialVersionUID = 3952420954842723437L;
+
+    /** The bytes every Blob file starts with, ahead of the length. */
+    private static final byte[] HEADER = header();
+
+    /** Size of the buffer content is streamed through. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Size from which content is mapped rather than read. */
+    private static final int MAPPED = 1 << 20;
+
+    /** Name of the file the Blob was made from.  Not stored, so that the
+     *  UID depends on the content alone: the same content under two names,
+     *  or a file renamed unchanged, is one Blob. */
+    private transient String name;
 
     /** Serialized content of the Blob. */
     private byte[] content;
 
+    /** Cached UID of the Blob; a Blob never changes once made. */
+    private transient ObjectId id;
+
     /** Initiates a Blob object with given name and given File. */
     public Blob(String name, File file) {
         this.name = name;
         content = Utils.readContents(file);
     }
 
+    /** Initiates a Blob object with given name and given content. */
+    public Blob(String name, byte[] content) {
+        this.name = name;
+        this.content = content;
+    }
+
     /** Returns the Blob's content. */
     public byte[] getContent() {
         return content;
     }
 
-    /** Returns the Blob's name. */
+    /** Returns the Blob's name, or null for a Blob read back from its
+     *  file. */
     public String getName() {
         return name;
     }
 
     /** Returns the SHA-1 UID of the Blob. */
-    public String hash() {
-        return Utils.sha1((Object) Utils.serialize(this));
+    public ObjectId hash() {
+        if (id == null) {
+            id = Utils.sha1Id((Object) Utils.serialize(this));
+        }
+        return id;
     }
 
     /** Creates a file named Blob's UID with Blob. */
     public void createBlobFile() throws IOException {
-        File blobFile = Utils.join(Repository.BLOBS, this.hash());
+        File blobFile = Repository.newObjectFile(Repository.blobsDir(), this.hash());
         if (!blobFile.exists()) {
-            blobFile.createNewFile();
+            Utils.writeContentsAtomically(blobFile, (Object) Utils.serialize(this));
         }
-        Utils.writeObject(blobFile, this);
     }
 
     /** Finds the Blob in given file. */
@@ -52,7 +101,131 @@ public class Blob implements Serializable {
 
     /** Finds the Blob with the given name. */
     public static Blob findBlob(String name) {
-        File blobFile = Utils.join(Repository.BLOBS, name);
+        File blobFile = Repository.objectFile(Repository.blobsDir(), name);
         return Utils.readObject(blobFile, Blob.class);
     }
+
+    /** Finds the Blob with the given UID. */
+    public static Blob findBlob(ObjectId uid) {
+        Blob blob = findBlob(uid.toHex());
+        blob.id = uid;
+        return blob;
+    }
+
+    /** Returns HEADER, found by serializing an empty Blob. */
+    private static byte[] header() {
+        byte[] empty = Utils.serialize(new Blob(null, new byte[0]));
+        return Arrays.copyOf(empty, empty.length - 4);
+    }
+
+    /** Returns the length of the content of the Blob file FILE. */
+    static long contentLength(File file) {
+        return file.length() - HEADER.length - 4;
+    }
+
+    /** Opens the Blob file FILE at the start of the content, which runs
+     *  to the end of the stream.  A file not laid out as expected is read
+     *  whole instead. */
+    static InputStream openContent(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] header = new byte[HEADER.length];
+            in.readFully(header);
+            if (Arrays.equals(header, HEADER) && in.readInt() == contentLength(file)) {
+                return in;
+            }
+        } catch (EOFException excp) {
+            // Too short to be laid out as expected
+        }
+        in.close();
+        return new ByteArrayInputStream(findBlob(file).getContent());
+    }
+
+    /** Returns the content of the Blob file FILE.  A file of MAPPED bytes
+     *  or more is mapped into memory rather than read, so its pages come
+     *  from the page cache without a copy; smaller files are read, since
+     *  each mapping costs more than reading them and is held until it is
+     *  collected.  A file not laid out as expected is read whole. */
+    static ByteBuffer content(File file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPED) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                data = ByteBuffer.allocate((int) size);
+                while (data.hasRemaining()) {
+                    if (channel.read(data) < 0) {
+                        break;
+                    }
+                }
+                data.flip();
+            }
+        }
+        Trace.read(data.remaining());
+        int start = HEADER.length + 4;
+        if (data.remaining() >= start
+                && data.slice(0, HEADER.length).equals(ByteBuffer.wrap(HEADER))
+                && data.getInt(HEADER.length) == data.remaining() - start) {
+            return data.slice(start, data.remaining() - start);
+        }
+        return ByteBuffer.wrap(findBlob(file).getContent());
+    }
+
+    /** Stores the Blob whose content is the next LENGTH bytes of IN, and
+     *  returns its UID.  The content is streamed to a temporary file while
+     *  it is hashed, then renamed into place, so memory does not grow with
+     *  LENGTH. */
+    static ObjectId write(InputStream in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("blob too large: " + length + " bytes");
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        File temp = Files.createTempFile(Repository.blobsDir().toPath(), "blob-", ".tmp").toFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                byte[] prefix = Arrays.copyOf(HEADER, HEADER.length + 4);
+                for (int i = 0; i < 4; i += 1) {
+                    prefix[HEADER.length + i] = (byte) (length >>> (24 - 8 * i));
+                }
+                md.update(prefix);
+                out.write(prefix);
+                for (long left = length; left > 0; ) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    md.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    left -= n;
+                }
+            }
+            Trace.hashed(length);
+            ObjectId id = ObjectId.fromRaw(md.digest());
+            File target = Repository.newObjectFile(Repository.blobsDir(), id);
+            if (target.exists()) {
+                temp.delete();
+            } else {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Trace.written(length);
+            }
+            return id;
+        } catch (IOException excp) {
+            temp.delete();
+            throw excp;
+        }
+    }
+
+    /** Finds the Blob with the given UID, tracked under the given name. */
+    public static Blob findBlob(ObjectId uid, String name) {
+        Blob blob = findBlob(uid);
+        blob.name = name;
+        return blob;
+    }
 }
@@ -3,26 +3,34 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
 
 /** Represents a gitlet Branch object.
  *  @author Enran Wu
  */
 public class Branch implements Serializable {
 
+    /** The UID loose Branch files are written with, which must not change
+     *  with the methods of the class. */
+    private static final long serialVersionUID = 4650326173924487767L;
+
     /** Name of the Branch. */
     private String name;
 
     /** Current Commit, represented by UID, the Branch is referring to. */
-    private String currCommit;
+    private ObjectId currCommit;
 
     /** Initiates a Branch object with given name and given UID of current Commit. */
-    public Branch(String name, String currCommitId) {
+    public Branch(String name, ObjectId currCommitId) {
         this.name = name;
         this.currCommit = currCommitId;
     }
 
     /** Writes the Branch to the given File with its name. */
     public void writeTo(File file) throws IOException {
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
         if (!file.exists()) {
             file.createNewFile();
         }
@@ -34,10 +42,26 @@ public class Branch implements Serializable {
         return name;
     }
 
-    /** Finds the Branch with given name. */
+    /** Finds the Branch with given name, or returns null if there is none. */
     public static Branch findBranch(String branchName) {
-        File branchNameDIR = Utils.join(Repository.BRANCHES, branchName);
-        return Utils.readObject(branchNameDIR, Branch.class);
+        ObjectId id = Refs.local().get(branchName);
+        return id == null ? null : new Branch(branchName, id);
+    }
+
+    /** Returns whether a Branch with the given name exists. */
+    public static boolean exists(String branchName) {
+        return Refs.local().contains(branchName);
+    }
+
+    /** Returns the names of all Branches in lexicographic order,
+     *  including remote-tracking ones such as R1/master. */
+    public static List<String> names() {
+        return Refs.local().names();
+    }
+
+    /** Saves the Branch under its name in the current repository. */
+    public void save() throws IOException {
+        Refs.local().set(name, currCommit);
     }
 
     /** Finds the Branch with given file. */
@@ -46,12 +70,12 @@ public class Branch implements Serializable {
     }
 
     /** Returns the name of current Commit. */
-    public String getCurrCommit() {
+    public ObjectId getCurrCommit() {
         return currCommit;
     }
 
     /** Sets the current commit to the given Commit. */
-    public void setCurrCommit(String currCommit) {
+    public void setCurrCommit(ObjectId currCommit) {
         this.currCommit = currCommit;
     }
 
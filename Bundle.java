@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Moves history between repositories as a single file.
+ *
+ *  A bundle is written and read strictly sequentially.  It starts with a
+ *  text header:
+ *      # gitlet bundle v1
+ *      -<UID>            one line per prerequisite Commit (incremental only)
+ *      <UID> <branch>    one line per ref the bundle carries
+ *      (empty line)
+ *  followed by the object records, each of which is
+ *      1 byte   type: 'b' for a Blob, 'c' for a Commit
+ *      20 bytes raw UID of the object
+ *      8 bytes  length of the object file
+ *      ...      the object file, exactly as stored in .gitlet
+ *  and finally a single 0 byte.  Blobs come first and Commits oldest
+ *  first, so everything an object refers to is stored before it.
+ *
+ *  Since a UID is the SHA-1 of its object file, unbundling checks every
+ *  object as it streams by and never stores one that does not match.
+ *  @author Enran Wu
+ */
+class Bundle {
+
+    /** First line of every bundle. */
+    static final String SIGNATURE = "# gitlet bundle v1";
+
+    /** Record type of a Blob. */
+    private static final int BLOB = 'b';
+
+    /** Record type of a Commit. */
+    private static final int COMMIT = 'c';
+
+    /** Size of the copy buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Writes to FILE a bundle with branch BRANCHNAME, whose head is the
+     *  Commit with UID TIP, holding everything reachable from TIP except
+     *  what is reachable from the Commit with UID BASE, if BASE is not
+     *  null.  Returns the number of Commits written. */
+    static int create(File file, String branchName, ObjectId tip,
+                      ObjectId base) throws IOException {
+        Set<ObjectId> excluded = new HashSet<>();
+        if (base != null) {
+            excluded.addAll(ancestors(base));
+        }
+
+        // Commits to send, newest first
+        List<Commit> commits = new ArrayList<>();
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        Set<ObjectId> seen = new HashSet<>();
+        queue.add(tip);
+        seen.add(tip);
+        while (!queue.isEmpty()) {
+            ObjectId id = queue.poll();
+            if (excluded.contains(id)) {
+                continue;
+            }
+            Commit commit = Commit.findCommit(id);
+            commits.add(commit);
+            for (ObjectId parent: commit.getParents()) {
+                if (seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+
+        // Blobs those Commits introduce over their first parents
+        Set<ObjectId> blobs = new LinkedHashSet<>();
+        for (Commit commit: commits) {
+            Commit parent = null;
+            if (commit.getParent() != null) {
+                parent = Commit.findCommit(commit.getParent());
+            }
+            blobs.addAll(commit.changedBlobs(parent));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            StringBuilder header = new StringBuilder(SIGNATURE).append('\n');
+            if (base != null) {
+                header.append('-').append(base.toHex()).append('\n');
+            }
+            header.append(tip.toHex()).append(' ').append(branchName).append("\n\n");
+            out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (ObjectId blob: blobs) {
+                writeRecord(out, BLOB, blob,
+                        Repository.objectFile(Repository.blobsDir(), blob), buffer);
+            }
+            for (int i = commits.size() - 1; i >= 0; i -= 1) {
+                ObjectId id = commits.get(i).getId();
+                writeRecord(out, COMMIT, id,
+                        Repository.objectFile(Repository.commitsDir(), id), buffer);
+            }
+            out.write(0);
+        }
+        return commits.size();
+    }
+
+    /** Returns the UIDs of the Commit with UID ID and all its ancestors. */
+    private static Set<ObjectId> ancestors(ObjectId id) {
+        Set<ObjectId> result = new HashSet<>();
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        queue.add(id);
+        result.add(id);
+        while (!queue.isEmpty()) {
+            for (ObjectId parent: Commit.findCommit(queue.poll()).getParents()) {
+                if (result.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Writes the object record of TYPE and UID ID whose object file is
+     *  SOURCE to OUT, streaming it through BUFFER. */
+    private static void writeRecord(DataOutputStream out, int type, ObjectId id,
+                                    File source, byte[] buffer) throws IOException {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        id.copyRawTo(raw, 0);
+        out.write(type);
+        out.write(raw);
+        out.writeLong(source.length());
+        try (InputStream in = new FileInputStream(source)) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        Trace.read(source.length());
+    }
+
+    /** The refs a bundle carries, as read by unbundle. */
+    static class Ref {
+        /** Name of the branch. */
+        final String name;
+
+        /** UID of the branch head. */
+        final ObjectId id;
+
+        Ref(String name, ObjectId id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    /** Reads the bundle FILE into the object store, checking each object
+     *  against its UID, and returns the refs it carries.  Throws a
+     *  GitletException if the bundle is malformed or corrupt, or if the repository
+     *  lacks one of its prerequisite Commits. */
+    static List<Ref> unbundle(File file) throws IOException {
+        List<Ref> refs = new ArrayList<>();
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (!SIGNATURE.equals(readLine(in))) {
+                fail("Not a gitlet bundle.");
+            }
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                if (line.startsWith("-")) {
+                    String base = line.substring(1);
+                    if (!ObjectId.isHex(base)) {
+                        fail("Not a gitlet bundle.");
+                    }
+                    if (!Repository.objectFile(Repository.commitsDir(), base).isFile()) {
+                        fail("Bundle requires missing commit " + base + ".");
+                    }
+                } else {
+                    int space = line.indexOf(' ');
+                    if (space < 0 || !ObjectId.isHex(line.substring(0, space))) {
+                        fail("Not a gitlet bundle.");
+                    }
+                    refs.add(new Ref(line.substring(space + 1),
+                            ObjectId.fromHex(line.substring(0, space))));
+                }
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int type = in.read(); type != 0; type = in.read()) {
+                File dir;
+                if (type == BLOB) {
+                    dir = Repository.blobsDir();
+                } else if (type == COMMIT) {
+                    dir = Repository.commitsDir();
+                } else {
+                    fail("Bundle is truncated or corrupt.");
+                    return refs;
+                }
+                in.readFully(raw);
+                readRecord(in, ObjectId.fromRaw(raw), in.readLong(), dir, md, buffer);
+            }
+        } catch (EOFException excp) {
+            fail("Bundle is truncated or corrupt.");
+        }
+        return refs;
+    }
+
+    /** Streams the LENGTH-byte object with UID ID from IN into DIR,
+     *  checking it with MD.  The object is written to a temporary file and
+     *  only renamed into place once its hash matches. */
+    private static void readRecord(DataInputStream in, ObjectId id, long length,
+                                   File dir, MessageDigest md,
+                                   byte[] buffer) throws IOException {
+        File target = Repository.newObjectFile(dir, id);
+        File temp = new File(target.getPath() + ".tmp");
+        md.reset();
+        try (OutputStream out = target.exists() ? OutputStream.nullOutputStream()
+                : new FileOutputStream(temp)) {
+            for (long left = length; left > 0; ) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                left -= n;
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw excp;
+        }
+        Trace.hashed(length);
+        if (!ObjectId.fromRaw(md.digest()).equals(id)) {
+            temp.delete();
+            fail("Bundle is corrupt: object " + id + " does not match its contents.");
+        }
+        if (temp.exists()) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Trace.written(length);
+        }
+    }
+
+    /** Reads a header line terminated by a newline from IN. */
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder bytes = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            bytes.append((char) c);
+        }
+        return new String(bytes.toString().getBytes(StandardCharsets.ISO_8859_1),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Fails with the message MSG. */
+    private static void fail(String msg) {
+        throw new GitletException(msg);
+    }
+}
@@ -1,8 +1,17 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.regex.PatternSyntaxException;
 
 /** Available Commands for Gitlet.
  *  Note that the execution of these commands will mainly concerned
@@ -22,10 +31,9 @@ public class Commands {
     public static void init() throws IOException {
 
         // Exception Case
-        if (Repository.GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already exists "
+        if (Repository.gitletDir().exists()) {
+            throw new GitletException("A Gitlet version-control system already exists "
                     + "in the current directory.");
-            System.exit(0);
         }
 
         // Initiates folders and files
@@ -36,23 +44,14 @@ public class Commands {
 
         // Initiates first commit
         Commit initCommit = new Commit("initial commit", new Date(0), null);
-        File initCommitFile = Utils.join(Repository.COMMITS, initCommit.hash());
-        if (!initCommitFile.exists()) {
-            initCommitFile.createNewFile();
-        }
-        initCommit.writeTo(initCommitFile);
+        initCommit.createCommitFile();
 
         // Initiates master branch
-        Branch master = new Branch("master", initCommit.hash());
-        File masterFile = Utils.join(Repository.BRANCHES, "master");
-        if (!masterFile.exists()) {
-            masterFile.createNewFile();
-        }
-        master.writeTo(masterFile);
+        Branch master = new Branch("master", initCommit.getId());
+        master.save();
 
         // Set head to master branch
-        Repository.head = master.getName();
-        Utils.writeContents(Repository.HEAD, Repository.head);
+        Utils.writeContents(Repository.headFile(), master.getName());
     }
 
     /** Adds a copy of the file as it currently exists to the staging area
@@ -68,47 +67,28 @@ public class Commands {
      * @usage java gitlet.Main add [file name]
      */
     public static void add(String fileName) throws IOException {
-        File targetFile = Utils.join(Repository.CWD, fileName);
+        checkSparse(fileName);
+        File targetFile = Utils.join(Repository.cwd(), fileName);
 
         // Exception Case
         if (!targetFile.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw new NotFoundException("File does not exist.");
         }
 
-        // Set Up
+        // Set Up: the Stages are only appended to, never read
         Commit currCommit = Repository.findCurrCommit();
         Blob fileBlob = new Blob(fileName, targetFile);
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
-        rmStage.remove(fileBlob);
-
-        // File is already added
-        if (currCommit.contains(fileBlob) && addStage.contains(fileBlob)) {
-            addStage.remove(fileBlob);
-            Repository.updateStages(addStage, rmStage);
-            System.exit(0);
-        }
+        Stage.append(Repository.removedFile(), fileName, null);
 
-        // File is the same as the one in current commit
-        if (currCommit.contains(fileBlob) && !addStage.contains(fileBlob)) {
-            Repository.updateStages(addStage, rmStage);
-            System.exit(0);
-        }
-
-        // File is already removed
-        if (!currCommit.contains(fileBlob) && rmStage.contains(fileBlob)) {
-            rmStage.remove(fileBlob);
-            addStage.add(fileBlob);
-            fileBlob.createBlobFile();
-            Repository.updateStages(addStage, rmStage);
-            System.exit(0);
+        // File is the same as the one in current commit: unstage it
+        if (currCommit.contains(fileBlob)) {
+            Stage.append(Repository.addedFile(), fileName, null);
+            return;
         }
 
         // Otherwise
-        addStage.add(fileBlob);
         fileBlob.createBlobFile();
-        Repository.updateStages(addStage, rmStage);
+        Stage.append(Repository.addedFile(), fileName, fileBlob.hash());
     }
 
     /** Saves a snapshot of tracked files in the current commit
@@ -124,43 +104,33 @@ public class Commands {
      * @usage java gitlet.Main commit [message]
      */
     public static void commit(String message) throws IOException {
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
 
         // Both stages are empty
         if (Repository.isEmpty(addStage, rmStage)) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
 
         // Blank commit message
         if (message.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         }
 
         // Set Up
+        Trace.phase("build");
         Commit currCommit = Repository.findCurrCommit();
-        Commit newCommit = currCommit.copy(message);
+        Commit newCommit = currCommit.copy(message, new Date());
         newCommit.setParent(currCommit);
         addStage.addTo(newCommit);
         rmStage.rmFrom(newCommit);
 
-        // Checks the cases of equals to current branch
-        Branch dummyBranch = new Branch("", "");
-        for (String fileName: Utils.plainFilenamesIn(Repository.BRANCHES)) {
-            dummyBranch = Branch.findBranch(fileName);
-            if (dummyBranch.equals(Repository.findCurrBranch())) {
-                break;
-            }
-        }
-        dummyBranch.setCurrCommit(newCommit.hash());
-
+        Trace.phase("write");
+        newCommit.createCommitFile();
+        Branch currBranch = new Branch(Repository.headName(), newCommit.getId());
         Repository.clear(addStage, rmStage);
         Repository.updateStages(addStage, rmStage);
-        File dummyBranchFile = Utils.join(Repository.BRANCHES, dummyBranch.getName());
-        dummyBranch.writeTo(dummyBranchFile);
-        newCommit.createCommitFile();
+        currBranch.save();
     }
 
     /** Unstage the file if it is currently staged for addition.
@@ -171,29 +141,26 @@ public class Commands {
      * @usage java gitlet.Main rm [file name]
      */
     public static void rm(String fileName) {
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        Stage addStage = Stage.findStage(Repository.addedFile());
         Commit currCommit = Repository.findCurrCommit();
 
         // Exception
         if ((!addStage.contains(fileName)) && (!currCommit.contains(fileName))) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         }
 
         // File is added and not tracked in the current commit
         if (addStage.contains(fileName)) {
-            addStage.remove(fileName);
-            Repository.updateStages(addStage, rmStage);
-            System.exit(0);
+            Stage.append(Repository.addedFile(), fileName, null);
+            return;
         }
 
         // Otherwise i.e. tracked in the current commit
-        Blob currBlob = currCommit.getBlob(fileName);
-        rmStage.add(currBlob);
-        File cwdFile = Utils.join(Repository.CWD, fileName);
-        Utils.restrictedDelete(cwdFile);
-        Repository.updateStages(addStage, rmStage);
+        if (Sparse.read().includes(fileName)) {
+            File cwdFile = Utils.join(Repository.cwd(), fileName);
+            Utils.restrictedDelete(cwdFile);
+        }
+        Stage.append(Repository.removedFile(), fileName, currCommit.getFiles().get(fileName));
     }
 
     /** Starting at the current head commit, display information about each commit backwards
@@ -203,33 +170,152 @@ public class Commands {
      *  This set of commit nodes is called the commit’s history.
      *  For every node in this history, the information it should display is the commit id,
      *  the time the commit was made, and the commit message.
-     * @usage java gitlet.Main log
+     *  The walk stops as soon as the writer is done, i.e. once the limit is
+     *  reached, a commit older than --since is met or the reader goes away.
+     *  Given a path, only the commits that changed that file from their
+     *  first parent are shown.  Commits in the commit-graph are then
+     *  checked against their changed-path filters first, and only those
+     *  that may have changed the file are read.
+     * @param writer the LogWriter carrying the limits and output format
+     * @param path only show commits changing this file, or null for all
+     * @usage java gitlet.Main log [-n N] [--since DATE] [--until DATE]
+     *                              [--format FMT] [--json] [-- [file name]]
      */
-    public static void log() {
-        String currCommitId = Repository.findCurrCommit().getId();
+    public static void log(LogWriter writer, String path) {
+        if (path != null) {
+            logPath(writer, path);
+            return;
+        }
+        ObjectId currCommitId = Repository.findCurrBranch().getCurrCommit();
 
         // Keeps printing long as there is commit exists
+        Trace.phase("walk");
         while (currCommitId != null) {
-            Stage addStage = Stage.findStage(Repository.ADDED);
-            Stage rmStage = Stage.findStage(Repository.REMOVED);
             Commit currCommit = Commit.findCommit(currCommitId);
-            currCommit.print();
+            if (!writer.write(currCommitId, currCommit)) {
+                break;
+            }
             currCommitId = currCommit.getParent();
         }
+        writer.close();
+    }
+
+    /** Like log, showing only the commits that changed the file PATH. */
+    private static void logPath(LogWriter writer, String path) {
+        ObjectId currCommitId = Repository.findCurrBranch().getCurrCommit();
+        CommitGraph graph = CommitGraph.read();
+
+        Trace.phase("walk");
+        while (currCommitId != null) {
+            int position = graph == null ? -1 : graph.find(currCommitId);
+            if (position >= 0 && (writer.isTooOld(graph.time(position))
+                    || !graph.mayHaveChanged(position, path))) {
+                currCommitId = graph.parent(position);
+                continue;
+            }
+            Commit currCommit = Commit.findCommit(currCommitId);
+            ObjectId before = null;
+            if (currCommit.getParent() != null) {
+                before = Commit.findCommit(currCommit.getParent()).getFiles().get(path);
+            }
+            if (!Objects.equals(before, currCommit.getFiles().get(path))
+                    && !writer.write(currCommitId, currCommit)) {
+                break;
+            }
+            currCommitId = currCommit.getParent();
+        }
+        writer.close();
+    }
+
+    /** Sets the sparse-checkout patterns to the given path prefixes, or
+     *  removes them if there are none, and brings the working directory in
+     *  line: files of the head commit newly outside the patterns are
+     *  deleted, and those newly inside are written if missing.  Refuses to
+     *  delete a file whose content differs from the head commit's.
+     * @param patterns the path prefixes to keep, or null to keep everything
+     * @usage java gitlet.Main sparse-checkout set [path prefix] ...
+     *        java gitlet.Main sparse-checkout disable
+     */
+    public static void sparseCheckout(List<String> patterns) throws IOException {
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
+
+        // Exception Case 1: Uncommitted changes
+        if (!addStage.isEmpty() || !rmStage.isEmpty()) {
+            throw new UncommittedChangesException("You have uncommitted changes.");
+        }
+
+        Commit currCommit = Repository.findCurrCommit();
+        Sparse before = Sparse.read();
+        Sparse after = Sparse.of(patterns);
+
+        // Exception Case 2: Modified files that would be deleted
+        List<String> leaving = new ArrayList<>();
+        for (String fileName: before.filter(currCommit.getNames())) {
+            if (!after.includes(fileName)) {
+                File file = Utils.join(Repository.cwd(), fileName);
+                if (file.isFile() && !new Blob(fileName, file).hash()
+                        .equals(currCommit.getFiles().get(fileName))) {
+                    throw new UncommittedChangesException("There is a modified file outside the new "
+                            + "patterns; add and commit it first.");
+                }
+                leaving.add(fileName);
+            }
+        }
+
+        if (patterns == null) {
+            Sparse.disable();
+        } else {
+            Sparse.write(patterns);
+        }
+        Trace.phase("checkout");
+        for (String fileName: leaving) {
+            Repository.deleteWorkingFile(fileName);
+        }
+        for (String fileName: after.filter(currCommit.getNames())) {
+            if (!before.includes(fileName)
+                    && !Utils.join(Repository.cwd(), fileName).exists()) {
+                checkoutFile(currCommit, fileName);
+            }
+        }
+    }
+
+    /** Prints the sparse-checkout patterns, one per line.
+     * @usage java gitlet.Main sparse-checkout list
+     */
+    public static void sparseCheckoutList() {
+        for (String pattern: Sparse.read().getPatterns()) {
+            Repository.out().println(pattern);
+        }
+    }
+
+    /** Writes the commit-graph: an index of every commit's parents and
+     *  time, with a filter of the files it changed, used to speed up
+     *  path-limited log.
+     * @usage java gitlet.Main commit-graph write
+     */
+    public static void commitGraph() throws IOException {
+        Trace.phase("write");
+        int count = CommitGraph.write();
+        Repository.out().printf("Wrote commit-graph with %d commits%n", count);
     }
 
     /** Like log, except displays information about all commits ever made.
      *  The order of the commits does not matter.
-     * @usage java gitlet.Main global-log
+     * @param writer the LogWriter carrying the limits and output format
+     * @usage java gitlet.Main global-log [-n N] [--since DATE] [--until DATE]
+     *                                     [--format FMT] [--json]
      */
-    public static void globalLog() {
-
-        for (String fileName: Utils.plainFilenamesIn(Repository.COMMITS)) {
-            Stage addStage = Stage.findStage(Repository.ADDED);
-            Stage rmStage = Stage.findStage(Repository.REMOVED);
-            Commit currCommit = Commit.findCommit(fileName);
-            currCommit.print();
+    public static void globalLog(LogWriter writer) {
+        Trace.phase("walk");
+        for (String fileName: Repository.objectNames(Repository.commitsDir())) {
+            if (writer.isDone()) {
+                break;
+            }
+            ObjectId currCommitId = ObjectId.fromHex(fileName);
+            writer.write(currCommitId, Commit.findCommit(currCommitId));
         }
+        writer.close();
     }
 
     /** Prints out the ids of all commits that have the given commit message, one per line.
@@ -243,19 +329,17 @@ public class Commands {
         ArrayList<String> ids = new ArrayList<>();
 
         // Gets IDs of all commits with the given message and stores them in ids
-        for (String fileName: Utils.plainFilenamesIn(Repository.COMMITS)) {
+        for (String fileName: Repository.objectNames(Repository.commitsDir())) {
             Commit currCommit = Commit.findCommit(fileName);
             String currMessage = currCommit.getMessage();
-            String currCommitId = currCommit.hash();
             if (currMessage.equals(message)) {
-                ids.add(currCommitId);
+                ids.add(fileName);
             }
         }
 
         // Exception Case
         if (ids.isEmpty()) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw new NotFoundException("Found no commit with that message.");
         }
 
         // Prints out all the IDs in ids
@@ -263,49 +347,74 @@ public class Commands {
     }
 
     /** Displays what branches currently exist, and marks the current branch with a *.
-     *  Also displays what files have been staged for addition or removal.
+     *  Also displays what files have been staged for addition or removal,
+     *  and which of those together amount to a rename.
      * @usage java gitlet.Main status
      */
     public static void status() {
         Set<String> tracker = new TreeSet<String>();
 
         // Branches Case
-        System.out.println("=== Branches ===");
-        for (String fileName: Utils.plainFilenamesIn(Repository.BRANCHES)) {
-            Branch dummy = Branch.findBranch(fileName);
-            tracker.add(dummy.getName());
-        }
-        Branch currBranch = Repository.findCurrBranch();
+        Repository.out().println("=== Branches ===");
+        tracker.addAll(Branch.names());
+        String head = Repository.headName();
         for (String fileName: tracker) {
-            Branch dummy = Branch.findBranch(fileName);
-            if (dummy.equals(currBranch)) {
+            if (fileName.equals(head)) {
                 fileName = "*" + fileName;
             }
-            System.out.println(fileName);
+            Repository.out().println(fileName);
         }
-        System.out.println();
+        Repository.out().println();
         tracker.clear();
 
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        Trace.phase("stages");
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
 
         // Staged Files Case
         tracker.addAll(addStage.getNames());
-        System.out.println("=== Staged Files ===");
+        Repository.out().println("=== Staged Files ===");
         Repository.printLineByLine(tracker);
-        System.out.println();
+        Repository.out().println();
         tracker.clear();
 
         // Removed Files Case
         tracker.addAll(rmStage.getNames());
-        System.out.println("=== Removed Files ===");
+        Repository.out().println("=== Removed Files ===");
         Repository.printLineByLine(tracker);
-        System.out.println();
+        Repository.out().println();
         tracker.clear();
 
+        // Renamed Files Case, shown only when a staged removal and a
+        // staged addition are the same or a similar file
+        Trace.phase("renames");
+        for (Map.Entry<String, String> rename: stagedRenames(rmStage, addStage).entrySet()) {
+            tracker.add(rename.getKey() + " -> " + rename.getValue());
+        }
+        if (!tracker.isEmpty()) {
+            Repository.out().println("=== Renamed Files ===");
+            Repository.printLineByLine(tracker);
+            Repository.out().println();
+            tracker.clear();
+        }
+
         // Others
-        System.out.println("=== Modifications Not Staged For Commit ===" + "\n");
-        System.out.println("=== Untracked Files ===" + "\n");
+        Repository.out().println("=== Modifications Not Staged For Commit ===" + "\n");
+        Repository.out().println("=== Untracked Files ===" + "\n");
+    }
+
+    /** Returns the staged removals of RMSTAGE that, with a staged addition
+     *  of ADDSTAGE, amount to a rename, each mapped to the name it was
+     *  renamed to, in order. */
+    static Map<String, String> stagedRenames(Stage rmStage, Stage addStage) {
+        Map<String, String> result = new TreeMap<>();
+        for (Renames.Pair pair: Renames.detect(rmStage.getFiles(), addStage.getFiles(),
+                Renames.DEFAULT_THRESHOLD, id -> Blob.findBlob(id).getContent())) {
+            if (!pair.copy) {
+                result.put(pair.from, pair.to);
+            }
+        }
+        return result;
     }
 
     /** Takes the version of the file as it exists in the head commit and puts
@@ -316,17 +425,17 @@ public class Commands {
      * @usage java gitlet.Main checkout -- [file name]
      */
     public static void checkout(String fileName) throws IOException {
+        checkSparse(fileName);
         Commit currCommit = Repository.findCurrCommit();
 
         if (!currCommit.contains(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new NotFoundException("File does not exist in that commit.");
         }
 
         // Checkout Process
         Blob target = currCommit.getBlob(fileName);
         byte[] content = target.getContent();
-        File file = Utils.join(Repository.CWD, fileName);
+        File file = Utils.join(Repository.cwd(), fileName);
         if (!file.exists()) {
             file.createNewFile();
         }
@@ -346,30 +455,45 @@ public class Commands {
             commitID = Repository.getFullId(commitID);
         }
 
-        File targetCommitFile = Utils.join(Repository.COMMITS, commitID);
+        File targetCommitFile = Repository.objectFile(Repository.commitsDir(), commitID);
 
         // Exception Case 1: Invalid Commit ID
-        if (!targetCommitFile.exists())  {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        if (!targetCommitFile.isFile())  {
+            throw new NotFoundException("No commit with that id exists.");
         }
 
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
         Commit targetCommit = Commit.findCommit(targetCommitFile);
 
         // Exception Case 2: File not exist in commit
         if (!targetCommit.contains(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new NotFoundException("File does not exist in that commit.");
         }
 
+        // Exception Case 3: File outside the sparse-checkout patterns
+        checkSparse(fileName);
+
         // Checkout Process
-        Commit currCommit = Commit.findCommit(targetCommitFile);
-        Blob target = currCommit.getBlob(fileName);
+        checkoutFile(targetCommit, fileName);
+    }
+
+    /** Throws a GitletException if the file with the given name is outside
+     *  the sparse-checkout patterns. */
+    private static void checkSparse(String fileName) {
+        if (!Sparse.read().includes(fileName)) {
+            throw new GitletException("File is outside the sparse-checkout patterns.");
+        }
+    }
+
+    /** Writes the version of the file with the given name tracked by
+     *  the given Commit into the working directory. */
+    private static void checkoutFile(Commit commit, String fileName) throws IOException {
+        Blob target = commit.getBlob(fileName);
         byte[] content = target.getContent();
-        File file = Utils.join(Repository.CWD, fileName);
+        File file = Utils.join(Repository.cwd(), fileName);
         if (!file.exists()) {
+            file.getParentFile().mkdirs();
             file.createNewFile();
         }
         Utils.writeContents(file, content);
@@ -387,14 +511,12 @@ public class Commands {
      * @usage java gitlet.Main checkout [branch name]
      */
     public static void checkoutBranch(String branchName) throws IOException {
-        File branchFile = Utils.join(Repository.BRANCHES, branchName);
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
 
         // Exception Case 1
-        if (!branchFile.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("No such branch exists.");
         }
 
         Branch currBranch = Repository.findCurrBranch();
@@ -404,41 +526,24 @@ public class Commands {
 
         // Exception Case 2
         if (targetBranch.equals(currBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw new GitletException("No need to checkout the current branch.");
         }
 
-        Repository.clear(addStage, rmStage);
-        Repository.updateStages(addStage, rmStage);
-
-        for (String fileName: targetCommit.getNames()) {
-            // Exception Case 3 for untrack files
-            File targetFile = Utils.join(Repository.CWD, fileName);
-            if (targetFile.exists()) {
-                Blob targetBlob = new Blob(fileName, targetFile);
-                File blobFile = Utils.join(Repository.BLOBS, targetBlob.hash());
-                if (!blobFile.exists()) {
-                    System.out.println("There is an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                    System.exit(0);
-                }
-            }
-            // Checkout Process
-            checkout(targetCommit.getId(), fileName);
+        // Exception Case 3
+        if (Repository.checkedOutIn(branchName) != null) {
+            throw new GitletException("That branch is already checked out in another worktree.");
         }
 
-        // Delete files as necessary
-        for (String fileName: currCommit.getNames()) {
-            File targetFile = Utils.join(Repository.CWD, fileName);
-            if (targetFile.exists() && !targetCommit.contains(fileName)) {
-                Utils.restrictedDelete(targetFile);
-            }
-        }
+        // Exception Case 4 for untrack files
+        checkUntracked(targetCommit);
 
-        // Update branch and head
-        targetBranch.writeTo(branchFile);
-        Repository.head = targetBranch.getName();
-        Utils.writeContents(Repository.HEAD, Repository.head);
+        Repository.clear(addStage, rmStage);
+        Repository.updateStages(addStage, rmStage);
+        checkoutCommit(currCommit, targetCommit);
+
+        // Update head
+        Trace.phase("refs");
+        Utils.writeContents(Repository.headFile(), targetBranch.getName());
     }
 
     /** Creates a new branch with the given name, and points it at the current head commit.
@@ -451,21 +556,14 @@ public class Commands {
      * @usage java gitlet.Main branch [branch name]
      */
     public static void branch(String branchName) throws IOException {
-        File newBranchFile = Utils.join(Repository.BRANCHES, branchName);
-
         // Exception Case
-        if (newBranchFile.exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (Branch.exists(branchName)) {
+            throw new GitletException("A branch with that name already exists.");
         }
 
         Branch currBranch = Repository.findCurrBranch();
-        Commit currCommit = Repository.findCurrCommit();
-        Branch newBranch = new Branch(branchName, currCommit.getId());
-        newBranch.writeTo(newBranchFile);
-        if (!newBranchFile.exists()) {
-            newBranchFile.createNewFile();
-        }
+        Branch newBranch = new Branch(branchName, currBranch.getCurrCommit());
+        newBranch.save();
     }
 
     /** Deletes the branch with the given name.
@@ -476,24 +574,24 @@ public class Commands {
      * @usage java gitlet.Main rm-branch [branch name]
      */
     public static void rmBranch(String branchName) {
-        File branchFile = Utils.join(Repository.BRANCHES, branchName);
-
         // Exception Case 1
-        if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit((0));
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("A branch with that name does not exist.");
         }
 
         // Exception Case 2
-        Repository.head = Utils.readContentsAsString(Repository.HEAD);
-        Branch currBranch = Branch.findBranch(Repository.head);
+        Branch currBranch = Repository.findCurrBranch();
         Branch targetBranch = Branch.findBranch(branchName);
         if (targetBranch.equals(currBranch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
+        }
+
+        // Exception Case 3
+        if (Repository.checkedOutIn(branchName) != null) {
+            throw new GitletException("Cannot remove a branch checked out in another worktree.");
         }
 
-        branchFile.delete();
+        Refs.local().delete(branchName);
     }
 
     /** Checks out all the files tracked by the given commit.
@@ -507,97 +605,865 @@ public class Commands {
         if (commitID.length() < 40) {
             commitID = Repository.getFullId(commitID);
         }
-        File commitFile = Utils.join(Repository.COMMITS, commitID);
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+        File commitFile = Repository.objectFile(Repository.commitsDir(), commitID);
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
 
         // Exception Case 1 for non exist ID
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        if (!commitFile.isFile()) {
+            throw new NotFoundException("No commit with that id exists.");
         }
 
+        Commit targetCommit = Commit.findCommit(commitID);
+
+        // Exception Case 2 for untrack files
+        checkUntracked(targetCommit);
+
         Repository.clear(addStage, rmStage);
         Repository.updateStages(addStage, rmStage);
-        Commit targetCommit = Commit.findCommit(commitID);
+        Commit currCommit = Repository.findCurrCommit();
+        Branch currBranch = Repository.findCurrBranch();
+        checkoutCommit(currCommit, targetCommit);
 
-        for (String fileName: targetCommit.getNames()) {
-            File targetFile = Utils.join(Repository.CWD, fileName);
-            // Exception Case 2 for untrack files
-            if (targetFile.exists()) {
-                Blob targetBlob = new Blob(fileName, targetFile);
-                File blobFile = Utils.join(Repository.BLOBS, targetBlob.hash());
-                if (!blobFile.exists()) {
-                    System.out.println("There is an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                    System.exit(0);
-                }
+        // Update branch and head branch
+        Trace.phase("refs");
+        currBranch.setCurrCommit(targetCommit.getId());
+        currBranch.save();
+    }
+
+    /** Throws a GitletException if a file tracked by the given Commit would
+     *  overwrite a file in the working directory that is not tracked: one
+     *  the head Commit does not track and that is not staged for addition.
+     *  A file is judged by its name, since a Blob with the same content may
+     *  well be stored for another file.  Files outside the sparse-checkout
+     *  patterns are never written, so they are not looked for. */
+    private static void checkUntracked(Commit targetCommit) {
+        Trace.phase("untracked-check");
+        Commit currCommit = Repository.findCurrCommit();
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        for (String fileName: Sparse.read().filter(targetCommit.getNames())) {
+            if (!currCommit.contains(fileName) && !addStage.contains(fileName)
+                    && Utils.join(Repository.cwd(), fileName).exists()) {
+                throw new UncommittedChangesException("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
             }
-            // Checkout Process
-            checkout(targetCommit.getId(), fileName);
+        }
+    }
+
+    /** Replaces the files of the current Commit in the working directory
+     *  with those of the target Commit, leaving out the files outside the
+     *  sparse-checkout patterns. */
+    private static void checkoutCommit(Commit currCommit, Commit targetCommit)
+            throws IOException {
+        Sparse sparse = Sparse.read();
+        Trace.phase("checkout");
+        for (String fileName: sparse.filter(targetCommit.getNames())) {
+            checkoutFile(targetCommit, fileName);
         }
 
-        Commit currCommit = Repository.findCurrCommit();
-        Branch currBranch = Repository.findCurrBranch();
         // Delete files as necessary
-        for (String fileName: currCommit.getNames()) {
-            File targetFile = Utils.join(Repository.CWD, fileName);
-            if (targetFile.exists() && !targetCommit.contains(fileName)) {
-                Utils.restrictedDelete(targetFile);
+        Trace.phase("cleanup");
+        for (String fileName: sparse.filter(currCommit.getNames())) {
+            if (!targetCommit.contains(fileName)) {
+                Repository.deleteWorkingFile(fileName);
             }
         }
-
-        // Update branch and head branch
-        currBranch.setCurrCommit(commitID);
-        File headBranchFile = Utils.join(Repository.BRANCHES, Repository.head);
-        currBranch.writeTo(headBranchFile);
     }
 
-    /** Merges files from the given branch into the current branch.
-     * @usage java gitlet.Main merge [branch name]
-     * NOTE: currently only implemented exception cases
+    /** Merges files from the given branch into the current branch, and
+     * commits the result with both branch heads as parents.  Files changed
+     * on both sides since the split point are merged line by line, and
+     * lines changed differently on both sides are left in conflict blocks.
+     * With --dry-run, prints the files the merge would change and the
+     * conflicts it would leave, without touching the working directory,
+     * the stages or the branches.
+     * @param branchName name of the given branch
+     * @param dryRun whether to only report the result
+     * @return the result of the merge, or null if the current branch was
+     *         or would be fast-forwarded
+     * @usage java gitlet.Main merge [--dry-run] [branch name]
      */
-    public static void merge(String branchName) throws IOException {
-        Stage addStage = Stage.findStage(Repository.ADDED);
-        Stage rmStage = Stage.findStage(Repository.REMOVED);
+    public static Merge merge(String branchName, boolean dryRun) throws IOException {
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
 
         // Exception Case 1: Uncommitted changes
         if (!addStage.isEmpty() || !rmStage.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new UncommittedChangesException("You have uncommitted changes.");
         }
 
         // Exception Case 2: Nonexistent branch
-        File targetBranchFile = Utils.join(Repository.BRANCHES, branchName);
-        if (!targetBranchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("A branch with that name does not exist.");
         }
 
         // Exception Case 3: Merge itself
         Branch targetBranch = Branch.findBranch(branchName);
         Branch currBranch = Repository.findCurrBranch();
         if (currBranch.getName().equals(targetBranch.getName())) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
 
         Commit targetCommit = Commit.findCommit(targetBranch.getCurrCommit());
-        // Exception Case 3: Untracked files
-        for (String fileName: targetCommit.getNames()) {
-            File targetFile = Utils.join(Repository.CWD, fileName);
-            if (targetFile.exists()) {
-                Blob targetBlob = new Blob(fileName, targetFile);
-                File blobFile = Utils.join(Repository.BLOBS, targetBlob.hash());
-                if (!blobFile.exists()) {
-                    System.out.println("There is an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                    System.exit(0);
+        // Exception Case 4: Untracked files
+        checkUntracked(targetCommit);
+
+        // Given branch is already merged
+        Trace.phase("split-point");
+        ObjectId splitPoint = History.splitPoint(currBranch.getCurrCommit(),
+                targetCommit.getId());
+        if (targetCommit.getId().equals(splitPoint)) {
+            throw new GitletException("Given branch is an ancestor of the current branch.");
+        }
+
+        // Current branch is behind the given branch
+        Commit currCommit = Repository.findCurrCommit();
+        if (currBranch.getCurrCommit().equals(splitPoint)) {
+            if (dryRun) {
+                Repository.out().println("Current branch would be fast-forwarded.");
+                return null;
+            }
+            checkoutCommit(currCommit, targetCommit);
+            currBranch.setCurrCommit(targetCommit.getId());
+            currBranch.save();
+            Repository.out().println("Current branch fast-forwarded.");
+            return null;
+        }
+
+        Trace.phase("merge");
+        Commit splitCommit = splitPoint == null
+                ? new Commit("", new Date(0), null) : Commit.findCommit(splitPoint);
+        Merge result = new Merge(splitCommit, currCommit, targetCommit);
+        if (dryRun) {
+            printMerge(currCommit, result);
+            return result;
+        }
+
+        // Store merged content, then write only the files that change and
+        // are inside the sparse-checkout patterns
+        Trace.phase("write");
+        for (Blob blob: result.getCreated().values()) {
+            blob.createBlobFile();
+        }
+        Sparse sparse = Sparse.read();
+        for (Map.Entry<String, ObjectId> entry: result.getFiles().entrySet()) {
+            if (sparse.includes(entry.getKey())
+                    && !entry.getValue().equals(currCommit.getFiles().get(entry.getKey()))) {
+                Blob blob = result.getCreated().get(entry.getKey());
+                if (blob == null) {
+                    blob = Blob.findBlob(entry.getValue());
+                }
+                File file = Utils.join(Repository.cwd(), entry.getKey());
+                file.getParentFile().mkdirs();
+                Utils.writeContents(file, (Object) blob.getContent());
+            }
+        }
+        for (String fileName: sparse.filter(currCommit.getNames())) {
+            if (!result.getFiles().containsKey(fileName)) {
+                Repository.deleteWorkingFile(fileName);
+            }
+        }
+
+        Commit mergeCommit = new Commit("Merged " + branchName + " into "
+                + currBranch.getName() + ".", new Date(), currCommit.getId());
+        mergeCommit.setSecondParent(targetCommit.getId());
+        for (Map.Entry<String, ObjectId> entry: result.getFiles().entrySet()) {
+            mergeCommit.putFile(entry.getKey(), entry.getValue());
+        }
+        mergeCommit.createCommitFile();
+        Trace.phase("refs");
+        currBranch.setCurrCommit(mergeCommit.getId());
+        currBranch.save();
+        if (!result.getConflicts().isEmpty()) {
+            Repository.out().println("Encountered a merge conflict.");
+        }
+        return result;
+    }
+
+    /** Prints the files RESULT would change in CURRCOMMIT, and its
+     *  conflicts, for merge --dry-run. */
+    private static void printMerge(Commit currCommit, Merge result) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("=== Merge Result ===");
+        TreeSet<String> names = new TreeSet<>(currCommit.getNames());
+        names.addAll(result.getFiles().keySet());
+        for (String name: names) {
+            ObjectId before = currCommit.getFiles().get(name);
+            ObjectId after = result.getFiles().get(name);
+            if (before == null) {
+                lines.add("added: " + name);
+            } else if (after == null) {
+                lines.add("removed: " + name);
+            } else if (!before.equals(after)) {
+                lines.add("modified: " + name);
+            }
+        }
+        lines.add("");
+        lines.add("=== Conflicts ===");
+        lines.addAll(result.getConflicts());
+        lines.add("");
+        Repository.printLineByLine(lines);
+    }
+
+    /** Replays the commits of the current branch since it split from the
+     *  given branch on top of that branch's head, and moves the current
+     *  branch to the last of them.  Merge commits are replayed as their
+     *  changes against their first parent, and commits whose changes the
+     *  given branch already has are dropped.  The replay is done in memory
+     *  and the new commits are written together, so the working directory
+     *  is updated once, at the end, and a conflict leaves everything as it
+     *  was.
+     * @param upstream name of the branch, or id of the commit, to replay onto
+     * @return the replay done, or null if the current branch was up to date
+     * @usage java gitlet.Main rebase [branch name]
+     */
+    public static Replay rebase(String upstream) throws IOException {
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
+
+        // Exception Case 1: Uncommitted changes
+        if (!addStage.isEmpty() || !rmStage.isEmpty()) {
+            throw new UncommittedChangesException("You have uncommitted changes.");
+        }
+
+        // Exception Case 2: Nonexistent branch or commit
+        Commit ontoCommit = commitWithId(upstream);
+
+        Trace.phase("split-point");
+        Branch currBranch = Repository.findCurrBranch();
+        Commit currCommit = Repository.findCurrCommit();
+        ObjectId splitPoint = History.splitPoint(currCommit.getId(), ontoCommit.getId());
+        if (ontoCommit.getId().equals(splitPoint)) {
+            Repository.out().println("Current branch is up to date.");
+            return null;
+        }
+
+        Trace.phase("replay");
+        Replay replay = new Replay(ontoCommit);
+        for (Commit commit: Replay.toReplay(currCommit, ontoCommit.getId(), splitPoint)) {
+            replay.pick(commit);
+        }
+        finishReplay(currBranch, currCommit, replay);
+        return replay;
+    }
+
+    /** Applies the changes each given commit made to its parent on top of
+     *  the head commit, in order, as new commits on the current branch.  A
+     *  commit whose changes the head already has is dropped.  As with
+     *  rebase, nothing is written until every commit has been applied, and
+     *  a conflict leaves everything as it was.
+     * @param commitIDs ids of the commits or names of branches
+     * @return the replay done
+     * @usage java gitlet.Main cherry-pick [commit id] ...
+     */
+    public static Replay cherryPick(List<String> commitIDs) throws IOException {
+        Stage addStage = Stage.findStage(Repository.addedFile());
+        Stage rmStage = Stage.findStage(Repository.removedFile());
+
+        // Exception Case 1: Uncommitted changes
+        if (!addStage.isEmpty() || !rmStage.isEmpty()) {
+            throw new UncommittedChangesException("You have uncommitted changes.");
+        }
+
+        // Exception Case 2: Nonexistent or merge commits
+        List<Commit> picks = new ArrayList<>();
+        for (String commitID: commitIDs) {
+            Commit commit = commitWithId(commitID);
+            if (commit.getSecondParent() != null) {
+                throw new GitletException("Cannot cherry-pick a merge commit.");
+            }
+            picks.add(commit);
+        }
+
+        Trace.phase("replay");
+        Branch currBranch = Repository.findCurrBranch();
+        Commit currCommit = Repository.findCurrCommit();
+        Replay replay = new Replay(currCommit);
+        for (Commit commit: picks) {
+            replay.pick(commit);
+        }
+        finishReplay(currBranch, currCommit, replay);
+        return replay;
+    }
+
+    /** Writes the commits REPLAY made, checks out its tip in place of
+     *  CURRCOMMIT, the head commit, and points CURRBRANCH at it. */
+    private static void finishReplay(Branch currBranch, Commit currCommit, Replay replay)
+            throws IOException {
+        Commit tip = replay.tip();
+
+        // Exception Case: Untracked files
+        checkUntracked(tip);
+
+        Trace.phase("write");
+        replay.write();
+        checkoutCommit(currCommit, tip);
+        Trace.phase("refs");
+        currBranch.setCurrCommit(tip.getId());
+        currBranch.save();
+    }
+
+    /** Reports what the .gitlet directory holds: object counts and sizes
+     *  by type, average files per commit, branch and stage sizes, and the
+     *  largest blobs.  Sizes are read from file metadata in one pass over
+     *  each object directory.
+     * @param json whether to print a single JSON object instead of text
+     * @usage java gitlet.Main stats [--json]
+     */
+    public static void stats(boolean json) {
+        Stats stats = Stats.collect();
+        if (json) {
+            stats.printJson();
+        } else {
+            stats.print();
+        }
+    }
+
+    /** Finds the objects reachable from any branch or from the staging area
+     *  and reports how many others there are.  With --prune, deletes the
+     *  unreachable ones not modified within the grace period (two weeks by
+     *  default; --prune=now deletes them all).  Branches are packed as by
+     *  pack-refs, and a commit-graph is written again without the commits
+     *  deleted.
+     * @param prune whether to delete unreachable objects
+     * @param grace the grace period, in milliseconds
+     * @usage java gitlet.Main gc [--prune[=now|Nd|Nh|Nm|Ns]]
+     */
+    public static void gc(boolean prune, long grace) throws IOException {
+        GarbageCollector collector = new GarbageCollector();
+        Trace.phase("refs");
+        Refs.local().pack();
+        Trace.phase("mark");
+        collector.mark();
+        Trace.phase("sweep");
+        collector.sweep(grace, prune);
+        Repository.out().printf("%d reachable objects%n", collector.reachable());
+        Repository.out().printf("%s %d unreachable objects (%d bytes)%n",
+                prune ? "Removed" : "Found", collector.removed(), collector.freed());
+        if (collector.recent() > 0) {
+            Repository.out().printf("Kept %d unreachable objects newer than the grace period%n",
+                    collector.recent());
+        }
+    }
+
+    /** Moves every branch written since the last pack into the packed-refs
+     *  file, so that listing branches takes a single read.
+     * @usage java gitlet.Main pack-refs
+     */
+    public static void packRefs() {
+        Repository.out().printf("Packed %d refs%n", Refs.local().pack());
+    }
+
+    /** Checks the integrity of the repository: re-hashes every object,
+     *  and checks that the parents and blobs of every commit, the commit of
+     *  every branch and the staged blobs all exist.  Prints each problem
+     *  found, then a summary.  With --connectivity-only, objects are not
+     *  re-hashed and blobs are not read.
+     * @param connectivityOnly whether to only check references
+     * @usage java gitlet.Main fsck [--connectivity-only]
+     */
+    public static void fsck(boolean connectivityOnly) {
+        Fsck fsck = new Fsck(connectivityOnly);
+        Trace.phase("check");
+        fsck.run();
+        int errors = 0;
+        for (String problem: fsck.getProblems()) {
+            Repository.out().println(problem);
+            if (problem.startsWith("error")) {
+                errors += 1;
+            }
+        }
+        Repository.out().printf("Checked %d commits and %d blobs: %s%n", fsck.commits(),
+                fsck.blobs(), errors == 0 ? "no errors"
+                : errors == 1 ? "1 error" : errors + " errors");
+    }
+
+    /** Saves the given login information under the given remote name.
+     *  Attempts to push or pull from the given remote name will then attempt
+     *  to use this .gitlet directory.
+     * @param remoteName name of the remote
+     * @param path path of the remote .gitlet directory, with / as separator
+     * @usage java gitlet.Main add-remote [remote name] [name of remote directory]/.gitlet
+     */
+    public static void addRemote(String remoteName, String path) {
+        if (!Repository.remotesDir().exists()) {
+            Repository.remotesDir().mkdir();
+        }
+        File remoteFile = Utils.join(Repository.remotesDir(), remoteName);
+
+        // Exception Case
+        if (remoteFile.exists()) {
+            throw new GitletException("A remote with that name already exists.");
+        }
+
+        new Remote(remoteName, path).writeTo(remoteFile);
+    }
+
+    /** Removes information associated with the given remote name.
+     * @param remoteName name of the remote
+     * @usage java gitlet.Main rm-remote [remote name]
+     */
+    public static void rmRemote(String remoteName) {
+        File remoteFile = Utils.join(Repository.remotesDir(), remoteName);
+
+        // Exception Case
+        if (!remoteFile.exists()) {
+            throw new NotFoundException("A remote with that name does not exist.");
+        }
+
+        remoteFile.delete();
+    }
+
+    /** Brings down commits from the remote Gitlet repository into the local
+     *  Gitlet repository, and points the local branch
+     *  [remote name]/[remote branch name] at the remote branch's head.
+     *  Only the commits the local repository lacks are copied.
+     * @param remoteName name of the remote
+     * @param branchName name of the branch in the remote repository
+     * @usage java gitlet.Main fetch [remote name] [remote branch name]
+     */
+    public static void fetch(String remoteName, String branchName) throws IOException {
+        File remoteDir = Remote.findGitletDir(remoteName);
+        Branch remoteBranch = Remote.findBranch(remoteDir, branchName);
+
+        // Exception Case
+        if (remoteBranch == null) {
+            throw new NotFoundException("That remote does not have that branch.");
+        }
+
+        Trace.phase("transfer");
+        ObjectId tip = remoteBranch.getCurrCommit();
+        Remote.transfer(remoteDir, Repository.commonDir(), tip);
+        Remote.setBranch(Repository.commonDir(), remoteName + "/" + branchName, tip);
+    }
+
+    /** Attempts to append the current branch's commits to the end of the
+     *  given branch at the given remote.  Only works if the remote branch's
+     *  head is in the history of the current local head.  Only the commits
+     *  the remote repository lacks are copied.
+     * @param remoteName name of the remote
+     * @param branchName name of the branch in the remote repository
+     * @usage java gitlet.Main push [remote name] [remote branch name]
+     */
+    public static void push(String remoteName, String branchName) throws IOException {
+        File remoteDir = Remote.findGitletDir(remoteName);
+        ObjectId head = Repository.findCurrBranch().getCurrCommit();
+
+        // The remote is locked from reading its branch to moving it, so
+        // no other push lands in between
+        RepositoryLock.holding(remoteDir, () -> {
+            Branch remoteBranch = Remote.findBranch(remoteDir, branchName);
+
+            // Exception Case
+            if (remoteBranch != null) {
+                ObjectId remoteHead = remoteBranch.getCurrCommit();
+                if (!Repository.objectFile(Repository.commitsDir(), remoteHead).exists()
+                        || !History.isAncestor(remoteHead, head)) {
+                    throw new PushRejectedException("Please pull down remote changes before pushing.");
                 }
             }
-            checkout(targetCommit.getId(), fileName);
+
+            Trace.phase("transfer");
+            Remote.transfer(Repository.commonDir(), remoteDir, head);
+            Remote.setBranch(remoteDir, branchName, head);
+            return null;
+        });
+    }
+
+    /** Fetches branch [remote name]/[remote branch name] as for the fetch
+     *  command, and then merges that fetch into the current branch.
+     * @param remoteName name of the remote
+     * @param branchName name of the branch in the remote repository
+     * @return the result of the merge, as for merge
+     * @usage java gitlet.Main pull [remote name] [remote branch name]
+     */
+    public static Merge pull(String remoteName, String branchName) throws IOException {
+        fetch(remoteName, branchName);
+        return merge(remoteName + "/" + branchName, false);
+    }
+
+    /** Writes the given branch, and every commit and blob reachable from
+     *  it, to a single bundle file that another repository can unbundle.
+     *  If a base commit is given, commits reachable from it (and the blobs
+     *  they already hold) are left out, and the bundle can only be
+     *  unbundled into a repository that has the base commit.
+     * @param fileName name of the bundle file to write
+     * @param branchName name of the branch to bundle
+     * @param baseID id of the base commit, or null for a full bundle
+     * @usage java gitlet.Main bundle create [file] [branch name] [--since [commit id]]
+     */
+    public static void bundleCreate(String fileName, String branchName,
+                                    String baseID) throws IOException {
+        // Exception Case 1
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("A branch with that name does not exist.");
+        }
+
+        // Exception Case 2
+        ObjectId base = null;
+        if (baseID != null) {
+            if (baseID.length() < 40) {
+                baseID = Repository.getFullId(baseID);
+            }
+            if (!ObjectId.isHex(baseID)
+                    || !Repository.objectFile(Repository.commitsDir(), baseID).exists()) {
+                throw new NotFoundException("No commit with that id exists.");
+            }
+            base = ObjectId.fromHex(baseID);
         }
 
-        throw new UnsupportedOperationException();
+        Trace.phase("write");
+        ObjectId tip = Branch.findBranch(branchName).getCurrCommit();
+        Bundle.create(Utils.join(Repository.cwd(), fileName), branchName, tip, base);
+    }
+
+    /** Reads a bundle file into the repository, checking every object
+     *  against its id.  Each branch the bundle carries becomes the branch
+     *  bundle/[branch name], which can then be checked out or merged like a
+     *  fetched remote branch.
+     * @param fileName name of the bundle file to read
+     * @usage java gitlet.Main bundle unbundle [file]
+     */
+    public static void unbundle(String fileName) throws IOException {
+        File file = Utils.join(Repository.cwd(), fileName);
+
+        // Exception Case
+        if (!file.isFile()) {
+            throw new NotFoundException("Bundle file does not exist.");
+        }
+
+        Trace.phase("read");
+        for (Bundle.Ref ref: Bundle.unbundle(file)) {
+            String name = ref.name.substring(ref.name.lastIndexOf('/') + 1);
+            Remote.setBranch(Repository.commonDir(), "bundle/" + name, ref.id);
+        }
+    }
+
+    /** Writes the given branch, with every commit it was made from and the
+     *  content of every file they track, as a git fast-import stream: to
+     *  the given file, or to standard output if none is given.  The stream
+     *  can be read by git fast-import, or by gitlet fast-import.
+     * @param branchName name of the branch to export
+     * @param fileName name of the file to write, or null
+     * @usage java gitlet.Main fast-export [branch name] [file]
+     */
+    public static void fastExport(String branchName, String fileName) throws IOException {
+        // Exception Case
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("A branch with that name does not exist.");
+        }
+
+        Trace.phase("write");
+        ObjectId tip = Branch.findBranch(branchName).getCurrCommit();
+        if (fileName == null) {
+            new FastExport(Repository.outputStream()).export(branchName, tip);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(Utils.join(Repository.cwd(), fileName))) {
+            new FastExport(out).export(branchName, tip);
+        }
+    }
+
+    /** Reads a git fast-import stream, as written by git fast-export or
+     *  gitlet fast-export, from the given file, or from standard input if
+     *  none is given.  Its commits and blobs are stored as they are read,
+     *  and each branch it writes to is created or moved once it has been
+     *  read in full.
+     * @param fileName name of the file to read, or null
+     * @usage java gitlet.Main fast-import [file]
+     */
+    public static void fastImport(String fileName) throws IOException {
+        FastImport stream;
+        if (fileName == null) {
+            Trace.phase("read");
+            stream = runImport(System.in);
+        } else {
+            File file = Utils.join(Repository.cwd(), fileName);
+
+            // Exception Case
+            if (!file.isFile()) {
+                throw new NotFoundException("File does not exist.");
+            }
+            Trace.phase("read");
+            try (InputStream in = new FileInputStream(file)) {
+                stream = runImport(in);
+            }
+        }
+        Repository.out().printf("Imported %d commits and %d blobs%n", stream.commits(),
+                stream.blobs());
+    }
+
+    /** Imports the fast-import stream IN, and returns the FastImport that
+     *  read it.  IN is left open for the caller to close. */
+    private static FastImport runImport(InputStream in) throws IOException {
+        FastImport stream = new FastImport(in);
+        try {
+            stream.run();
+        } catch (FastImport.StreamException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return stream;
+    }
+
+    /** Writes the files of the given commit, or of the head commit of the
+     *  given branch, as a tar or zip archive to the given file, or to
+     *  standard output if none is given.  Content is streamed from the
+     *  object store, and the working directory is left alone.
+     * @param commitID id of the commit or name of the branch
+     * @param format Archive.TAR or Archive.ZIP
+     * @param fileName name of the file to write, or null
+     * @usage java gitlet.Main archive [commit id] [--format=tar|zip] [-o file]
+     */
+    public static void archive(String commitID, String format, String fileName)
+            throws IOException {
+        Commit commit = commitWithId(commitID);
+
+        Trace.phase("write");
+        if (fileName == null) {
+            new Archive(Repository.outputStream()).write(commit, format);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(Utils.join(Repository.cwd(), fileName))) {
+            new Archive(out).write(commit, format);
+        }
+    }
+
+    /** Prints every line matching the given regular expression in the
+     *  files of the given commit, or of the head commit of the given branch,
+     *  or of the head commit if none is given.  Each line is printed after
+     *  its file name and a colon, and after the given commit id and a colon
+     *  if there is one.
+     * @param regex the pattern
+     * @param commitID id of the commit or name of the branch, or null
+     * @usage java gitlet.Main grep [-e] [pattern] [commit id]
+     */
+    public static void grep(String regex, String commitID) throws IOException {
+        Commit commit = commitID == null ? Repository.findCurrCommit() : commitWithId(commitID);
+        Grep grep;
+        try {
+            grep = new Grep(commit, regex);
+        } catch (PatternSyntaxException excp) {
+            // Exception Case
+            throw new GitletException("Invalid pattern.");
+        }
+
+        Trace.phase("read");
+        grep.run(commitID == null ? "" : commitID + ":", new BufferedOutputStream(
+                Repository.outputStream(), 1 << 16));
+    }
+
+    /** Adds a worktree in the given directory, with the given branch as its
+     *  head and that branch's files checked out.  The worktree has a head
+     *  and stages of its own, but its commits, blobs and branches are those
+     *  of this repository, so only the checked-out files are written.  A
+     *  branch may be the head of one worktree at a time.
+     * @param path the directory, which must be empty or not exist
+     * @param branchName name of the branch
+     * @usage java gitlet.Main worktree add [directory] [branch name]
+     */
+    public static void worktreeAdd(String path, String branchName) throws IOException {
+        File root = new File(path);
+        if (!root.isAbsolute()) {
+            root = Utils.join(Repository.cwd(), path);
+        }
+
+        // Exception Case 1
+        if (!Branch.exists(branchName)) {
+            throw new NotFoundException("A branch with that name does not exist.");
+        }
+
+        // Exception Case 2
+        if (Repository.checkedOutIn(branchName) != null) {
+            throw new GitletException("That branch is already checked out in another worktree.");
+        }
+
+        // Exception Case 3
+        String[] inside = root.list();
+        if (root.exists() && (inside == null || inside.length > 0)) {
+            throw new GitletException("A file or directory with that name already exists.");
+        }
+
+        Commit commit = Commit.findCommit(Branch.findBranch(branchName).getCurrCommit());
+        Repository tree = Repository.addWorktree(root.getCanonicalFile(), branchName);
+        Trace.phase("checkout");
+        Repository.runIn(tree, () -> {
+            for (String fileName: commit.getNames()) {
+                checkoutFile(commit, fileName);
+            }
+            return null;
+        });
+    }
+
+    /** Prints each worktree, the first one first: its directory, the
+     *  abbreviated id of its head commit and its head branch.
+     * @usage java gitlet.Main worktree list
+     */
+    public static void worktreeList() {
+        for (Repository tree: Repository.worktrees()) {
+            String branchName = Repository.headName(tree);
+            Repository.out().println(Repository.cwd(tree).getPath() + "  "
+                    + Branch.findBranch(branchName).getCurrCommit().abbreviate(7)
+                    + " [" + branchName + "]");
+        }
+    }
+
+    /** Shows, for each line of the given file in the head commit, the
+     *  commit that last changed it, that commit's date and the line number.
+     * @param fileName name of the file
+     * @usage java gitlet.Main blame [file name]
+     */
+    public static void blame(String fileName) {
+        Commit head = Repository.findCurrCommit();
+
+        // Exception Case
+        if (!head.contains(fileName)) {
+            throw new NotFoundException("File does not exist in that commit.");
+        }
+
+        Trace.phase("walk");
+        Blame blame = new Blame(head, fileName);
+        List<String> lines = blame.getLines();
+        String width = Integer.toString(Integer.toString(lines.size()).length());
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lines.size(); i += 1) {
+            Commit commit = blame.getCommit(i);
+            out.append(String.format("%s (%tF %<tT %<tz %" + width + "d) %s%n",
+                    commit.getId().abbreviate(8), commit.getTime(), i + 1, lines.get(i)));
+        }
+        Repository.out().print(out);
+    }
+
+    /** Shows the changes between two commits, or between a commit and the
+     *  working directory, as a unified diff.  Files whose blob ids match
+     *  are skipped without being read.  Renamed and copied files are shown
+     *  as such when at least the given percentage of their lines match.
+     * @param fromID id or branch of the older commit, or null for the head commit
+     * @param toID id or branch of the newer commit, or null for the working directory
+     * @param path only show this file, or null for all files
+     * @param threshold similarity threshold for renames, over 100 for none
+     * @usage java gitlet.Main diff [-M[n] | --no-renames] [[commit id] [[commit id]]]
+     *                              [-- [file name]]
+     */
+    public static void diff(String fromID, String toID, String path, int threshold)
+            throws IOException {
+        Commit from = fromID == null ? Repository.findCurrCommit() : commitWithId(fromID);
+        Commit to = toID == null ? null : commitWithId(toID);
+
+        // Names on either side, and the blob ids of the working directory's
+        TreeSet<String> names = new TreeSet<>(from.getNames());
+        Map<String, ObjectId> toFiles;
+        Map<ObjectId, byte[]> workingContent = new HashMap<>();
+        if (to != null) {
+            toFiles = to.getFiles();
+        } else {
+            toFiles = new HashMap<>();
+            Commit head = Repository.findCurrCommit();
+            Sparse sparse = Sparse.read();
+            names.addAll(head.getNames());
+            names.addAll(Stage.findStage(Repository.addedFile()).getNames());
+            for (String name: names) {
+                // Files outside the sparse-checkout patterns are as in HEAD
+                if (!sparse.includes(name)) {
+                    if (head.contains(name)) {
+                        toFiles.put(name, head.getFiles().get(name));
+                    }
+                    continue;
+                }
+                File file = Utils.join(Repository.cwd(), name);
+                if (file.isFile()) {
+                    Blob blob = new Blob(name, file);
+                    toFiles.put(name, blob.hash());
+                    workingContent.put(blob.hash(), blob.getContent());
+                }
+            }
+        }
+        names.addAll(toFiles.keySet());
+
+        Trace.phase("renames");
+        Map<String, Renames.Pair> renames = new HashMap<>();
+        Set<String> renamedFrom = new HashSet<>();
+        for (Renames.Pair pair: Renames.detect(from.getFiles(), toFiles, threshold,
+                id -> blobContent(id, workingContent))) {
+            renames.put(pair.to, pair);
+            if (!pair.copy) {
+                renamedFrom.add(pair.from);
+            }
+        }
+
+        Trace.phase("diff");
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                Repository.outputStream()), 1 << 16);
+        for (String name: names) {
+            if (renamedFrom.contains(name)) {
+                continue;
+            }
+            Renames.Pair pair = renames.get(name);
+            String oldName = pair == null ? name : pair.from;
+            if (path != null && !name.equals(path) && !oldName.equals(path)) {
+                continue;
+            }
+            ObjectId fromId = from.getFiles().get(oldName);
+            ObjectId toId = toFiles.get(name);
+            if (pair == null && Objects.equals(fromId, toId)) {
+                continue;
+            }
+            String left = fromId == null ? "/dev/null" : "a/" + oldName;
+            String right = toId == null ? "/dev/null" : "b/" + name;
+
+            out.append("diff --git a/").append(oldName).append(" b/").append(name).append('\n');
+            if (pair != null) {
+                String kind = pair.copy ? "copy" : "rename";
+                out.append("similarity index ").append(Integer.toString(pair.score))
+                        .append("%\n");
+                out.append(kind).append(" from ").append(oldName).append('\n');
+                out.append(kind).append(" to ").append(name).append('\n');
+                if (fromId.equals(toId)) {
+                    continue;
+                }
+            }
+            byte[] before = blobContent(fromId, workingContent);
+            byte[] after = blobContent(toId, workingContent);
+            if (Diff.isBinary(before) || Diff.isBinary(after)) {
+                out.append("Binary files ").append(left).append(" and ").append(right)
+                        .append(" differ\n");
+                continue;
+            }
+            out.append("--- ").append(left).append('\n');
+            out.append("+++ ").append(right).append('\n');
+            List<String> a = Diff.textLines(before);
+            List<String> b = Diff.textLines(after);
+            Diff.unified(out, a, b, Diff.diff(a, b), 3);
+        }
+        out.flush();
+    }
+
+    /** Returns the content of the blob with the given id: from WORKING if
+     *  it is there, else from the object store, or nothing if ID is null. */
+    private static byte[] blobContent(ObjectId id, Map<ObjectId, byte[]> working) {
+        if (id == null) {
+            return new byte[0];
+        }
+        byte[] content = working.get(id);
+        return content != null ? content : Blob.findBlob(id).getContent();
+    }
+
+    /** Returns the head Commit of the branch named COMMITID if there is
+     *  one, else the Commit whose id is or starts with COMMITID, throwing a
+     *  GitletException if there is none. */
+    static Commit commitWithId(String commitID) {
+        Branch branch = Branch.findBranch(commitID);
+        if (branch != null) {
+            return Commit.findCommit(branch.getCurrCommit());
+        }
+        if (commitID.length() < 40) {
+            commitID = Repository.getFullId(commitID);
+        }
+        File commitFile = Repository.objectFile(Repository.commitsDir(), commitID);
+
+        // Exception Case
+        if (!commitFile.isFile()) {
+            throw new NotFoundException("No commit with that id exists.");
+        }
+        return Commit.findCommit(commitFile);
     }
 }
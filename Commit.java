@@ -2,16 +2,40 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /** Represents a gitlet commit object.
  *
+ *  In memory a Commit keeps its files in a FileMap, which shares the
+ *  unchanged part of the tree with the Commit it was copied from or loaded
+ *  next to.  On disk the files are still written as a HashMap, so Commits
+ *  stored before keep loading.
  *  @author Enran Wu
  */
 public class Commit implements Serializable {
+
+    /** The UID Commits were serialized with before they kept a FileMap. */
+    private static final long serialVersionUID = 2812934405459274872L;
+
+    /** The fields as stored, with the files as a HashMap. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("message", String.class),
+        new ObjectStreamField("time", Date.class),
+        new ObjectStreamField("files", HashMap.class),
+        new ObjectStreamField("parent", ObjectId.class),
+        new ObjectStreamField("secondParent", ObjectId.class),
+    };
+
     /**
      * List all instance variables of the Commit class here with a useful
      * comment above them describing what that variable represents and how that
@@ -24,18 +48,25 @@ public class Commit implements Serializable {
     /** Time of the Commit. */
     private Date time;
 
-    /** Names of files of the Commit. */
-    private HashMap<String, String> files;
+    /** Names of files of the Commit, mapped to the UIDs of their Blobs. */
+    private transient FileMap files;
+
+    /** UID of the parent Commit. */
+    private ObjectId parent;
 
-    /** Name of the parent Commit. */
-    private String parent;
+    /** UID of the given branch's Commit, for a merge Commit; else null. */
+    private ObjectId secondParent;
+
+    /** UID of the Commit, known once it has been stored or loaded.
+     *  Stored Commits never change, so this saves re-serializing them. */
+    private transient ObjectId id;
 
     /** Initiates a Commit object. */
-    public Commit(String message, Date time, String parent) {
+    public Commit(String message, Date time, ObjectId parent) {
         this.message = message;
         this.time = time;
         this.parent = parent;
-        this.files = new HashMap<>();
+        this.files = FileMap.EMPTY;
     }
 
     /** Gets the message of the Commit. */
@@ -48,10 +79,20 @@ public class Commit implements Serializable {
         return this.time;
     }
     /** Returns the files of the Commit. */
-    public HashMap<String, String> getFiles() {
+    public FileMap getFiles() {
         return this.files;
     }
 
+    /** Tracks the Blob with UID ID under NAME. */
+    public void putFile(String name, ObjectId id) {
+        this.files = this.files.plus(name, id);
+    }
+
+    /** Stops tracking NAME. */
+    public void removeFile(String name) {
+        this.files = this.files.minus(name);
+    }
+
     /** Gets the names of the files insides the Commit. */
     public Set<String> getNames() {
         return this.files.keySet();
@@ -59,9 +100,7 @@ public class Commit implements Serializable {
 
     /** Returns the Blob with given name. */
     public Blob getBlob(String name) {
-        String blobHash = this.files.get(name);
-        File blobFile = Utils.join(Repository.BLOBS, blobHash);
-        return Blob.findBlob(blobFile);
+        return Blob.findBlob(this.files.get(name), name);
     }
 
     /** Writes the Commit to the given File. */
@@ -70,8 +109,11 @@ public class Commit implements Serializable {
     }
 
     /** Returns the SHA-1 UID of the Commit. */
-    public String hash() {
-        return Utils.sha1((Object) Utils.serialize(this));
+    public ObjectId hash() {
+        if (id != null) {
+            return id;
+        }
+        return Utils.sha1Id((Object) Utils.serialize(this));
     }
 
     /** Sets commit parent to the UID of given Commit. */
@@ -81,12 +123,16 @@ public class Commit implements Serializable {
 
     /** Finds a Commit with the given File. */
     public static Commit findCommit(File file) {
-        return Utils.readObject(file, Commit.class);
+        Commit commit = Utils.readObject(file, Commit.class);
+        if (ObjectId.isHex(file.getName())) {
+            commit.id = ObjectId.fromHex(file.getName());
+        }
+        return commit;
     }
 
-    /** Checks if the Commit contains the given Blob. */
+    /** Checks if the Commit tracks the given Blob under the Blob's name. */
     public boolean contains(Blob blob) {
-        return files.containsValue(blob.hash());
+        return blob.hash().equals(files.get(blob.getName()));
     }
 
     /** Checks if the Commit contains Blob with given name. */
@@ -96,7 +142,7 @@ public class Commit implements Serializable {
 
     ///** Adds all files in add Stage to the Commit. */
     //public void addStageToCommit() {
-    //    Stage addStage = Stage.findStage(Repository.ADDED);
+    //    Stage addStage = Stage.findStage(Repository.addedFile());
     //    for (String name: addStage.getNames()) {
     //        this.files.put(name, addStage.get(name));
     //    }
@@ -104,56 +150,114 @@ public class Commit implements Serializable {
 
     ///** Removes all files in remove Stage from the Commit. */
     //public void rmStageFromCommit() {
-    //    Stage rmStage = Stage.findStage(Repository.REMOVED);
+    //    Stage rmStage = Stage.findStage(Repository.removedFile());
     //    for (String name: rmStage.getNames()) {
     //        this.files.remove(name, rmStage.get(name));
     //    }
     //}
 
+    /** Returns the Commit as it is stored, and fixes its UID to match, so
+     *  a Commit made in memory can be stored later without serializing it
+     *  again.  The Commit must not change after this. */
+    byte[] seal() {
+        byte[] content = Utils.serialize(this);
+        id = Utils.sha1Id((Object) content);
+        return content;
+    }
+
     /** Creates a commit file with name as commit's UID. */
     public void createCommitFile() throws IOException {
-        File commitFile = Utils.join(Repository.COMMITS, hash());
+        byte[] content = seal();
+        File commitFile = Repository.newObjectFile(Repository.commitsDir(), id);
         if (!commitFile.exists()) {
-            commitFile.createNewFile();
+            Utils.writeContentsAtomically(commitFile, (Object) content);
         }
-        Utils.writeObject(commitFile, this);
     }
 
     /** Gets the parent of the Commit. */
-    public String getParent() {
+    public ObjectId getParent() {
         return this.parent;
     }
 
-    /** Prints out the Commit specify by Commands.log. */
-    public void print() {
-        String header = "commit " + hash();
-        String date;
+    /** Gets the second parent of a merge Commit, or null. */
+    public ObjectId getSecondParent() {
+        return this.secondParent;
+    }
 
-        //time = getTime();
-        date = "Date: " + String.format("%ta %tb %td %tT %tY %tz",
-                time, time, time, time, time, time);
-        //message = getMessage();
+    /** Sets the second parent of a merge Commit. */
+    public void setSecondParent(ObjectId secondParent) {
+        this.secondParent = secondParent;
+    }
 
-        // printing
-        System.out.println("===");
-        System.out.println(header);
-        System.out.println(date);
-        System.out.println(message + "\n");
+    /** Returns the UIDs of the parents of the Commit. */
+    public List<ObjectId> getParents() {
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        if (secondParent == null) {
+            return Collections.singletonList(parent);
+        }
+        return List.of(parent, secondParent);
+    }
+
+    /** Returns the UIDs of the Blobs this Commit tracks that PARENT does
+     *  not track under the same name, or all of them if PARENT is null. */
+    public Set<ObjectId> changedBlobs(Commit parent) {
+        Set<ObjectId> result = new HashSet<>();
+        for (Map.Entry<String, ObjectId> entry: files.entrySet()) {
+            if (parent == null || !entry.getValue().equals(parent.files.get(entry.getKey()))) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
     }
 
     /** Finds a Commit with the given UID. */
     public static Commit findCommit(String uid) {
-        File commitWithUID = Utils.join(Repository.COMMITS, uid);
-        return Utils.readObject(commitWithUID, Commit.class);
+        return findCommit(ObjectId.fromHex(uid));
+    }
+
+    /** Finds a Commit with the given UID. */
+    public static Commit findCommit(ObjectId uid) {
+        File commitWithUID = Repository.objectFile(Repository.commitsDir(), uid);
+        Commit commit = Utils.readObject(commitWithUID, Commit.class);
+        commit.id = uid;
+        return commit;
+    }
+
+    /** Creates a Commit copy of itself with given message and time,
+     *  tracking the same files. */
+    public Commit copy(String newMessage, Date newTime) {
+        Commit result = new Commit(newMessage, newTime, this.parent);
+        result.files = this.files;
+        return result;
+    }
+
+    /** Writes the Commit's fields, with its files as a HashMap. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("message", message);
+        fields.put("time", time);
+        fields.put("files", new HashMap<>(files));
+        fields.put("parent", parent);
+        fields.put("secondParent", secondParent);
+        out.writeFields();
     }
 
-    /** Creates a Commit copy of itself with given message. */
-    public Commit copy(String newMessage) {
-        return new Commit(newMessage, this.time, this.parent);
+    /** Reads the Commit's fields, sharing the nodes of its files with the
+     *  Commit loaded before it. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        message = (String) fields.get("message", null);
+        time = (Date) fields.get("time", null);
+        files = FileMap.share((HashMap<String, ObjectId>) fields.get("files", null));
+        parent = (ObjectId) fields.get("parent", null);
+        secondParent = (ObjectId) fields.get("secondParent", null);
     }
 
     /** Gets the UID of the commit. */
-    public String getId() {
+    public ObjectId getId() {
         return this.hash();
     }
 }
@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An index of the Commit graph, kept in .gitlet/commit-graph, from which
+ *  history can be walked without deserializing Commits.
+ *
+ *  For each Commit it records the parents, the time, the generation, and
+ *  a Bloom filter of the names of the files that differ from the first
+ *  parent.  The generation of a Commit is 1 if it has no parents and one
+ *  more than the greatest of its parents' otherwise, so a Commit's
+ *  ancestors all have lower generations than it has.
+ *  A path-limited log asks the filter first: a "no" is certain, so only
+ *  the Commits whose filter says "maybe" (those that touched the file,
+ *  plus about one in a hundred others) are ever read.
+ *
+ *  The file is
+ *      4 bytes   "GCG2"
+ *      4 bytes   number of Commits N
+ *      N * 20    raw UIDs, sorted
+ *      N * 24    per Commit: first and second parent (as positions in the
+ *                UID table, -1 for none), time in milliseconds, the end
+ *                offset of its filter in the filter section, and its
+ *                generation
+ *      ...       the filters, one after another
+ *  and is read through a memory map, so opening it costs nothing however
+ *  long the history.  A Commit with more than MAX_CHANGED changed files
+ *  gets an empty filter, which answers "maybe" to everything.  Commits
+ *  made since the file was written are simply not in it.  A file of
+ *  the first version, "GCG1", which had no generations, is not read.
+ *  @author Enran Wu
+ */
+class CommitGraph {
+
+    /** First bytes of the file. */
+    private static final int SIGNATURE = 0x47434732;
+
+    /** Size of the header. */
+    private static final int HEADER = 8;
+
+    /** Size of the data record of a Commit. */
+    private static final int RECORD = 24;
+
+    /** Filter bits per changed file. */
+    private static final int BITS_PER_ENTRY = 10;
+
+    /** Bits set per changed file. */
+    private static final int HASHES = 7;
+
+    /** Most changed files a Commit's filter holds. */
+    private static final int MAX_CHANGED = 512;
+
+    /** The mapped file. */
+    private final ByteBuffer data;
+
+    /** Number of Commits. */
+    private final int count;
+
+    /** Offset of the filter section. */
+    private final int filters;
+
+    private CommitGraph(ByteBuffer data) {
+        this.data = data;
+        this.count = data.getInt(4);
+        this.filters = HEADER + count * (ObjectId.RAW_LENGTH + RECORD);
+    }
+
+    /** Returns the commit-graph of the repository, or null if it has none
+     *  or it is unreadable. */
+    static CommitGraph read() {
+        File file = Repository.commitGraphFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            Trace.read(channel.size());
+            if (channel.size() < HEADER || data.getInt(0) != SIGNATURE) {
+                return null;
+            }
+            return new CommitGraph(data);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Writes the commit-graph of every Commit in the repository, and
+     *  returns the number of Commits in it. */
+    static int write() throws IOException {
+        List<ObjectId> ids = new ArrayList<>();
+        for (String name: Repository.objectNames(Repository.commitsDir())) {
+            ids.add(ObjectId.fromHex(name));
+        }
+        ids.sort(null);
+        Map<ObjectId, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            positions.put(ids.get(i), i);
+        }
+
+        int[] firstParents = new int[ids.size()];
+        int[] secondParents = new int[ids.size()];
+        long[] times = new long[ids.size()];
+        int[] ends = new int[ids.size()];
+        ByteArrayOutputStream blooms = new ByteArrayOutputStream();
+        for (int i = 0; i < ids.size(); i += 1) {
+            Commit commit = Commit.findCommit(ids.get(i));
+            Commit parent = positions.containsKey(commit.getParent())
+                    ? Commit.findCommit(commit.getParent()) : null;
+            firstParents[i] = position(positions, commit.getParent());
+            secondParents[i] = position(positions, commit.getSecondParent());
+            times[i] = commit.getTime().getTime();
+            blooms.write(filter(changed(commit, parent)));
+            ends[i] = blooms.size();
+        }
+        int[] generations = generations(firstParents, secondParents);
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (int i = 0; i < ids.size(); i += 1) {
+            out.writeInt(firstParents[i]);
+            out.writeInt(secondParents[i]);
+            out.writeLong(times[i]);
+            out.writeInt(ends[i]);
+            out.writeInt(generations[i]);
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(
+                HEADER + ids.size() * ObjectId.RAW_LENGTH + records.size() + blooms.size());
+        DataOutputStream header = new DataOutputStream(file);
+        header.writeInt(SIGNATURE);
+        header.writeInt(ids.size());
+        for (ObjectId id: ids) {
+            id.copyRawTo(raw, 0);
+            file.write(raw);
+        }
+        records.writeTo(file);
+        blooms.writeTo(file);
+        Utils.writeContentsAtomically(Repository.commitGraphFile(), (Object) file.toByteArray());
+        return ids.size();
+    }
+
+    /** Returns the generation of each Commit, given the positions of the
+     *  first and second parents of each in FIRST and SECOND.  Parents are
+     *  visited from a stack rather than by recursion, so a long history
+     *  does not overflow the call stack. */
+    private static int[] generations(int[] first, int[] second) {
+        int[] result = new int[first.length];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int i = 0; i < first.length; i += 1) {
+            stack.push(i);
+            while (!stack.isEmpty()) {
+                int at = stack.peek();
+                if (result[at] != 0) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (int parent: new int[] {first[at], second[at]}) {
+                    if (parent >= 0 && result[parent] == 0) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    int highest = 0;
+                    for (int parent: new int[] {first[at], second[at]}) {
+                        if (parent >= 0) {
+                            highest = Math.max(highest, result[parent]);
+                        }
+                    }
+                    result[at] = highest + 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the position of ID in POSITIONS, or -1 if ID is null or
+     *  not there. */
+    private static int position(Map<ObjectId, Integer> positions, ObjectId id) {
+        Integer position = id == null ? null : positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /** Returns the names of the files COMMIT tracks differently from
+     *  PARENT (which may be null). */
+    private static List<String> changed(Commit commit, Commit parent) {
+        Map<String, ObjectId> before = parent == null ? new HashMap<>() : parent.getFiles();
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> entry: commit.getFiles().entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        for (String name: before.keySet()) {
+            if (!commit.getFiles().containsKey(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the Bloom filter of NAMES, or an empty one if there are
+     *  too many. */
+    private static byte[] filter(List<String> names) {
+        if (names.size() > MAX_CHANGED) {
+            return new byte[0];
+        }
+        byte[] bits = new byte[Math.max(1, (names.size() * BITS_PER_ENTRY + 7) / 8)];
+        for (String name: names) {
+            long hash = hash(name);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = probe(hash, i, bits.length * 8);
+                bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return bits;
+    }
+
+    /** Returns a 64-bit hash of NAME. */
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b: name.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    /** Returns bit I of the HASHES bits among BITS set for a file whose
+     *  name hashes to HASH.  Each is mixed afresh: small filters have few
+     *  bits, and stepping by a fixed stride would land on the same few. */
+    private static int probe(long hash, int i, int bits) {
+        long x = hash + (i + 1) * 0x9e3779b97f4a7c15L;
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return (int) Math.floorMod(x ^ (x >>> 31), (long) bits);
+    }
+
+    /** Returns the position of the Commit with UID ID, or -1 if it is not
+     *  in the graph. */
+    int find(ObjectId id) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = id(mid).compareTo(id);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the UID of the Commit at POSITION. */
+    ObjectId id(int position) {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        data.get(HEADER + position * ObjectId.RAW_LENGTH, raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    /** Returns the UID of the first parent of the Commit at POSITION, or
+     *  null if it has none. */
+    ObjectId parent(int position) {
+        int parent = data.getInt(record(position));
+        return parent < 0 ? null : id(parent);
+    }
+
+    /** Returns the UID of the second parent of the Commit at POSITION, or
+     *  null if it has none. */
+    ObjectId secondParent(int position) {
+        int parent = data.getInt(record(position) + 4);
+        return parent < 0 ? null : id(parent);
+    }
+
+    /** Returns the time of the Commit at POSITION, in milliseconds. */
+    long time(int position) {
+        return data.getLong(record(position) + 8);
+    }
+
+    /** Returns the generation of the Commit at POSITION. */
+    int generation(int position) {
+        return data.getInt(record(position) + 20);
+    }
+
+    /** Returns whether the Commit at POSITION may have changed the file
+     *  NAME.  False answers are always right. */
+    boolean mayHaveChanged(int position, String name) {
+        int end = data.getInt(record(position) + 16);
+        int start = position == 0 ? 0 : data.getInt(record(position - 1) + 16);
+        int length = end - start;
+        if (length == 0) {
+            return true;
+        }
+        long hash = hash(name);
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = probe(hash, i, length * 8);
+            if ((data.get(filters + start + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of Commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the offset of the data record of the Commit at POSITION. */
+    private int record(int position) {
+        return HEADER + count * ObjectId.RAW_LENGTH + position * RECORD;
+    }
+}
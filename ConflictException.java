@@ -0,0 +1,13 @@
+package gitlet;
+
+/** A GitletException saying that commits being replayed conflict with
+ *  the commit they are replayed onto, so that nothing was changed.
+ *  @author Enran Wu
+ */
+public class ConflictException extends GitletException {
+
+    /** A ConflictException with MSG as its message. */
+    ConflictException(String msg) {
+        super(msg);
+    }
+}
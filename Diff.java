@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs between two versions of a file.
+ *
+ *  Lines the two versions share at the start and end are matched up front
+ *  by plain comparison, which settles the usual small edit to a big file
+ *  without further work.  The lines left in between are interned to ints,
+ *  so the diff itself only compares ints.
+ *  The diff is Myers' O(ND) algorithm in its linear-space form: instead of
+ *  keeping every round of the search to trace the path back, each call
+ *  searches from both ends at once for the "middle snake" of an optimal
+ *  path, then recurses on the parts before and after it.  Memory stays
+ *  proportional to the length of the inputs however different they are.
+ *  @author Enran Wu
+ */
+class Diff {
+
+    /** Number of leading bytes isBinary looks at. */
+    private static final int BINARY_SCAN = 8000;
+
+    /** A region of lines that differs between A and B: lines
+     *  [beginA, endA) of A are replaced by lines [beginB, endB) of B. */
+    static class Edit {
+        /** First line of the region in A. */
+        final int beginA;
+
+        /** End of the region in A (exclusive). */
+        final int endA;
+
+        /** First line of the region in B. */
+        final int beginB;
+
+        /** End of the region in B (exclusive). */
+        final int endB;
+
+        Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+    }
+
+    /** Returns the lines of CONTENT, without their line terminators. */
+    static List<String> lines(byte[] content) {
+        return lines(new String(content, StandardCharsets.UTF_8));
+    }
+
+    /** Returns the lines of TEXT, without their line terminators. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', start)) {
+            result.add(text.substring(start, i));
+            start = i + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Returns the lines of CONTENT as textLines(String) does. */
+    static List<String> textLines(byte[] content) {
+        return textLines(new String(content, StandardCharsets.UTF_8));
+    }
+
+    /** Returns the lines of TEXT as lines does, except that a last line
+     *  with no terminator keeps a '\n' at its end, so that it never matches
+     *  the same line properly terminated.  The unified form shows such a
+     *  line with a "No newline at end of file" note. */
+    static List<String> textLines(String text) {
+        List<String> result = lines(text);
+        if (!text.isEmpty() && text.charAt(text.length() - 1) != '\n') {
+            int last = result.size() - 1;
+            result.set(last, result.get(last) + '\n');
+        }
+        return result;
+    }
+
+    /** Returns whether CONTENT looks binary: it has a NUL byte among its
+     *  first BINARY_SCAN bytes. */
+    static boolean isBinary(byte[] content) {
+        return isBinary(ByteBuffer.wrap(content));
+    }
+
+    /** Returns whether the content from the start to the limit of CONTENT
+     *  looks binary, as isBinary(byte[]) tells. */
+    static boolean isBinary(ByteBuffer content) {
+        for (int i = 0; i < Math.min(content.limit(), BINARY_SCAN); i += 1) {
+            if (content.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the Edits that turn A into B, in order. */
+    static List<Edit> diff(List<String> a, List<String> b) {
+        int prefix = 0;
+        int limit = Math.min(a.size(), b.size());
+        while (prefix < limit && a.get(prefix).equals(b.get(prefix))) {
+            prefix += 1;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            suffix += 1;
+        }
+
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] x = intern(a.subList(prefix, a.size() - suffix), ids);
+        int[] y = intern(b.subList(prefix, b.size() - suffix), ids);
+        int size = x.length + y.length + 2;
+        Diff diff = new Diff(x, y, prefix, new int[2 * size + 1], new int[2 * size + 1]);
+        diff.compare(0, x.length, 0, y.length);
+        return diff.edits;
+    }
+
+    /** Writes to OUT the unified diff, with CONTEXT lines of context, of
+     *  the Edits EDITS turning A into B.  Lines of A and B are as given by
+     *  textLines. */
+    static void unified(Appendable out, List<String> a, List<String> b,
+                        List<Edit> edits, int context) throws IOException {
+        for (int first = 0; first < edits.size(); ) {
+            // A hunk takes in every following Edit whose context would touch
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).beginA - edits.get(last).endA <= 2 * context) {
+                last += 1;
+            }
+            Edit head = edits.get(first), tail = edits.get(last);
+            int startA = Math.max(0, head.beginA - context);
+            int startB = head.beginB - (head.beginA - startA);
+            int endA = Math.min(a.size(), tail.endA + context);
+            int endB = tail.endB + (endA - tail.endA);
+
+            out.append("@@ -");
+            appendRange(out, startA, endA - startA);
+            out.append(" +");
+            appendRange(out, startB, endB - startB);
+            out.append(" @@\n");
+            int lineA = startA;
+            for (int i = first; i <= last; i += 1) {
+                Edit edit = edits.get(i);
+                appendLines(out, ' ', a, lineA, edit.beginA);
+                appendLines(out, '-', a, edit.beginA, edit.endA);
+                appendLines(out, '+', b, edit.beginB, edit.endB);
+                lineA = edit.endA;
+            }
+            appendLines(out, ' ', a, lineA, endA);
+            first = last + 1;
+        }
+    }
+
+    /** Appends to OUT the hunk range of LENGTH lines starting at line
+     *  START (counting from 0). */
+    private static void appendRange(Appendable out, int start, int length)
+            throws IOException {
+        out.append(Integer.toString(length == 0 ? start : start + 1));
+        if (length != 1) {
+            out.append(',').append(Integer.toString(length));
+        }
+    }
+
+    /** Appends LINES[FROM, TO) to OUT, each following MARK. */
+    private static void appendLines(Appendable out, char mark, List<String> lines,
+                                    int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            String line = lines.get(i);
+            out.append(mark).append(line);
+            if (line.endsWith("\n")) {
+                out.append("\\ No newline at end of file\n");
+            } else {
+                out.append('\n');
+            }
+        }
+    }
+
+    /** Returns LINES as ints, equal lines getting the same int in IDS. */
+    private static int[] intern(List<String> lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line: lines) {
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /** Interned lines of the two sides. */
+    private final int[] a, b;
+
+    /** Furthest x reached on each diagonal by the forward and backward
+     *  searches, indexed by diagonal + offset. */
+    private final int[] forward, backward;
+
+    /** Index of diagonal 0 in forward and backward. */
+    private final int offset;
+
+    /** Number of common leading lines left out of a and b. */
+    private final int shift;
+
+    /** Edits found so far. */
+    private final List<Edit> edits = new ArrayList<>();
+
+    private Diff(int[] a, int[] b, int shift, int[] forward, int[] backward) {
+        this.a = a;
+        this.b = b;
+        this.shift = shift;
+        this.forward = forward;
+        this.backward = backward;
+        this.offset = forward.length / 2;
+    }
+
+    /** Finds the Edits turning a[aLo, aHi) into b[bLo, bHi). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                addEdit(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, snake[0], bLo, snake[1]);
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Appends an Edit, joining it to the previous one if they touch. */
+    private void addEdit(int aLo, int aHi, int bLo, int bHi) {
+        aLo += shift;
+        aHi += shift;
+        bLo += shift;
+        bHi += shift;
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA == aLo && last.endB == bLo) {
+                edits.set(edits.size() - 1, new Edit(last.beginA, aHi, last.beginB, bHi));
+                return;
+            }
+        }
+        edits.add(new Edit(aLo, aHi, bLo, bHi));
+    }
+
+    /** Returns {x, y, u, v}: a run of equal lines from a[x], b[y] to
+     *  a[u], b[v] lying on an optimal path through a[aLo, aHi) and
+     *  b[bLo, bHi), which must both be non-empty and differ at both ends.
+     *  The parts before and after the run are both strictly smaller. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                        && x + backward[offset + delta - k] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                        && x + forward[offset + delta - k] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Writes the history of a branch as a git fast-import stream, which
+ *  git fast-import (or gitlet fast-import) reads back.
+ *
+ *  Commits are written parents first, each as its changes against its
+ *  first parent: a "D" line per file deleted, then an "M" line per file
+ *  added or changed, with the content inline.  The changes are found with
+ *  FileMap.diff, which skips the part of the tree a Commit shares with the
+ *  parent loaded before it, so a Commit costs about the files it changes.
+ *  Content is streamed from the Blob files through a fixed buffer, and
+ *  every Blob a Commit changes is written out again rather than
+ *  remembered, so memory holds the Commits' marks and nothing that grows
+ *  with their trees or their files.
+ *  @author Enran Wu
+ */
+class FastExport {
+
+    /** Size of the output buffer and of the copy buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where the stream goes. */
+    private final OutputStream out;
+
+    /** Copy buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Mark of each Commit written. */
+    private final Map<ObjectId, Integer> marks = new HashMap<>();
+
+    FastExport(OutputStream sink) {
+        out = new BufferedOutputStream(sink, BUFFER_SIZE);
+    }
+
+    /** Writes the branch BRANCHNAME, whose head is the Commit with UID TIP,
+     *  and everything it was made from.  Returns the number of Commits
+     *  written. */
+    int export(String branchName, ObjectId tip) throws IOException {
+        String ref = "refs/heads/" + branchName;
+        Commit previous = null;
+        for (ObjectId id: parentsFirst(tip)) {
+            Commit commit = Commit.findCommit(id);
+            Commit parent = null;
+            if (commit.getParent() != null) {
+                parent = previous != null && previous.getId().equals(commit.getParent())
+                        ? previous : Commit.findCommit(commit.getParent());
+            }
+            writeCommit(ref, commit, parent);
+            previous = commit;
+        }
+        out.flush();
+        return marks.size();
+    }
+
+    /** Returns the UIDs of the Commit with UID TIP and its ancestors, each
+     *  after its parents.  The parents are taken from the commit-graph
+     *  where it has them, so the walk reads only the Commits made since it
+     *  was written. */
+    private static List<ObjectId> parentsFirst(ObjectId tip) {
+        CommitGraph graph = CommitGraph.read();
+        List<ObjectId> result = new ArrayList<>();
+        Set<ObjectId> seen = new HashSet<>();
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        ArrayDeque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(tip);
+        expanded.push(false);
+        seen.add(tip);
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (expanded.pop()) {
+                stack.pop();
+                result.add(id);
+                continue;
+            }
+            expanded.push(true);
+            List<ObjectId> parents = History.parents(graph, id);
+            for (int i = parents.size() - 1; i >= 0; i -= 1) {
+                if (seen.add(parents.get(i))) {
+                    stack.push(parents.get(i));
+                    expanded.push(false);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Writes COMMIT to REF, as changes against PARENT, its first parent,
+     *  or null if it has none. */
+    private void writeCommit(String ref, Commit commit, Commit parent) throws IOException {
+        int mark = marks.size() + 1;
+        marks.put(commit.getId(), mark);
+        if (parent == null) {
+            write("reset " + ref + "\n");
+        }
+        write("commit " + ref + "\nmark :" + mark + "\n");
+        write("committer gitlet <> " + commit.getTime().getTime() / 1000 + " +0000\n");
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        write("data " + message.length + "\n");
+        out.write(message);
+        write("\n");
+        if (parent != null) {
+            write("from :" + marks.get(parent.getId()) + "\n");
+        }
+        if (commit.getSecondParent() != null) {
+            write("merge :" + marks.get(commit.getSecondParent()) + "\n");
+        }
+
+        // Deletions first, so a file may be replaced by a directory
+        Map<String, ObjectId> changed = new HashMap<>();
+        FileMap before = parent == null ? FileMap.EMPTY : parent.getFiles();
+        IOException[] failure = new IOException[1];
+        commit.getFiles().diff(before, (name, was, now) -> {
+            if (now != null) {
+                changed.put(name, now);
+            } else if (failure[0] == null) {
+                try {
+                    write("D " + quote(name) + "\n");
+                } catch (IOException excp) {
+                    failure[0] = excp;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (Map.Entry<String, ObjectId> entry: changed.entrySet()) {
+            write("M 100644 inline " + quote(entry.getKey()) + "\n");
+            writeContent(entry.getValue());
+        }
+        write("\n");
+    }
+
+    /** Writes a data command holding the content of the Blob with UID ID,
+     *  streamed from its file. */
+    private void writeContent(ObjectId id) throws IOException {
+        File file = Repository.objectFile(Repository.blobsDir(), id);
+        write("data " + Blob.contentLength(file) + "\n");
+        long length = 0;
+        try (InputStream in = Blob.openContent(file)) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+                length += n;
+            }
+        }
+        Trace.read(length);
+        write("\n");
+    }
+
+    /** Writes the text S. */
+    private void write(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the file name NAME as a path of the stream, quoted as git
+     *  does if it starts with a quote or holds a newline or backslash. */
+    static String quote(String name) {
+        if (!name.startsWith("\"") && name.indexOf('\n') < 0 && name.indexOf('\\') < 0) {
+            return name;
+        }
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c == '\n') {
+                result.append("\\n");
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
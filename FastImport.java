@@ -0,0 +1,479 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reads a git fast-import stream, as written by git fast-export or
+ *  gitlet fast-export, into the object store.
+ *
+ *  The stream is read once, front to back.  Each blob, and each inline
+ *  file content, is streamed through a fixed buffer straight into its Blob
+ *  file, and each commit is built on the FileMap of its parent, so memory
+ *  holds the marks and the tips of the branches being imported, not the
+ *  objects.  The branches are written together, in one rewrite of the
+ *  packed refs, once the whole stream has been read.
+ *
+ *  Supported are the blob, commit, reset, tag, progress, checkpoint, done,
+ *  feature and option commands, and within a commit the M, D, R, C and
+ *  deleteall file changes.  File modes are dropped and submodule entries
+ *  skipped, since gitlet only tracks plain files.  Tags and refs outside
+ *  refs/heads are skipped.  A commit with no parent other than gitlet's
+ *  own initial commit is made a child of the initial commit, so that the
+ *  history keeps its single root.
+ *  @author Enran Wu
+ */
+class FastImport {
+
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The stream. */
+    private final InputStream in;
+
+    /** The line being parsed, or null at the end of the stream. */
+    private String line;
+
+    /** UID of the object each mark stands for. */
+    private final Map<Long, ObjectId> marks = new HashMap<>();
+
+    /** The tip of each branch imported so far, by branch name, or null for
+     *  a branch reset to have no tip. */
+    private final Map<String, Commit> tips = new HashMap<>();
+
+    /** UID of gitlet's initial commit. */
+    private final ObjectId initial = new Commit("initial commit", new Date(0), null).hash();
+
+    /** Number of Commits and Blobs written. */
+    private int commits, blobs;
+
+    FastImport(InputStream source) {
+        in = new BufferedInputStream(source, BUFFER_SIZE);
+    }
+
+    /** Thrown for a stream that cannot be imported. */
+    static class StreamException extends Exception {
+        StreamException(String msg) {
+            super(msg);
+        }
+    }
+
+    /** Reads the whole stream, then points the imported branches at their
+     *  tips. */
+    void run() throws IOException, StreamException {
+        readLine();
+        while (line != null) {
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("feature ")
+                    || line.startsWith("option ") || line.equals("checkpoint")) {
+                readLine();
+            } else if (line.equals("done")) {
+                break;
+            } else if (line.equals("blob")) {
+                readBlob();
+            } else if (line.startsWith("commit ")) {
+                readCommit(line.substring(7));
+            } else if (line.startsWith("reset ")) {
+                readReset(line.substring(6));
+            } else if (line.startsWith("tag ")) {
+                readTag();
+            } else if (line.startsWith("progress ")) {
+                Repository.out().println(line);
+                readLine();
+            } else {
+                throw new StreamException("Unsupported command: " + line);
+            }
+        }
+        Map<String, ObjectId> refs = new HashMap<>();
+        for (Map.Entry<String, Commit> tip: tips.entrySet()) {
+            if (tip.getValue() != null) {
+                refs.put(tip.getKey(), tip.getValue().getId());
+            }
+        }
+        Refs.local().setAll(refs);
+    }
+
+    /** Reads a blob command. */
+    private void readBlob() throws IOException, StreamException {
+        readLine();
+        Long mark = readMark();
+        skip("original-oid ");
+        ObjectId id = readData();
+        if (mark != null) {
+            marks.put(mark, id);
+        }
+    }
+
+    /** Reads a commit command to REF. */
+    private void readCommit(String ref) throws IOException, StreamException {
+        readLine();
+        Long mark = readMark();
+        skip("original-oid ");
+        skip("author ");
+        if (line == null || !line.startsWith("committer ")) {
+            throw new StreamException("Expected committer in commit to " + ref);
+        }
+        Date time = parseTime(line);
+        readLine();
+        skip("encoding ");
+        String message = new String(readBytes(), StandardCharsets.UTF_8);
+
+        String branch = branchName(ref);
+        Commit parent = tips.get(branch);
+        if (line != null && line.startsWith("from ")) {
+            parent = resolve(line.substring(5));
+            readLine();
+        }
+        ObjectId secondParent = null;
+        while (line != null && line.startsWith("merge ")) {
+            if (secondParent == null) {
+                secondParent = resolve(line.substring(6)).getId();
+            }
+            readLine();
+        }
+
+        Commit commit;
+        if (parent == null) {
+            commit = new Commit(message, time, null);
+        } else {
+            commit = parent.copy(message, time);
+            commit.setParent(parent);
+        }
+        commit.setSecondParent(secondParent);
+        readChanges(commit);
+        if (parent == null && !commit.hash().equals(initial)) {
+            Commit root = commit;
+            commit = new Commit(message, time, initial);
+            commit.setSecondParent(secondParent);
+            for (Map.Entry<String, ObjectId> entry: root.getFiles().entrySet()) {
+                commit.putFile(entry.getKey(), entry.getValue());
+            }
+        }
+        commit.createCommitFile();
+        commits += 1;
+        if (mark != null) {
+            marks.put(mark, commit.getId());
+        }
+        if (branch != null) {
+            tips.put(branch, commit);
+        }
+    }
+
+    /** Reads the file changes of a commit into COMMIT. */
+    private void readChanges(Commit commit) throws IOException, StreamException {
+        while (line != null) {
+            if (line.startsWith("M ")) {
+                String[] parts = line.split(" ", 4);
+                if (parts.length < 4) {
+                    throw new StreamException("Malformed file change: " + line);
+                }
+                String path = unquote(parts[3]);
+                readLine();
+                if (parts[1].equals("160000")) {
+                    continue;
+                }
+                ObjectId id;
+                if (parts[2].equals("inline")) {
+                    id = readData();
+                } else {
+                    id = marks.get(parseMark(parts[2]));
+                }
+                if (id == null || parts[1].equals("040000")) {
+                    throw new StreamException("Unsupported file change: M " + parts[1] + " "
+                            + parts[2] + " " + parts[3]);
+                }
+                commit.putFile(path, id);
+            } else if (line.startsWith("D ")) {
+                String path = unquote(line.substring(2));
+                for (String name: under(commit, path)) {
+                    commit.removeFile(name);
+                }
+                readLine();
+            } else if (line.startsWith("R ") || line.startsWith("C ")) {
+                String[] paths = splitPaths(line.substring(2));
+                for (String name: under(commit, paths[0])) {
+                    String target = paths[1] + name.substring(paths[0].length());
+                    commit.putFile(target, commit.getFiles().get(name));
+                    if (line.startsWith("R ")) {
+                        commit.removeFile(name);
+                    }
+                }
+                readLine();
+            } else if (line.equals("deleteall")) {
+                for (String name: new ArrayList<>(commit.getNames())) {
+                    commit.removeFile(name);
+                }
+                readLine();
+            } else if (line.startsWith("N ")) {
+                readLine();
+                if (line != null && line.startsWith("data ")) {
+                    readBytes();
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Returns the files of COMMIT that are PATH or under the directory
+     *  PATH. */
+    private static List<String> under(Commit commit, String path) {
+        List<String> result = new ArrayList<>();
+        if (commit.contains(path)) {
+            result.add(path);
+            return result;
+        }
+        String dir = path.isEmpty() ? "" : path + "/";
+        for (String name: commit.getNames()) {
+            if (name.startsWith(dir)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Reads a reset command of REF. */
+    private void readReset(String ref) throws IOException, StreamException {
+        readLine();
+        Commit tip = null;
+        if (line != null && line.startsWith("from ")) {
+            tip = resolve(line.substring(5));
+            readLine();
+        }
+        String branch = branchName(ref);
+        if (branch != null) {
+            tips.put(branch, tip);
+        }
+    }
+
+    /** Reads, and skips, a tag command. */
+    private void readTag() throws IOException, StreamException {
+        readLine();
+        skip("mark ");
+        skip("from ");
+        skip("original-oid ");
+        skip("tagger ");
+        readBytes();
+    }
+
+    /** Returns the branch REF stands for, or null if it is not a branch. */
+    private static String branchName(String ref) {
+        if (!ref.startsWith("refs/heads/")) {
+            return null;
+        }
+        return ref.substring("refs/heads/".length());
+    }
+
+    /** Returns the Commit the commit-ish REF of a from or merge names: a
+     *  mark, a branch imported so far or already in the repository, or the
+     *  UID of a Commit in the repository. */
+    private Commit resolve(String ref) throws StreamException {
+        ObjectId id = null;
+        if (ref.startsWith(":")) {
+            id = marks.get(parseMark(ref));
+        } else {
+            String branch = ref.startsWith("refs/heads/") ? branchName(ref) : ref;
+            if (tips.get(branch) != null) {
+                return tips.get(branch);
+            }
+            if (Branch.exists(branch)) {
+                id = Branch.findBranch(branch).getCurrCommit();
+            } else if (ObjectId.isHex(ref)
+                    && Repository.objectFile(Repository.commitsDir(), ref).isFile()) {
+                id = ObjectId.fromHex(ref);
+            }
+        }
+        if (id == null || !Repository.objectFile(Repository.commitsDir(), id).isFile()) {
+            throw new StreamException("Cannot resolve commit " + ref);
+        }
+        return Commit.findCommit(id);
+    }
+
+    /** Reads a "mark :N" line if there is one, and returns N, or null. */
+    private Long readMark() throws IOException, StreamException {
+        if (line == null || !line.startsWith("mark ")) {
+            return null;
+        }
+        long mark = parseMark(line.substring(5));
+        readLine();
+        return mark;
+    }
+
+    /** Returns N, for the mark reference :N. */
+    private static long parseMark(String ref) throws StreamException {
+        try {
+            if (ref.startsWith(":")) {
+                return Long.parseLong(ref.substring(1));
+            }
+        } catch (NumberFormatException excp) {
+            // Reported below
+        }
+        throw new StreamException("Unsupported data reference: " + ref);
+    }
+
+    /** Skips the line if it starts with PREFIX. */
+    private void skip(String prefix) throws IOException {
+        if (line != null && line.startsWith(prefix)) {
+            readLine();
+        }
+    }
+
+    /** Returns the time of the raw-format committer line LINE. */
+    private static Date parseTime(String line) throws StreamException {
+        String[] when = line.substring(line.lastIndexOf('>') + 1).trim().split(" ");
+        try {
+            return new Date(Long.parseLong(when[0]) * 1000);
+        } catch (NumberFormatException excp) {
+            throw new StreamException("Unsupported date in: " + line);
+        }
+    }
+
+    /** Stores the content of the data command on the current line as a
+     *  Blob, and returns its UID.  Counted data is streamed straight into
+     *  the Blob file. */
+    private ObjectId readData() throws IOException, StreamException {
+        blobs += 1;
+        if (line != null && line.startsWith("data ") && !line.startsWith("data <<")) {
+            long length = parseLength(line);
+            ObjectId id = Blob.write(in, length);
+            endData();
+            return id;
+        }
+        byte[] content = readBytes();
+        return Blob.write(new ByteArrayInputStream(content), content.length);
+    }
+
+    /** Returns the content of the data command on the current line. */
+    private byte[] readBytes() throws IOException, StreamException {
+        if (line == null || !line.startsWith("data ")) {
+            throw new StreamException("Expected data command, got: " + line);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (line.startsWith("data <<")) {
+            String delimiter = line.substring(7);
+            for (readLine(); line != null && !line.equals(delimiter); readLine()) {
+                content.write(line.getBytes(StandardCharsets.UTF_8));
+                content.write('\n');
+            }
+            if (line == null) {
+                throw new EOFException();
+            }
+            readLine();
+            return content.toByteArray();
+        }
+        long length = parseLength(line);
+        byte[] bytes = new byte[(int) length];
+        for (int off = 0; off < bytes.length; ) {
+            int n = in.read(bytes, off, bytes.length - off);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            off += n;
+        }
+        endData();
+        return bytes;
+    }
+
+    /** Returns the byte count of the counted data command LINE. */
+    private static long parseLength(String line) throws StreamException {
+        try {
+            return Long.parseLong(line.substring(5).trim());
+        } catch (NumberFormatException excp) {
+            throw new StreamException("Malformed data command: " + line);
+        }
+    }
+
+    /** Moves past counted data to the next line, skipping the optional
+     *  newline after it. */
+    private void endData() throws IOException {
+        in.mark(1);
+        if (in.read() != '\n') {
+            in.reset();
+        }
+        readLine();
+    }
+
+    /** Reads the next line of the stream into LINE, or null at its end. */
+    private void readLine() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int c = in.read();
+        if (c < 0) {
+            line = null;
+            return;
+        }
+        for (; c >= 0 && c != '\n'; c = in.read()) {
+            bytes.write(c);
+        }
+        line = bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the path PATH of a file change, unquoted if quoted. */
+    private static String unquote(String path) {
+        if (!path.startsWith("\"")) {
+            return path;
+        }
+        return unquote(path, 0)[0];
+    }
+
+    /** Returns the two paths of an R or C file change ARGS. */
+    private static String[] splitPaths(String args) throws StreamException {
+        if (args.startsWith("\"")) {
+            String[] first = unquote(args, 0);
+            return new String[] {first[0], unquote(args.substring(Integer.parseInt(first[1])))};
+        }
+        int space = args.indexOf(' ');
+        if (space < 0) {
+            throw new StreamException("Malformed file change: " + args);
+        }
+        return new String[] {args.substring(0, space), unquote(args.substring(space + 1))};
+    }
+
+    /** Returns the C-style quoted string starting at START of S, unquoted,
+     *  and the index just past it and the space after it. */
+    private static String[] unquote(String s, int start) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = start + 1;
+        while (i < s.length() && s.charAt(i) != '"') {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char e = s.charAt(i + 1);
+                if (e >= '0' && e <= '7' && i + 3 < s.length()) {
+                    bytes.write(Integer.parseInt(s.substring(i + 1, i + 4), 8));
+                    i += 4;
+                    continue;
+                }
+                bytes.write(e == 'n' ? '\n' : e == 't' ? '\t' : e);
+                i += 2;
+            } else {
+                byte[] raw = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(raw, 0, raw.length);
+                i += 1;
+            }
+        }
+        return new String[] {bytes.toString(StandardCharsets.UTF_8),
+            Integer.toString(Math.min(i + 2, s.length()))};
+    }
+
+    /** Returns the number of Commits written. */
+    int commits() {
+        return commits;
+    }
+
+    /** Returns the number of Blobs written. */
+    int blobs() {
+        return blobs;
+    }
+
+    /** Returns the branches imported, in no particular order. */
+    List<String> branches() {
+        return new ArrayList<>(tips.keySet());
+    }
+}
@@ -0,0 +1,473 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** An immutable map from file names to Blob UIDs, as tracked by a Commit.
+ *
+ *  The map is a hash array mapped trie: each node covers five bits of the
+ *  hash of the names below it and holds, in one array, an entry or a child
+ *  node for each value of those bits that occurs.  Adding or removing a
+ *  name copies only the nodes on the path to it, about four for 100,000
+ *  files, and shares every other node with the map it was made from.  So a
+ *  Commit made from its parent costs only the nodes its changes touch, and
+ *  the maps of a run of Commits loaded one after another (see share) hold
+ *  about one map's worth of nodes plus their differences.  Names are
+ *  interned, so one String serves every map that tracks that name.
+ *
+ *  The methods of Map that would change it throw
+ *  UnsupportedOperationException; plus and minus return changed copies.
+ *  @author Enran Wu
+ */
+final class FileMap extends AbstractMap<String, ObjectId> {
+
+    /** The map with no files. */
+    static final FileMap EMPTY = new FileMap(Node.EMPTY, 0);
+
+    /** Number of hash bits each level of the trie covers. */
+    private static final int BITS = 5;
+
+    /** Mask selecting the hash bits of one level. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** The map most recently made by share, from which the next one is
+     *  made.  Maps are immutable, so threads may share it freely. */
+    private static volatile FileMap recent = EMPTY;
+
+    /** The root of the trie. */
+    private final Node root;
+
+    /** Number of files. */
+    private final int size;
+
+    private FileMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** Returns a FileMap holding the files of FILES, sharing what nodes it
+     *  can with the FileMap this method last returned.  Used to load
+     *  Commits: a walk through history loads each Commit next to one that
+     *  differs from it in a few files, so consecutive maps share nearly
+     *  every node. */
+    static FileMap share(Map<String, ObjectId> files) {
+        FileMap base = recent;
+        FileMap result = base.plusAll(files);
+        if (result.size != files.size()) {
+            for (String name: base.keySet()) {
+                if (!files.containsKey(name)) {
+                    result = result.minus(name);
+                }
+            }
+        }
+        recent = result;
+        return result;
+    }
+
+    /** Returns a FileMap holding the files of FILES. */
+    static FileMap of(Map<String, ObjectId> files) {
+        if (files instanceof FileMap) {
+            return (FileMap) files;
+        }
+        return EMPTY.plusAll(files);
+    }
+
+    /** Returns this map with NAME mapped to ID. */
+    FileMap plus(String name, ObjectId id) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.plus(hash(name), 0, name, id, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new FileMap(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /** Returns this map with every file of FILES added. */
+    FileMap plusAll(Map<String, ObjectId> files) {
+        FileMap result = this;
+        for (Map.Entry<String, ObjectId> entry: files.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** Returns this map without NAME. */
+    FileMap minus(String name) {
+        Node newRoot = root.minus(hash(name), 0, name);
+        if (newRoot == root) {
+            return this;
+        }
+        return new FileMap(newRoot == null ? Node.EMPTY : newRoot, size - 1);
+    }
+
+    @Override
+    public ObjectId get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        return root.get(hash((String) key), 0, (String) key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, ObjectId>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, ObjectId>> iterator() {
+                return new Entries(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Receives the differences found by diff. */
+    interface Change {
+        /** Called for a file NAME tracked as BEFORE in the old map and as
+         *  AFTER in the new one, either of which is null if the file is
+         *  not in that map. */
+        void changed(String name, ObjectId before, ObjectId after);
+    }
+
+    /** Reports to CHANGE every file whose UID differs between BEFORE and
+     *  this map.  Subtries the two maps share are skipped without being
+     *  looked at, so the diff of a Commit against the parent it was made
+     *  or loaded beside costs about the number of files changed. */
+    void diff(FileMap before, Change change) {
+        diff(before.root, root, 0, change);
+    }
+
+    /** Reports the differences between the tries BEFORE and AFTER, whose
+     *  roots are at depth SHIFT, to CHANGE. */
+    private static void diff(Node before, Node after, int shift, Change change) {
+        if (before == after) {
+            return;
+        }
+        if (before.collision || after.collision) {
+            diffEntries(collect(before, null), collect(after, null), change);
+            return;
+        }
+        int bits = before.bitmap | after.bitmap;
+        while (bits != 0) {
+            int bit = Integer.lowestOneBit(bits);
+            bits &= ~bit;
+            HashMap<String, ObjectId> old = new HashMap<>();
+            HashMap<String, ObjectId> current = new HashMap<>();
+            if ((before.bitmap & bit) != 0 && (after.bitmap & bit) != 0) {
+                int i = before.index(bit);
+                int j = after.index(bit);
+                if (before.array[i] == null && after.array[j] == null) {
+                    diff((Node) before.array[i + 1], (Node) after.array[j + 1],
+                            shift + BITS, change);
+                    continue;
+                }
+                collectSlot(before, i, old);
+                collectSlot(after, j, current);
+            } else if ((before.bitmap & bit) != 0) {
+                collectSlot(before, before.index(bit), old);
+            } else {
+                collectSlot(after, after.index(bit), current);
+            }
+            diffEntries(old, current, change);
+        }
+    }
+
+    /** Reports the differences between the entries OLD, which is
+     *  emptied, and CURRENT to CHANGE.  Used where two tries are shaped
+     *  differently. */
+    private static void diffEntries(HashMap<String, ObjectId> old,
+                                    HashMap<String, ObjectId> current, Change change) {
+        for (Map.Entry<String, ObjectId> entry: current.entrySet()) {
+            ObjectId was = old.remove(entry.getKey());
+            if (!entry.getValue().equals(was)) {
+                change.changed(entry.getKey(), was, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, ObjectId> entry: old.entrySet()) {
+            change.changed(entry.getKey(), entry.getValue(), null);
+        }
+    }
+
+    /** Puts the entry or the entries of the child in slot I of NODE into
+     *  RESULT. */
+    private static void collectSlot(Node node, int i, HashMap<String, ObjectId> result) {
+        if (node.array[i] != null) {
+            result.put((String) node.array[i], (ObjectId) node.array[i + 1]);
+        } else {
+            collect((Node) node.array[i + 1], result);
+        }
+    }
+
+    /** Puts the entries of the trie NODE into RESULT, or into a new map
+     *  if RESULT is null, and returns it. */
+    private static HashMap<String, ObjectId> collect(Node node, HashMap<String, ObjectId> result) {
+        if (result == null) {
+            result = new HashMap<>();
+        }
+        Iterator<Map.Entry<String, ObjectId>> entries = new Entries(node);
+        while (entries.hasNext()) {
+            Map.Entry<String, ObjectId> entry = entries.next();
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** Returns the hash of NAME, with its high bits mixed into the low
+     *  ones, which the top of the trie uses. */
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** A node of the trie.  For each set bit of BITMAP, ARRAY holds two
+     *  slots: a name and its UID, or null and the child Node covering the
+     *  names whose hashes have that value at this level.  A node holding
+     *  names whose hashes are all equal has no bitmap, and only names. */
+    private static final class Node {
+        /** The node with no entries. */
+        static final Node EMPTY = new Node(0, new Object[0], false);
+
+        /** Values of this level's hash bits present. */
+        final int bitmap;
+
+        /** Names and UIDs or children, two slots per bit of BITMAP. */
+        final Object[] array;
+
+        /** Whether this node holds names with one full hash. */
+        final boolean collision;
+
+        Node(int bitmap, Object[] array, boolean collision) {
+            this.bitmap = bitmap;
+            this.array = array;
+            this.collision = collision;
+        }
+
+        /** Returns the UID of NAME, whose hash is HASH, at depth SHIFT. */
+        ObjectId get(int hash, int shift, String name) {
+            Node node = this;
+            while (!node.collision) {
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                int i = node.index(bit);
+                Object key = node.array[i];
+                if (key != null) {
+                    return key.equals(name) ? (ObjectId) node.array[i + 1] : null;
+                }
+                node = (Node) node.array[i + 1];
+                shift += BITS;
+            }
+            int i = node.find(name);
+            return i < 0 ? null : (ObjectId) node.array[i + 1];
+        }
+
+        /** Returns this node with NAME, whose hash is HASH, mapped to ID,
+         *  or this node itself if it already is.  Sets ADDED[0] if NAME
+         *  was not in it. */
+        Node plus(int hash, int shift, String name, ObjectId id, boolean[] added) {
+            if (collision) {
+                int i = find(name);
+                if (i >= 0) {
+                    return id.equals(array[i + 1]) ? this : with(i + 1, id);
+                }
+                if (hash == hash((String) array[0])) {
+                    Object[] grown = Arrays.copyOf(array, array.length + 2);
+                    grown[array.length] = name.intern();
+                    grown[array.length + 1] = id;
+                    added[0] = true;
+                    return new Node(0, grown, true);
+                }
+                int bit = 1 << ((hash((String) array[0]) >>> shift) & MASK);
+                return new Node(bit, new Object[] {null, this}, false)
+                        .plus(hash, shift, name, id, added);
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[array.length + 2];
+                System.arraycopy(array, 0, grown, 0, i);
+                grown[i] = name.intern();
+                grown[i + 1] = id;
+                System.arraycopy(array, i, grown, i + 2, array.length - i);
+                added[0] = true;
+                return new Node(bitmap | bit, grown, false);
+            }
+            Object key = array[i];
+            if (key == null) {
+                Node child = (Node) array[i + 1];
+                Node newChild = child.plus(hash, shift + BITS, name, id, added);
+                return newChild == child ? this : with(i + 1, newChild);
+            }
+            if (key.equals(name)) {
+                return id.equals(array[i + 1]) ? this : with(i + 1, id);
+            }
+            added[0] = true;
+            Node child = pair(hash((String) key), (String) key, (ObjectId) array[i + 1],
+                    hash, name.intern(), id, shift + BITS);
+            Object[] copy = array.clone();
+            copy[i] = null;
+            copy[i + 1] = child;
+            return new Node(bitmap, copy, false);
+        }
+
+        /** Returns this node without NAME, whose hash is HASH, this node
+         *  itself if NAME is not in it, or null if nothing is left. */
+        Node minus(int hash, int shift, String name) {
+            if (collision) {
+                int i = find(name);
+                if (i < 0) {
+                    return this;
+                }
+                return array.length == 2 ? null : new Node(0, without(i), true);
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object key = array[i];
+            if (key == null) {
+                Node child = (Node) array[i + 1];
+                Node newChild = child.minus(hash, shift + BITS, name);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild != null) {
+                    return with(i + 1, newChild);
+                }
+            } else if (!key.equals(name)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            return new Node(bitmap & ~bit, without(i), false);
+        }
+
+        /** Returns the node holding the names KEY1 and KEY2, with hashes
+         *  HASH1 and HASH2 and UIDs ID1 and ID2, at depth SHIFT. */
+        private static Node pair(int hash1, String key1, ObjectId id1,
+                                 int hash2, String key2, ObjectId id2, int shift) {
+            if (hash1 == hash2) {
+                return new Node(0, new Object[] {key1, id1, key2, id2}, true);
+            }
+            int index1 = (hash1 >>> shift) & MASK;
+            int index2 = (hash2 >>> shift) & MASK;
+            int bit1 = 1 << index1;
+            int bit2 = 1 << index2;
+            if (index1 == index2) {
+                return new Node(bit1, new Object[] {null,
+                    pair(hash1, key1, id1, hash2, key2, id2, shift + BITS)}, false);
+            }
+            if (index1 < index2) {
+                return new Node(bit1 | bit2, new Object[] {key1, id1, key2, id2}, false);
+            }
+            return new Node(bit1 | bit2, new Object[] {key2, id2, key1, id1}, false);
+        }
+
+        /** Returns the slot of the entry for BIT. */
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /** Returns the slot of NAME in a collision node, or -1. */
+        private int find(String name) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Returns a copy of this node with slot I set to VALUE. */
+        private Node with(int i, Object value) {
+            Object[] copy = array.clone();
+            copy[i] = value;
+            return new Node(bitmap, copy, collision);
+        }
+
+        /** Returns ARRAY without slots I and I + 1. */
+        private Object[] without(int i) {
+            Object[] shrunk = new Object[array.length - 2];
+            System.arraycopy(array, 0, shrunk, 0, i);
+            System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+            return shrunk;
+        }
+    }
+
+    /** Iterates over the entries of a trie, depth first. */
+    private static final class Entries implements Iterator<Map.Entry<String, ObjectId>> {
+        /** Nodes being walked, innermost first. */
+        private final ArrayDeque<Node> nodes = new ArrayDeque<>();
+
+        /** Next slot of each node in NODES. */
+        private final ArrayDeque<Integer> slots = new ArrayDeque<>();
+
+        /** The next entry, or null when done. */
+        private Map.Entry<String, ObjectId> next;
+
+        Entries(Node root) {
+            nodes.push(root);
+            slots.push(0);
+            advance();
+        }
+
+        /** Moves NEXT to the following entry. */
+        private void advance() {
+            next = null;
+            while (!nodes.isEmpty()) {
+                Node node = nodes.peek();
+                int i = slots.pop();
+                if (i >= node.array.length) {
+                    nodes.pop();
+                    continue;
+                }
+                slots.push(i + 2);
+                if (node.array[i] == null) {
+                    nodes.push((Node) node.array[i + 1]);
+                    slots.push(0);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((String) node.array[i],
+                            (ObjectId) node.array[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, ObjectId> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, ObjectId> result = next;
+            advance();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The version of the format a .gitlet directory is written in, and the
+ *  upgrade of directories written in an older one.
+ *
+ *  The version is kept in a file, format, written by init and by an
+ *  upgrade once it has finished.  A directory without one was written
+ *  before there was such a file, and is either
+ *      - version 1, as written by the first Gitlet, which kept every
+ *        object directly in commits/ and blobs/ with its UID as a String,
+ *        hashed each Blob with the name of its file, and serialized the
+ *        Stages and Branches;
+ *      - version 2, the current one, marked by a file, layout; or
+ *      - version 2 with its objects directly in commits/ and blobs/
+ *        rather than split by UID prefix.
+ *  Which it is is found out by reading one of its Commits.  Version 1 is
+ *  read through stand-ins for its classes, which have their fields and
+ *  serialVersionUIDs, and rewritten: every Blob, Commit, Branch and Stage
+ *  is read before anything is written, so a directory that cannot be read
+ *  whole is refused unchanged.  Once the format file says the directory
+ *  is current, checking it needs one read of a small file and no lock.
+ *  @author Enran Wu
+ */
+class Format {
+
+    /** Name of the file holding the version. */
+    static final String FILE = "format";
+
+    /** The version written by this program. */
+    static final int VERSION = 2;
+
+    /** File written by the upgrade from version 1, holding a line
+     *      [old UID] [new UID]
+     *  for each Commit and Blob, in order of old UID. */
+    static final String OLD_IDS = "old-ids";
+
+    /** File marking a directory of this version whose objects are split
+     *  by UID prefix, written before there was a format file. */
+    private static final String LAYOUT = "layout";
+
+    /** The stand-in for each class of version 1, by the class's name. */
+    private static final Map<String, Class<?>> OLD_CLASSES = Map.of(
+        "gitlet.Commit", OldCommit.class,
+        "gitlet.Blob", OldBlob.class,
+        "gitlet.Stage", OldStage.class,
+        "gitlet.Branch", OldBranch.class);
+
+    /** Writes the current version to the .gitlet directory GITLETDIR. */
+    static void write(File gitletDir) {
+        writeContents(join(gitletDir, FILE), VERSION + "\n");
+    }
+
+    /** Upgrades the .gitlet directory GITLETDIR to the current version,
+     *  unless it is at it already, holding the lock of the repository, as
+     *  objects are moved under any command from another worktree that is
+     *  using them.  Throws a GitletException, having changed nothing, if
+     *  the directory cannot be read by this program. */
+    static void upgrade(File gitletDir) throws IOException {
+        if (version(gitletDir) == VERSION) {
+            return;
+        }
+        RepositoryLock.holding(gitletDir, () -> {
+            if (version(gitletDir) != VERSION) {
+                upgradeUnmarked(gitletDir);
+            }
+            return null;
+        });
+    }
+
+    /** Returns the version in the format file of GITLETDIR, or 0 if it
+     *  has none.  Throws a GitletException if the version is newer than
+     *  this program's. */
+    private static int version(File gitletDir) {
+        File file = join(gitletDir, FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        String text = readContentsAsString(file).trim();
+        if (!text.equals(Integer.toString(VERSION))) {
+            throw new GitletException("This repository was written by a newer version of Gitlet.");
+        }
+        return VERSION;
+    }
+
+    /** Upgrades GITLETDIR, which has no format file.  Its objects are
+     *  moved into subdirectories by UID prefix, or rewritten if they are
+     *  of version 1, unless LAYOUT says they are current, and the format
+     *  file is written last: an upgrade cut short is done again the next
+     *  time. */
+    private static void upgradeUnmarked(File gitletDir) throws IOException {
+        if (!join(gitletDir, LAYOUT).isFile()) {
+            File commit = flatObject(join(gitletDir, "commits"));
+            if (commit != null && !readable(commit)) {
+                upgradeFirst(gitletDir);
+                return;
+            }
+            moveObjects(gitletDir);
+        }
+        write(gitletDir);
+        join(gitletDir, LAYOUT).delete();
+    }
+
+    /** Rewrites GITLETDIR, of version 1, in the current version.  Blobs
+     *  get new UIDs, as they no longer hash the names of their files, and
+     *  so do the Commits tracking them; each old UID is written beside its
+     *  new one to OLD_IDS, and the change is reported.  The new objects are written into
+     *  the subdirectories by UID prefix, which version 1 does not look in,
+     *  and the old ones are deleted only once the format file is written,
+     *  so an upgrade cut short starts over from them. */
+    private static void upgradeFirst(File gitletDir) throws IOException {
+        File commitsDir = join(gitletDir, "commits");
+        File blobsDir = join(gitletDir, "blobs");
+        File branchesDir = join(gitletDir, "branches");
+        File stagingArea = join(gitletDir, "staging_area");
+        boolean refsDone = join(gitletDir, Refs.PACKED).isFile();
+
+        Map<String, ObjectId> blobIds = new HashMap<>();
+        for (String name: flatNames(blobsDir)) {
+            OldBlob old = readOld(join(blobsDir, name), OldBlob.class);
+            blobIds.put(name, new Blob(null, old.content).hash());
+        }
+        Map<String, OldCommit> commits = new HashMap<>();
+        for (String name: flatNames(commitsDir)) {
+            OldCommit old = readOld(join(commitsDir, name), OldCommit.class);
+            for (String blob: old.files.values()) {
+                checkFound(blobIds.containsKey(blob), blob, name);
+            }
+            checkFound(old.parent == null || join(commitsDir, old.parent).isFile(),
+                    old.parent, name);
+            commits.put(name, old);
+        }
+        Map<String, String> branches = new HashMap<>();
+        List<String> branchNames = plainFilenamesIn(branchesDir);
+        for (String name: branchNames == null ? new ArrayList<String>() : branchNames) {
+            if (!refsDone) {
+                OldBranch old = readOld(join(branchesDir, name), OldBranch.class);
+                checkFound(commits.containsKey(old.currCommit), old.currCommit, name);
+                branches.put(name, old.currCommit);
+            }
+        }
+        Map<File, OldStage> stages = new HashMap<>();
+        for (String name: new String[] {"additions.txt", "removals.txt"}) {
+            File file = join(stagingArea, name);
+            if (file.length() > 0 && readContents(file)[0] != '#') {
+                OldStage old = readOld(file, OldStage.class);
+                for (String blob: old.files.values()) {
+                    checkFound(blobIds.containsKey(blob), blob, name);
+                }
+                stages.put(file, old);
+            }
+        }
+
+        for (String name: blobIds.keySet()) {
+            OldBlob old = readOld(join(blobsDir, name), OldBlob.class);
+            File file = Repository.newObjectFile(blobsDir, blobIds.get(name));
+            if (!file.exists()) {
+                writeContentsAtomically(file,
+                        (Object) serialize(new Blob(null, old.content)));
+            }
+        }
+        Map<String, ObjectId> commitIds = new HashMap<>();
+        for (String name: commits.keySet()) {
+            rewrite(name, commits, blobIds, commitIds, commitsDir);
+        }
+        Map<String, ObjectId> refs = new HashMap<>();
+        for (Map.Entry<String, String> entry: branches.entrySet()) {
+            refs.put(entry.getKey(), commitIds.get(entry.getValue()));
+        }
+        Refs.read(gitletDir).setAll(refs);
+        if (branchNames != null) {
+            for (String name: branchNames) {
+                join(branchesDir, name).delete();
+            }
+        }
+        for (Map.Entry<File, OldStage> entry: stages.entrySet()) {
+            Stage stage = new Stage(entry.getValue().name);
+            for (Map.Entry<String, String> file: entry.getValue().files.entrySet()) {
+                stage.getFiles().put(file.getKey(), blobIds.get(file.getValue()));
+            }
+            stage.writeTo(entry.getKey());
+        }
+        join(gitletDir, "remotes").mkdir();
+
+        StringBuilder oldIds = new StringBuilder();
+        Map<String, ObjectId> all = new TreeMap<>(blobIds);
+        all.putAll(commitIds);
+        for (Map.Entry<String, ObjectId> entry: all.entrySet()) {
+            oldIds.append(entry.getKey()).append(' ')
+                    .append(entry.getValue().toHex()).append('\n');
+        }
+        writeContentsAtomically(join(gitletDir, OLD_IDS), oldIds.toString());
+        write(gitletDir);
+        System.err.println("Upgraded the repository: its commits and blobs have new UIDs, "
+                + "listed beside the old ones in .gitlet/" + OLD_IDS + ".");
+        for (File dir: new File[] {commitsDir, blobsDir}) {
+            for (String name: flatNames(dir)) {
+                join(dir, name).delete();
+            }
+        }
+    }
+
+    /** Writes the Commit of version 1 with UID NAME, out of COMMITS, in
+     *  the current version to the object directory DIR, after its parents
+     *  if they have not been, given the new UID of each Blob in BLOBIDS.
+     *  Records the new UID of each Commit written in COMMITIDS. */
+    private static void rewrite(String name, Map<String, OldCommit> commits,
+                                Map<String, ObjectId> blobIds,
+                                Map<String, ObjectId> commitIds, File dir) {
+        List<String> line = new ArrayList<>();
+        for (String at = name; at != null && !commitIds.containsKey(at);
+             at = commits.get(at).parent) {
+            line.add(at);
+        }
+        for (int i = line.size() - 1; i >= 0; i -= 1) {
+            OldCommit old = commits.get(line.get(i));
+            Commit commit = new Commit(old.message, old.time,
+                    old.parent == null ? null : commitIds.get(old.parent));
+            for (Map.Entry<String, String> entry: old.files.entrySet()) {
+                commit.putFile(entry.getKey(), blobIds.get(entry.getValue()));
+            }
+            byte[] content = commit.seal();
+            File file = Repository.newObjectFile(dir, commit.getId());
+            if (!file.exists()) {
+                writeContentsAtomically(file, (Object) content);
+            }
+            commitIds.put(line.get(i), commit.getId());
+        }
+    }
+
+    /** Throws a GitletException saying the object with UID ID, named by
+     *  the file NAME, is missing, unless FOUND. */
+    private static void checkFound(boolean found, String id, String name) {
+        if (!found) {
+            throw new GitletException("This repository cannot be upgraded: " + name
+                    + " names " + id + ", which is missing.");
+        }
+    }
+
+    /** Returns the object of version 1 in FILE, read as its stand-in of
+     *  class TYPE.  Throws a GitletException if it cannot be read. */
+    private static <T> T readOld(File file, Class<T> type) {
+        try (ObjectInputStream in = new OldInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException excp) {
+            throw new GitletException("This repository was written by an older "
+                    + "version of Gitlet, and cannot be read: " + file.getName()
+                    + " is not a " + type.getSimpleName().substring(3) + ".");
+        }
+    }
+
+    /** Returns the UIDs of the objects directly in the object directory
+     *  DIR. */
+    private static List<String> flatNames(File dir) {
+        List<String> result = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name: names) {
+                if (ObjectId.isHex(name)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns an object file directly in the object directory DIR, or
+     *  null if there is none. */
+    private static File flatObject(File dir) {
+        List<String> names = flatNames(dir);
+        return names.isEmpty() ? null : join(dir, names.get(0));
+    }
+
+    /** Returns whether the Commit file FILE is in the current format. */
+    private static boolean readable(File file) {
+        try {
+            Commit.findCommit(file);
+            return true;
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Moves the objects of GITLETDIR that are directly in commits/ and
+     *  blobs/ into subdirectories by UID prefix.  Each object is renamed
+     *  within its directory, so the move is cheap. */
+    private static void moveObjects(File gitletDir) {
+        for (String dirName: new String[] {"commits", "blobs"}) {
+            File dir = join(gitletDir, dirName);
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name: names) {
+                if (!ObjectId.isHex(name)) {
+                    continue;
+                }
+                File target = Repository.newObjectFile(dir, ObjectId.fromHex(name));
+                try {
+                    Files.move(join(dir, name).toPath(), target.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Reads objects of version 1, reading each of its classes as its
+     *  stand-in, which has the same fields, in place of the current class
+     *  of the same name. */
+    private static class OldInputStream extends ObjectInputStream {
+
+        /** Reads objects of version 1 from IN. */
+        OldInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> old = OLD_CLASSES.get(desc.getName());
+            if (old == null) {
+                return desc;
+            }
+            ObjectStreamClass oldDesc = ObjectStreamClass.lookup(old);
+            if (desc.getSerialVersionUID() != oldDesc.getSerialVersionUID()) {
+                throw new InvalidClassException(desc.getName(), "not of version 1");
+            }
+            return oldDesc;
+        }
+    }
+
+    /** A Commit of version 1. */
+    private static class OldCommit implements Serializable {
+        private static final long serialVersionUID = -5012949286334235784L;
+
+        /** The message of this Commit. */
+        private String message;
+
+        /** Time of the Commit. */
+        private Date time;
+
+        /** Names of files of the Commit, mapped to the UIDs of their Blobs. */
+        private HashMap<String, String> files;
+
+        /** UID of the parent Commit. */
+        private String parent;
+    }
+
+    /** A Blob of version 1. */
+    private static class OldBlob implements Serializable {
+        private static final long serialVersionUID = -5531743328883706634L;
+
+        /** Name of the file the Blob was made from. */
+        private String name;
+
+        /** Content of the Blob. */
+        private byte[] content;
+    }
+
+    /** A Stage of version 1. */
+    private static class OldStage implements Serializable {
+        private static final long serialVersionUID = 4919281555533455054L;
+
+        /** Name of the Stage. */
+        private String name;
+
+        /** Files in Stage, mapped to the UIDs of their Blobs. */
+        private HashMap<String, String> files;
+    }
+
+    /** A Branch of version 1. */
+    private static class OldBranch implements Serializable {
+        private static final long serialVersionUID = -8837532215568231601L;
+
+        /** Name of the Branch. */
+        private String name;
+
+        /** UID of the Commit the Branch is referring to. */
+        private String currCommit;
+    }
+}
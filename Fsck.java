@@ -0,0 +1,302 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Checks the integrity of the object store.
+ *
+ *  Every object file is hashed again and its name compared with the
+ *  result, which catches corrupt and truncated objects.  Every Commit is
+ *  deserialized and its parents and Blobs looked up among the object files,
+ *  and every Branch and staged Blob is checked the same way.  With
+ *  --connectivity-only, Blobs are not read at all: only Commits are read,
+ *  to check that what they refer to exists.
+ *
+ *  Which objects exist is settled by the one listing of each object
+ *  directory, so no check costs a stat.  The files are split in halves on
+ *  a fork-join pool until the pieces are small, and idle threads steal
+ *  pieces from busy ones, so every core stays busy however unevenly the
+ *  sizes of the objects are spread.  Blobs are hashed as they are read
+ *  through a fixed buffer, so memory does not grow with the largest file.
+ *  @author Enran Wu
+ */
+class Fsck {
+
+    /** Number of files a task checks itself rather than splitting. */
+    private static final int GRAIN = 64;
+
+    /** Size of the buffer Blobs are hashed through. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Milliseconds between progress updates. */
+    private static final long PROGRESS_INTERVAL = 250;
+
+    /** SHA-1 digest of each thread. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
+    /** Read buffer of each thread. */
+    private static final ThreadLocal<byte[]> BUFFERS =
+        ThreadLocal.withInitial(() -> new byte[BUFFER]);
+
+    /** Whether to skip hashing the objects. */
+    private final boolean connectivityOnly;
+
+    /** UIDs of the Commit files. */
+    private final Set<ObjectId> commits = new HashSet<>();
+
+    /** UIDs of the Blob files. */
+    private final Set<ObjectId> blobs = new HashSet<>();
+
+    /** Problems found, in no particular order. */
+    private final ConcurrentLinkedQueue<String> problems = new ConcurrentLinkedQueue<>();
+
+    /** Number of object files checked so far. */
+    private final AtomicLong done = new AtomicLong();
+
+    /** Number of object files to check. */
+    private long total;
+
+    Fsck(boolean connectivityOnly) {
+        this.connectivityOnly = connectivityOnly;
+    }
+
+    /** Checks the files NAMES[LO, HI) of directory DIR, which holds
+     *  Commits if COMMITDIR and Blobs otherwise. */
+    private class Check extends RecursiveAction {
+        /** Directory of the files. */
+        private final File dir;
+
+        /** Whether DIR holds Commits. */
+        private final boolean commitDir;
+
+        /** Names of the files. */
+        private final List<String> names;
+
+        /** Range of NAMES to check. */
+        private final int lo, hi;
+
+        Check(File dir, boolean commitDir, List<String> names, int lo, int hi) {
+            this.dir = dir;
+            this.commitDir = commitDir;
+            this.names = names;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Check(dir, commitDir, names, lo, mid),
+                        new Check(dir, commitDir, names, mid, hi));
+                return;
+            }
+            for (int i = lo; i < hi; i += 1) {
+                File file = Repository.objectFile(dir, names.get(i));
+                ObjectId id = ObjectId.fromHex(names.get(i));
+                if (commitDir) {
+                    checkCommit(file, id);
+                } else if (!connectivityOnly) {
+                    checkBlob(file, id);
+                }
+                done.incrementAndGet();
+            }
+        }
+    }
+
+    /** Runs every check. */
+    void run() {
+        List<String> commitNames = objectNames(Repository.commitsDir(), commits);
+        List<String> blobNames = objectNames(Repository.blobsDir(), blobs);
+        total = commitNames.size() + (connectivityOnly ? 0 : blobNames.size());
+        checkRefs();
+
+        Thread progress = startProgress();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Check(Repository.commitsDir(), true, commitNames,
+                    0, commitNames.size()));
+            if (!connectivityOnly) {
+                pool.invoke(new Check(Repository.blobsDir(), false, blobNames,
+                        0, blobNames.size()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (progress != null) {
+            progress.interrupt();
+            try {
+                progress.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Returns the UIDs of the objects in DIR, in hex, adding them to
+     *  IDS. */
+    private static List<String> objectNames(File dir, Set<ObjectId> ids) {
+        List<String> result = Repository.objectNames(dir);
+        for (String name: result) {
+            ids.add(ObjectId.fromHex(name));
+        }
+        return result;
+    }
+
+    /** Checks that every Branch names an existing Commit and every staged
+     *  Blob exists. */
+    private void checkRefs() {
+        for (String branchName: Branch.names()) {
+            ObjectId tip;
+            try {
+                tip = Branch.findBranch(branchName).getCurrCommit();
+            } catch (RuntimeException excp) {
+                problems.add("error: branch " + branchName + " is unreadable");
+                continue;
+            }
+            if (!commits.contains(tip)) {
+                problems.add("error: branch " + branchName + " points to missing commit "
+                        + tip.toHex());
+            }
+        }
+        for (File stageFile: Repository.allStageFiles()) {
+            checkStage(stageFile, stageFile.getName().equals("additions.txt")
+                    ? "addition" : "removal");
+        }
+    }
+
+    /** Checks that every Blob of the Stage in FILE, staged for KIND,
+     *  exists. */
+    private void checkStage(File file, String kind) {
+        if (!file.isFile()) {
+            return;
+        }
+        Stage stage;
+        try {
+            stage = Stage.findStage(file);
+        } catch (RuntimeException excp) {
+            problems.add("error: stage for " + kind + " is unreadable");
+            return;
+        }
+        for (Map.Entry<String, ObjectId> entry: stage.getFiles().entrySet()) {
+            if (!blobs.contains(entry.getValue())) {
+                problems.add("error: missing blob " + entry.getValue().toHex() + " ("
+                        + entry.getKey() + ") staged for " + kind);
+            }
+        }
+    }
+
+    /** Checks the Commit file FILE, whose name is ID. */
+    private void checkCommit(File file, ObjectId id) {
+        Commit commit;
+        try {
+            byte[] content = Utils.readContents(file);
+            if (!connectivityOnly && !Utils.sha1Id((Object) content).equals(id)) {
+                problems.add("error: commit " + id.toHex() + " is corrupt: hash mismatch");
+                return;
+            }
+            commit = Utils.deserialize(content, Commit.class);
+        } catch (RuntimeException excp) {
+            problems.add("error: commit " + id.toHex() + " is unreadable");
+            return;
+        }
+        for (ObjectId parent: commit.getParents()) {
+            if (!commits.contains(parent)) {
+                problems.add("error: missing parent " + parent.toHex() + " of commit "
+                        + id.toHex());
+            }
+        }
+        for (Map.Entry<String, ObjectId> entry: commit.getFiles().entrySet()) {
+            if (!blobs.contains(entry.getValue())) {
+                problems.add("error: missing blob " + entry.getValue().toHex() + " ("
+                        + entry.getKey() + ") of commit " + id.toHex());
+            }
+        }
+    }
+
+    /** Checks that the Blob file FILE hashes to its name ID. */
+    private void checkBlob(File file, ObjectId id) {
+        MessageDigest md = SHA1.get();
+        byte[] buffer = BUFFERS.get();
+        long length = 0;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                length += n;
+            }
+        } catch (IOException excp) {
+            md.reset();
+            problems.add("error: blob " + id.toHex() + " is unreadable");
+            return;
+        }
+        Trace.read(length);
+        Trace.hashed(length);
+        if (!ObjectId.fromRaw(md.digest()).equals(id)) {
+            problems.add("error: blob " + id.toHex() + " is corrupt: hash mismatch");
+        }
+    }
+
+    /** Starts a thread printing progress to standard error while the
+     *  check runs, and returns it, or returns null if standard error is not
+     *  a terminal. */
+    private Thread startProgress() {
+        if (System.console() == null) {
+            return null;
+        }
+        Thread thread = new Thread(() -> {
+            boolean running = true;
+            while (running) {
+                try {
+                    Thread.sleep(PROGRESS_INTERVAL);
+                } catch (InterruptedException excp) {
+                    running = false;
+                }
+                long count = done.get();
+                System.err.printf("\rChecking objects: %d%% (%d/%d)%s",
+                        total == 0 ? 100 : count * 100 / total, count, total,
+                        running ? "" : ", done.\n");
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /** Returns the problems found, in order. */
+    List<String> getProblems() {
+        List<String> result = new ArrayList<>(problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the number of Commit files. */
+    long commits() {
+        return commits.size();
+    }
+
+    /** Returns the number of Blob files. */
+    long blobs() {
+        return blobs.size();
+    }
+}
@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/** Removes objects that can no longer be reached.
+ *  The mark phase starts from the head Commit of every Branch and every
+ *  Blob in the Stages, and walks the Commit graph on a fork-join pool.
+ *  Each task follows a line of first parents in a loop, so a long history
+ *  needs no deeper stack than a short one, and forks a new task for every
+ *  other parent not marked yet, which idle workers steal; marking a Commit
+ *  in a concurrent set decides which task walks it.  No task waits for
+ *  another, so the pool is kept busy by merges wherever they are.
+ *  Commits the commit-graph holds are not loaded during the walk, as it
+ *  gives their parents; their Blobs are marked afterwards, with every such
+ *  Commit loaded in parallel.  The sweep phase deletes every unmarked
+ *  Commit or Blob file last modified before the grace period, so objects
+ *  written by a command running concurrently (e.g. an add that has not
+ *  updated the Stage yet) survive, and writes the commit-graph again if
+ *  there is one and Commits were deleted.
+ *  @author Enran Wu
+ */
+class GarbageCollector {
+
+    /** Default grace period: two weeks, in milliseconds. */
+    static final long DEFAULT_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** UIDs of the reachable Commits. */
+    private final Set<ObjectId> commits = ConcurrentHashMap.newKeySet();
+
+    /** UIDs of the reachable Blobs. */
+    private final Set<ObjectId> blobs = ConcurrentHashMap.newKeySet();
+
+    /** UIDs of the reachable Commits loaded while marking, whose Blobs are
+     *  marked already. */
+    private final Set<ObjectId> loaded = ConcurrentHashMap.newKeySet();
+
+    /** The commit-graph, or null if there is none. */
+    private CommitGraph graph;
+
+    /** Number of objects removed by the last sweep. */
+    private long removed;
+
+    /** Number of bytes freed by the last sweep. */
+    private long freed;
+
+    /** Number of unreachable objects kept for being too recent. */
+    private long recent;
+
+    /** Marks every object reachable from the Branches and the Stages of
+     *  every worktree. */
+    void mark() {
+        List<ObjectId> heads = new ArrayList<>();
+        for (String branchName: Branch.names()) {
+            ObjectId head = Branch.findBranch(branchName).getCurrCommit();
+            if (commits.add(head)) {
+                heads.add(head);
+            }
+        }
+        for (File stageFile: Repository.allStageFiles()) {
+            blobs.addAll(Stage.findStage(stageFile).getFiles().values());
+        }
+
+        graph = CommitGraph.read();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Mark(null, heads));
+            pool.submit(() -> commits.parallelStream()
+                    .filter(id -> !loaded.contains(id))
+                    .forEach(id -> blobs.addAll(Commit.findCommit(id).getFiles().values())))
+                    .join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** A task marking the ancestors of some marked Commits.  It completes
+     *  once every task it forked has. */
+    private final class Mark extends CountedCompleter<Void> {
+
+        /** UIDs of the marked Commits whose ancestors are to be marked. */
+        private final List<ObjectId> starts;
+
+        /** A task marking the ancestors of STARTS, forked by PARENT, or
+         *  the first task if PARENT is null. */
+        Mark(CountedCompleter<?> parent, List<ObjectId> starts) {
+            super(parent);
+            this.starts = starts;
+        }
+
+        @Override
+        public void compute() {
+            for (int i = 1; i < starts.size(); i += 1) {
+                fork(starts.get(i));
+            }
+            ObjectId id = starts.isEmpty() ? null : starts.get(0);
+            while (id != null) {
+                ObjectId next = null;
+                for (ObjectId parent: parents(id)) {
+                    if (!commits.add(parent)) {
+                        continue;
+                    }
+                    if (next == null) {
+                        next = parent;
+                    } else {
+                        fork(parent);
+                    }
+                }
+                id = next;
+            }
+            tryComplete();
+        }
+
+        /** Forks a task marking the ancestors of the marked Commit with
+         *  UID ID. */
+        private void fork(ObjectId id) {
+            addToPendingCount(1);
+            new Mark(this, List.of(id)).fork();
+        }
+    }
+
+    /** Returns the UIDs of the parents of the Commit with UID ID, from
+     *  the commit-graph if there is one and it holds the Commit.
+     *  Otherwise the Commit is loaded, its Blobs are marked and its UID is
+     *  added to LOADED. */
+    private List<ObjectId> parents(ObjectId id) {
+        int position = graph == null ? -1 : graph.find(id);
+        if (position < 0) {
+            Commit commit = Commit.findCommit(id);
+            blobs.addAll(commit.getFiles().values());
+            loaded.add(id);
+            return commit.getParents();
+        }
+        List<ObjectId> result = new ArrayList<>(2);
+        if (graph.parent(position) != null) {
+            result.add(graph.parent(position));
+        }
+        if (graph.secondParent(position) != null) {
+            result.add(graph.secondParent(position));
+        }
+        return result;
+    }
+
+    /** Deletes the unmarked objects that are older than GRACE milliseconds,
+     *  or only counts them if not PRUNE.  If Commits are deleted, the
+     *  commit-graph, if there is one, is written again without them. */
+    void sweep(long grace, boolean prune) throws IOException {
+        long cutoff = System.currentTimeMillis() - grace;
+        long commitsRemoved = sweep(Repository.commitsDir(), commits, cutoff, prune);
+        sweep(Repository.blobsDir(), blobs, cutoff, prune);
+        if (prune && commitsRemoved > 0 && Repository.commitGraphFile().isFile()) {
+            CommitGraph.write();
+        }
+    }
+
+    /** Deletes the files in DIR not named in MARKED and last modified
+     *  before CUTOFF, or only counts them if not PRUNE.  Returns the
+     *  number deleted, or that would be. */
+    private long sweep(File dir, Set<ObjectId> marked, long cutoff, boolean prune) {
+        long before = removed;
+        for (String name: Repository.objectNames(dir)) {
+            if (marked.contains(ObjectId.fromHex(name))) {
+                continue;
+            }
+            File file = Repository.objectFile(dir, name);
+            if (file.lastModified() >= cutoff) {
+                recent += 1;
+                continue;
+            }
+            long length = file.length();
+            if (!prune || file.delete()) {
+                removed += 1;
+                freed += length;
+            }
+        }
+        return removed - before;
+    }
+
+    /** Returns the number of reachable objects. */
+    long reachable() {
+        return commits.size() + blobs.size();
+    }
+
+    /** Returns the number of objects the sweep removed (or would remove). */
+    long removed() {
+        return removed;
+    }
+
+    /** Returns the number of bytes the sweep freed (or would free). */
+    long freed() {
+        return freed;
+    }
+
+    /** Returns the number of unreachable objects kept for being recent. */
+    long recent() {
+        return recent;
+    }
+
+    /** Returns the grace period, in milliseconds, given by the argument
+     *  of --prune=ARG: "now", or a number followed by d, h, m or s.
+     *  Returns -1 if ARG is not of that form. */
+    static long parseGrace(String arg) {
+        if (arg.equals("now")) {
+            return 0;
+        }
+        if (!arg.matches("[0-9]+[dhms]")) {
+            return -1;
+        }
+        long n = Long.parseLong(arg.substring(0, arg.length() - 1));
+        switch (arg.charAt(arg.length() - 1)) {
+            case 'd':
+                return n * 24 * 60 * 60 * 1000;
+            case 'h':
+                return n * 60 * 60 * 1000;
+            case 'm':
+                return n * 60 * 1000;
+            default:
+                return n * 1000;
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A gitlet repository, for use from inside another program.
+ *
+ *  Each GitletRepository works in the directory it is made with rather
+ *  than the current one, returns what it finds rather than printing it,
+ *  and throws a GitletException, whose message is what gitlet would have
+ *  printed, rather than exiting.  Every command runs on the calling thread
+ *  with that directory as its Repository, so GitletRepositories over
+ *  different directories may be used from different threads at once.
+ *  Calls on one GitletRepository are run one at a time, since they share
+ *  its working directory and stages.
+ *
+ *  A command that cannot be done throws a GitletException, or one of its
+ *  subclasses where a caller may want to tell the case apart: a
+ *  NotFoundException for a branch, commit, file or remote that does not
+ *  exist, an UncommittedChangesException for changes a command would lose,
+ *  a ConflictException for a rebase or cherry-pick that conflicts, a
+ *  PushRejectedException for a push that would lose the remote's commits,
+ *  and a NotARepositoryException where there is no repository.
+ *
+ *  Commands without a method of their own are run through run, which takes
+ *  the arguments java gitlet.Main would and returns what it would print.
+ *  @author Enran Wu
+ */
+public class GitletRepository {
+
+    /** The working directory. */
+    private final File root;
+
+    /** A GitletRepository whose working directory is ROOT, which holds the
+     *  .gitlet directory once init has been run. */
+    public GitletRepository(File root) {
+        this.root = root.getAbsoluteFile();
+    }
+
+    /** Returns the working directory. */
+    public File getRoot() {
+        return root;
+    }
+
+    /** Runs the gitlet command ARGS, as java gitlet.Main ARGS would, and
+     *  returns what it prints. */
+    public synchronized String run(String... args) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, Charset.defaultCharset());
+        Repository.runIn(new Repository(root, out), () -> {
+            Main.run(args);
+            return null;
+        });
+        out.flush();
+        return bytes.toString(Charset.defaultCharset());
+    }
+
+    /** Creates a new repository in the working directory. */
+    public synchronized void init() throws IOException {
+        Repository.runIn(new Repository(root, quiet()), () -> {
+            Commands.init();
+            return null;
+        });
+    }
+
+    /** Stages the working file FILENAME for addition. */
+    public void add(String fileName) throws IOException {
+        call(() -> {
+            Commands.add(fileName);
+            return null;
+        });
+    }
+
+    /** Stages the file FILENAME for removal. */
+    public void rm(String fileName) throws IOException {
+        call(() -> {
+            Commands.rm(fileName);
+            return null;
+        });
+    }
+
+    /** Commits the staged files with MESSAGE, and returns the UID of the
+     *  new Commit. */
+    public String commit(String message) throws IOException {
+        return call(() -> {
+            Commands.commit(message);
+            return headId();
+        });
+    }
+
+    /** Creates the branch NAME at the head Commit. */
+    public void branch(String name) throws IOException {
+        call(() -> {
+            Commands.branch(name);
+            return null;
+        });
+    }
+
+    /** Checks out the branch NAME. */
+    public void checkout(String name) throws IOException {
+        call(() -> {
+            Commands.checkoutBranch(name);
+            return null;
+        });
+    }
+
+    /** Returns the name of the current branch. */
+    public String currentBranch() throws IOException {
+        return call(Repository::headName);
+    }
+
+    /** Returns the UID of the head Commit. */
+    public String head() throws IOException {
+        return call(GitletRepository::headId);
+    }
+
+    /** Returns the names of the branches, in order. */
+    public List<String> branches() throws IOException {
+        return call(Branch::names);
+    }
+
+    /** Removes the branch NAME. */
+    public void rmBranch(String name) throws IOException {
+        call(() -> {
+            Commands.rmBranch(name);
+            return null;
+        });
+    }
+
+    /** Checks out the Commit COMMITID, which may be a branch name or a
+     *  unique prefix of a UID, and moves the current branch to it. */
+    public void reset(String commitID) throws IOException {
+        call(() -> {
+            Commands.reset(commitID);
+            return null;
+        });
+    }
+
+    /** Writes file FILENAME as it is in the Commit COMMITID, which may be a
+     *  branch name or a unique prefix of a UID, to the working directory,
+     *  without staging it. */
+    public void checkoutFile(String commitID, String fileName) throws IOException {
+        call(() -> {
+            Commands.checkout(commitID, fileName);
+            return null;
+        });
+    }
+
+    /** Returns the branches and the staged changes. */
+    public Status status() throws IOException {
+        return call(() -> {
+            Stage addStage = Stage.findStage(Repository.addedFile());
+            Stage rmStage = Stage.findStage(Repository.removedFile());
+            return new Status(Repository.headName(), Branch.names(),
+                    new ArrayList<>(new TreeSet<>(addStage.getNames())),
+                    new ArrayList<>(new TreeSet<>(rmStage.getNames())),
+                    Commands.stagedRenames(rmStage, addStage));
+        });
+    }
+
+    /** Returns up to LIMIT Commits of the first-parent line from the Commit
+     *  COMMITID, which may be a branch name or a unique prefix of a UID,
+     *  newest first, or all of them if LIMIT is negative. */
+    public List<LogEntry> log(String commitID, int limit) throws IOException {
+        return call(() -> {
+            List<LogEntry> result = new ArrayList<>();
+            Commit commit = Commands.commitWithId(commitID);
+            while (commit != null && result.size() != limit) {
+                result.add(new LogEntry(commit));
+                commit = commit.getParent() == null ? null : Commit.findCommit(commit.getParent());
+            }
+            return result;
+        });
+    }
+
+    /** Merges the branch NAME into the current branch, and returns what
+     *  the merge did.  A merge with conflicts is committed with the
+     *  conflicting files marked, as by java gitlet.Main merge. */
+    public MergeResult merge(String name) throws IOException {
+        return call(() -> new MergeResult(Commands.merge(name, false)));
+    }
+
+    /** Replays the Commits of the current branch since it split from
+     *  UPSTREAM, a branch name or a unique prefix of a UID, on top of it,
+     *  and returns what was replayed.  Throws a ConflictException, and
+     *  changes nothing, if they conflict. */
+    public ReplayResult rebase(String upstream) throws IOException {
+        return call(() -> new ReplayResult(Commands.rebase(upstream)));
+    }
+
+    /** Applies the changes of each of the Commits COMMITIDS, branch names
+     *  or unique prefixes of UIDs, on top of the head Commit in order, and
+     *  returns what was replayed.  Throws a ConflictException, and changes
+     *  nothing, if they conflict. */
+    public ReplayResult cherryPick(String... commitIDs) throws IOException {
+        return call(() -> new ReplayResult(Commands.cherryPick(Arrays.asList(commitIDs))));
+    }
+
+    /** Adds the remote NAME, the .gitlet directory at PATH. */
+    public void addRemote(String name, String path) throws IOException {
+        call(() -> {
+            Commands.addRemote(name, path);
+            return null;
+        });
+    }
+
+    /** Removes the remote NAME. */
+    public void rmRemote(String name) throws IOException {
+        call(() -> {
+            Commands.rmRemote(name);
+            return null;
+        });
+    }
+
+    /** Copies the branch BRANCHNAME of the remote REMOTENAME, and what it
+     *  holds, to the branch REMOTENAME/BRANCHNAME, and returns the UID of
+     *  its head Commit. */
+    public String fetch(String remoteName, String branchName) throws IOException {
+        return call(() -> {
+            Commands.fetch(remoteName, branchName);
+            return Branch.findBranch(remoteName + "/" + branchName).getCurrCommit().toHex();
+        });
+    }
+
+    /** Copies the current branch to the branch BRANCHNAME of the remote
+     *  REMOTENAME.  Throws a PushRejectedException if that branch has
+     *  Commits the current branch does not. */
+    public void push(String remoteName, String branchName) throws IOException {
+        call(() -> {
+            Commands.push(remoteName, branchName);
+            return null;
+        });
+    }
+
+    /** Fetches the branch BRANCHNAME of the remote REMOTENAME, merges it
+     *  into the current branch, and returns what the merge did. */
+    public MergeResult pull(String remoteName, String branchName) throws IOException {
+        return call(() -> new MergeResult(Commands.pull(remoteName, branchName)));
+    }
+
+    /** Returns the files of the Commit COMMITID, which may be a branch name
+     *  or a unique prefix of a UID, each mapped to the UID of its Blob, in
+     *  order of name. */
+    public Map<String, String> files(String commitID) throws IOException {
+        return call(() -> {
+            Map<String, String> result = new TreeMap<>();
+            Commands.commitWithId(commitID).getFiles()
+                    .forEach((name, id) -> result.put(name, id.toHex()));
+            return result;
+        });
+    }
+
+    /** Returns the content of file FILENAME in the Commit COMMITID, which
+     *  may be a branch name or a unique prefix of a UID. */
+    public byte[] read(String commitID, String fileName) throws IOException {
+        return call(() -> {
+            Commit commit = Commands.commitWithId(commitID);
+            if (!commit.contains(fileName)) {
+                throw new NotFoundException("File does not exist in that commit.");
+            }
+            return Blob.findBlob(commit.getFiles().get(fileName)).getContent();
+        });
+    }
+
+    /** Runs ACTION in the repository, holding its lock, with what it
+     *  prints thrown away.  Throws a GitletException if there is no
+     *  repository. */
+    private synchronized <T> T call(Repository.Action<T> action) throws IOException {
+        return Repository.runIn(new Repository(root, quiet()), () -> {
+            if (!Repository.gitletDir().isDirectory()) {
+                throw new NotARepositoryException("Not in an initialized Gitlet directory.");
+            }
+            return RepositoryLock.holding(Repository.commonDir(), () -> {
+                Format.upgrade(Repository.commonDir());
+                return action.run();
+            });
+        });
+    }
+
+    /** Returns a PrintStream that throws away what is printed to it. */
+    private static PrintStream quiet() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    /** Returns the UID of the head Commit of the Repository of this
+     *  thread. */
+    private static String headId() {
+        return Repository.findCurrBranch().getCurrCommit().toHex();
+    }
+
+    /** The branches and staged changes of a repository. */
+    public static class Status {
+
+        /** Name of the current branch. */
+        private final String currentBranch;
+
+        /** Names of the branches, in order. */
+        private final List<String> branches;
+
+        /** Names of the files staged for addition, in order. */
+        private final List<String> staged;
+
+        /** Names of the files staged for removal, in order. */
+        private final List<String> removed;
+
+        /** Staged removals that amount to renames, each mapped to the name
+         *  of the file it was renamed to. */
+        private final Map<String, String> renamed;
+
+        /** A Status with the given contents. */
+        Status(String currentBranch, List<String> branches, List<String> staged,
+               List<String> removed, Map<String, String> renamed) {
+            this.currentBranch = currentBranch;
+            this.branches = Collections.unmodifiableList(branches);
+            this.staged = Collections.unmodifiableList(staged);
+            this.removed = Collections.unmodifiableList(removed);
+            this.renamed = Collections.unmodifiableMap(renamed);
+        }
+
+        /** Returns the name of the current branch. */
+        public String getCurrentBranch() {
+            return currentBranch;
+        }
+
+        /** Returns the names of the branches, in order. */
+        public List<String> getBranches() {
+            return branches;
+        }
+
+        /** Returns the names of the files staged for addition, in order. */
+        public List<String> getStaged() {
+            return staged;
+        }
+
+        /** Returns the names of the files staged for removal, in order. */
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /** Returns the staged removals that amount to renames, each mapped
+         *  to the name of the file it was renamed to, in order. */
+        public Map<String, String> getRenamed() {
+            return renamed;
+        }
+    }
+
+    /** A Commit, as listed by log. */
+    public static class LogEntry {
+
+        /** UID of the Commit. */
+        private final String id;
+
+        /** Its message. */
+        private final String message;
+
+        /** Its time. */
+        private final Date time;
+
+        /** UIDs of its parents, first parent first. */
+        private final List<String> parents;
+
+        /** A LogEntry for COMMIT. */
+        LogEntry(Commit commit) {
+            id = commit.getId().toHex();
+            message = commit.getMessage();
+            time = commit.getTime();
+            List<String> ids = new ArrayList<>();
+            for (ObjectId parent: commit.getParents()) {
+                ids.add(parent.toHex());
+            }
+            parents = Collections.unmodifiableList(ids);
+        }
+
+        /** Returns the UID of the Commit. */
+        public String getId() {
+            return id;
+        }
+
+        /** Returns its message. */
+        public String getMessage() {
+            return message;
+        }
+
+        /** Returns its time. */
+        public Date getTime() {
+            return new Date(time.getTime());
+        }
+
+        /** Returns the UIDs of its parents, first parent first. */
+        public List<String> getParents() {
+            return parents;
+        }
+    }
+
+    /** What a merge or pull did. */
+    public static class MergeResult {
+
+        /** Whether the current branch was fast-forwarded. */
+        private final boolean fastForward;
+
+        /** UID of the head Commit afterwards. */
+        private final String head;
+
+        /** Names of the files left in conflict, in order. */
+        private final List<String> conflicts;
+
+        /** The result of MERGE, done in the Repository of this thread, or
+         *  of a fast-forward if MERGE is null. */
+        MergeResult(Merge merge) {
+            fastForward = merge == null;
+            head = headId();
+            conflicts = merge == null ? List.of()
+                    : Collections.unmodifiableList(new ArrayList<>(merge.getConflicts()));
+        }
+
+        /** Returns whether the current branch was fast-forwarded, rather
+         *  than given a merge Commit. */
+        public boolean isFastForward() {
+            return fastForward;
+        }
+
+        /** Returns the UID of the head Commit afterwards. */
+        public String getHead() {
+            return head;
+        }
+
+        /** Returns the names of the files left in conflict, in order. */
+        public List<String> getConflicts() {
+            return conflicts;
+        }
+    }
+
+    /** What a rebase or cherry-pick did. */
+    public static class ReplayResult {
+
+        /** UID of the head Commit afterwards. */
+        private final String head;
+
+        /** Number of new Commits. */
+        private final int made;
+
+        /** Number of Commits dropped, as the head already had their
+         *  changes. */
+        private final int dropped;
+
+        /** The result of REPLAY, done in the Repository of this thread, or
+         *  of a rebase that had nothing to do if REPLAY is null. */
+        ReplayResult(Replay replay) {
+            head = headId();
+            made = replay == null ? 0 : replay.made();
+            dropped = replay == null ? 0 : replay.dropped();
+        }
+
+        /** Returns the UID of the head Commit afterwards. */
+        public String getHead() {
+            return head;
+        }
+
+        /** Returns the number of new Commits. */
+        public int getMade() {
+            return made;
+        }
+
+        /** Returns the number of Commits dropped, as the head already had
+         *  their changes. */
+        public int getDropped() {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/** Tests of GitletRepository, run in process rather than through
+ *  java gitlet.Main: its typed results and exceptions over several
+ *  repositories, and calls made from several threads at once, both on
+ *  different repositories and on the worktrees of one.
+ *
+ *  Usage: java -ea gitlet.GitletRepositoryTest
+ *  Prints the name of each test as it passes, and exits with status 1
+ *  after the first that fails.  The repositories are made under a new
+ *  temporary directory, which is deleted afterwards.
+ *  @author Enran Wu
+ */
+public class GitletRepositoryTest {
+
+    /** Number of threads of the concurrent tests. */
+    private static final int THREADS = 4;
+
+    /** Number of commits each thread of the concurrent tests makes. */
+    private static final int COMMITS = 15;
+
+    /** The directory the repositories are made in. */
+    private final File base;
+
+    /** A GitletRepositoryTest making its repositories in BASE. */
+    GitletRepositoryTest(File base) {
+        this.base = base;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File base = Files.createTempDirectory("gitlet-test").toFile();
+        GitletRepositoryTest test = new GitletRepositoryTest(base);
+        try {
+            test.run("typed results", test::typedResults);
+            test.run("typed exceptions", test::typedExceptions);
+            test.run("remotes", test::remotes);
+            test.run("concurrent repositories", test::concurrentRepositories);
+            test.run("concurrent worktrees", test::concurrentWorktrees);
+        } catch (AssertionError | Exception excp) {
+            excp.printStackTrace();
+            System.exit(1);
+        } finally {
+            delete(base);
+        }
+        System.out.println("All passed.");
+    }
+
+    /** A test. */
+    interface Body {
+        /** Runs the test, throwing an AssertionError if it fails. */
+        void run() throws Exception;
+    }
+
+    /** Runs the test BODY named NAME, and prints its name once it has
+     *  passed. */
+    private void run(String name, Body body) throws Exception {
+        body.run();
+        System.out.println(name + ": OK");
+    }
+
+    /** Merge, rebase, cherry-pick, status and log return what they did. */
+    private void typedResults() throws Exception {
+        GitletRepository repo = newRepository("results");
+        write(repo, "wug.txt", "a\nb\nc\n");
+        repo.add("wug.txt");
+        String first = repo.commit("added wug");
+        repo.branch("other");
+
+        write(repo, "wug.txt", "A\nb\nc\n");
+        repo.add("wug.txt");
+        repo.commit("changed first line");
+        repo.checkout("other");
+        write(repo, "wug.txt", "a\nb\nC\n");
+        repo.add("wug.txt");
+        String other = repo.commit("changed last line");
+
+        GitletRepository.MergeResult merge = repo.merge("master");
+        check(!merge.isFastForward(), "merge fast-forwarded");
+        check(merge.getConflicts().isEmpty(), "merge conflicts: " + merge.getConflicts());
+        check(repo.head().equals(merge.getHead()), "merge head " + merge.getHead());
+        check(new String(repo.read("other", "wug.txt")).equals("A\nb\nC\n"),
+                "merged content");
+        List<GitletRepository.LogEntry> log = repo.log("other", -1);
+        check(log.size() == 4, "log length " + log.size());
+        check(log.get(0).getParents().size() == 2, "merge parents");
+        check(log.get(1).getId().equals(other), "first parent " + log.get(1).getId());
+        check(repo.log("other", 2).size() == 2, "log limit");
+
+        repo.reset(other);
+        GitletRepository.ReplayResult rebase = repo.rebase("master");
+        check(rebase.getMade() == 1 && rebase.getDropped() == 0,
+                "rebase made " + rebase.getMade() + ", dropped " + rebase.getDropped());
+        check(repo.log("other", -1).get(1).getMessage().equals("changed first line"),
+                "rebased onto master");
+        check(repo.rebase("master").getMade() == 0, "rebase with nothing to do");
+
+        repo.checkout("master");
+        GitletRepository.ReplayResult pick = repo.cherryPick(rebase.getHead());
+        check(pick.getMade() == 1, "cherry-pick made " + pick.getMade());
+        check(new String(repo.read("master", "wug.txt")).equals("A\nb\nC\n"),
+                "picked content");
+
+        write(repo, "notwug.txt", "a\nb\nc\n");
+        repo.add("notwug.txt");
+        repo.rm("wug.txt");
+        GitletRepository.Status status = repo.status();
+        check(status.getCurrentBranch().equals("master"), "current branch");
+        check(status.getBranches().equals(List.of("master", "other")),
+                "branches " + status.getBranches());
+        check(status.getStaged().equals(List.of("notwug.txt")), "staged " + status.getStaged());
+        check(status.getRemoved().equals(List.of("wug.txt")), "removed " + status.getRemoved());
+        check(status.getRenamed().isEmpty(), "renamed " + status.getRenamed());
+
+        repo.checkoutFile(first, "wug.txt");
+        check(read(repo, "wug.txt").equals("a\nb\nc\n"), "checked out file");
+    }
+
+    /** Failures throw the subclass of GitletException that names them,
+     *  with the message java gitlet.Main would print. */
+    private void typedExceptions() throws Exception {
+        GitletRepository none = new GitletRepository(dir("none"));
+        expect(NotARepositoryException.class, "Not in an initialized Gitlet directory.",
+                none::status);
+
+        GitletRepository repo = newRepository("exceptions");
+        expect(NotFoundException.class, "A branch with that name does not exist.",
+                () -> repo.merge("nobranch"));
+        expect(NotFoundException.class, "No commit with that id exists.",
+                () -> repo.reset("abcdef"));
+        expect(NotFoundException.class, "File does not exist.", () -> repo.add("nofile"));
+        expect(GitletException.class, "Incorrect operands.", () -> repo.run("status", "x"));
+
+        write(repo, "wug.txt", "a\n");
+        repo.add("wug.txt");
+        repo.commit("added wug");
+        repo.branch("other");
+        write(repo, "wug.txt", "b\n");
+        repo.add("wug.txt");
+        expect(UncommittedChangesException.class, "You have uncommitted changes.",
+                () -> repo.merge("other"));
+        repo.commit("changed wug");
+
+        repo.checkout("other");
+        write(repo, "wug.txt", "c\n");
+        repo.add("wug.txt");
+        repo.commit("changed wug otherwise");
+        String head = repo.head();
+        expect(ConflictException.class, null, () -> repo.rebase("master"));
+        check(repo.head().equals(head), "conflicting rebase moved the head");
+        GitletRepository.MergeResult merge = repo.merge("master");
+        check(merge.getConflicts().equals(List.of("wug.txt")),
+                "merge conflicts " + merge.getConflicts());
+    }
+
+    /** Fetch, push and pull between two repositories. */
+    private void remotes() throws Exception {
+        GitletRepository one = newRepository("one");
+        GitletRepository two = newRepository("two");
+        write(one, "wug.txt", "wug\n");
+        one.add("wug.txt");
+        String added = one.commit("added wug");
+        two.addRemote("R1", new File(one.getRoot(), ".gitlet").getPath());
+
+        check(two.fetch("R1", "master").equals(added), "fetched head");
+        expect(NotFoundException.class, "That remote does not have that branch.",
+                () -> two.fetch("R1", "nobranch"));
+        GitletRepository.MergeResult pull = two.pull("R1", "master");
+        check(pull.isFastForward() && pull.getHead().equals(added), "pull fast-forward");
+
+        write(two, "notwug.txt", "notwug\n");
+        two.add("notwug.txt");
+        String pushed = two.commit("added notwug");
+        two.push("R1", "master");
+        check(one.head().equals(pushed), "pushed head " + one.head());
+
+        write(one, "wug.txt", "changed\n");
+        one.add("wug.txt");
+        one.commit("changed wug");
+        write(two, "notwug.txt", "changed\n");
+        two.add("notwug.txt");
+        two.commit("changed notwug");
+        expect(PushRejectedException.class, "Please pull down remote changes before pushing.",
+                () -> two.push("R1", "master"));
+        pull = two.pull("R1", "master");
+        check(!pull.isFastForward() && pull.getConflicts().isEmpty(), "pull merge");
+        two.push("R1", "master");
+        check(one.head().equals(pull.getHead()), "pushed merge");
+        two.rmRemote("R1");
+        expect(NotFoundException.class, "A remote with that name does not exist.",
+                () -> two.fetch("R1", "master"));
+    }
+
+    /** Threads working on different repositories at once each see only
+     *  their own. */
+    private void concurrentRepositories() throws Exception {
+        List<GitletRepository> repos = new ArrayList<>();
+        for (int i = 0; i < THREADS; i += 1) {
+            repos.add(newRepository("parallel" + i));
+        }
+        inParallel(i -> commits(repos.get(i), "file" + i + ".txt"));
+        for (int i = 0; i < THREADS; i += 1) {
+            GitletRepository repo = repos.get(i);
+            check(repo.log("master", -1).size() == COMMITS + 1, "commits of " + repo.getRoot());
+            check(repo.files("master").keySet().equals(Set.of("file" + i + ".txt")),
+                    "files of " + repo.getRoot() + ": " + repo.files("master").keySet());
+        }
+    }
+
+    /** Threads committing at once in worktrees of one repository, which
+     *  share its objects and branches, lose none of each other's work. */
+    private void concurrentWorktrees() throws Exception {
+        GitletRepository main = newRepository("shared");
+        List<GitletRepository> trees = new ArrayList<>();
+        for (int i = 0; i < THREADS; i += 1) {
+            main.branch("b" + i);
+            File root = new File(base, "tree" + i);
+            main.run("worktree", "add", root.getPath(), "b" + i);
+            trees.add(new GitletRepository(root));
+        }
+        inParallel(i -> commits(trees.get(i), "file" + i + ".txt"));
+        for (int i = 0; i < THREADS; i += 1) {
+            check(main.log("b" + i, -1).size() == COMMITS + 1, "commits of b" + i);
+        }
+        String fsck = main.run("fsck");
+        check(fsck.contains("no errors"), fsck);
+    }
+
+    /** Makes COMMITS Commits in REPO, each changing the file NAME. */
+    private static void commits(GitletRepository repo, String name) throws IOException {
+        for (int k = 0; k < COMMITS; k += 1) {
+            write(repo, name, "version " + k + "\n");
+            repo.add(name);
+            repo.commit("version " + k + " of " + name);
+        }
+    }
+
+    /** A task of a concurrent test. */
+    interface Task {
+        /** Runs the task of thread I. */
+        void run(int i) throws Exception;
+    }
+
+    /** Runs TASK on THREADS threads at once, and rethrows the first
+     *  failure. */
+    private static void inParallel(Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i += 1) {
+                int index = i;
+                results.add(pool.submit(() -> {
+                    task.run(index);
+                    return null;
+                }));
+            }
+            for (Future<Void> result: results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Returns a GitletRepository over a new repository named NAME. */
+    private GitletRepository newRepository(String name) throws IOException {
+        GitletRepository repo = new GitletRepository(dir(name));
+        repo.init();
+        return repo;
+    }
+
+    /** Returns the new, empty directory NAME. */
+    private File dir(String name) {
+        File result = new File(base, name);
+        result.mkdirs();
+        return result;
+    }
+
+    /** Writes CONTENT to the working file NAME of REPO. */
+    private static void write(GitletRepository repo, String name, String content) {
+        Utils.writeContents(new File(repo.getRoot(), name), content);
+    }
+
+    /** Returns the content of the working file NAME of REPO. */
+    private static String read(GitletRepository repo, String name) {
+        return Utils.readContentsAsString(new File(repo.getRoot(), name));
+    }
+
+    /** Throws an AssertionError saying WHAT unless COND. */
+    private static void check(boolean cond, String what) {
+        if (!cond) {
+            throw new AssertionError(what);
+        }
+    }
+
+    /** Checks that BODY throws a TYPE with MESSAGE as its message, or with
+     *  any message if MESSAGE is null. */
+    private static void expect(Class<? extends GitletException> type, String message,
+                               Body body) throws Exception {
+        try {
+            body.run();
+        } catch (GitletException excp) {
+            check(type.isInstance(excp), "threw " + excp.getClass().getSimpleName()
+                    + " rather than " + type.getSimpleName());
+            check(message == null || message.equals(excp.getMessage()),
+                    "threw \"" + excp.getMessage() + "\"");
+            return;
+        }
+        throw new AssertionError("did not throw " + type.getSimpleName());
+    }
+
+    /** Deletes FILE and everything under it. */
+    private static void delete(File file) throws IOException {
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            for (Path path: (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Searches the files of a Commit for lines matching a regular
+ *  expression.
+ *
+ *  Each distinct Blob is searched once, however many files hold it, and
+ *  the Blobs are split in halves on a fork-join pool until the pieces are
+ *  small, so every core is busy.  Content is searched where it lies in the
+ *  buffer Blob.content returns, mapped for large files, through a view
+ *  that reads each byte as a char, so nothing is decoded, and nothing is
+ *  copied but the lines that match.  The whole content is searched at once, and only
+ *  the lines that its matches start in are searched alone.  The pattern is
+ *  turned into the same view of its UTF-8 bytes, so text outside ASCII is
+ *  found as well.
+ *  @author Enran Wu
+ */
+class Grep {
+
+    /** Number of Blobs a task searches itself rather than splitting. */
+    private static final int GRAIN = 16;
+
+    /** What a Blob holding a match but no lines gives, since it is
+     *  binary. */
+    private static final List<byte[]> BINARY = List.of();
+
+    /** The pattern, over bytes read as chars. */
+    private final Pattern pattern;
+
+    /** Distinct Blobs to search. */
+    private final ObjectId[] ids;
+
+    /** Matching lines of each of IDS, BINARY, or null for none.  Each
+     *  task sets only the elements of its own range. */
+    private final List<List<byte[]>> found;
+
+    /** Names of the files searched, in order. */
+    private final String[] names;
+
+    /** The Blobs of the files searched. */
+    private final Map<String, ObjectId> files;
+
+    /** Searches the files of COMMIT for REGEX, which is a regular
+     *  expression as Pattern takes it. */
+    Grep(Commit commit, String regex) {
+        pattern = Pattern.compile(new String(regex.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.ISO_8859_1), Pattern.MULTILINE);
+        files = commit.getFiles();
+        names = files.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        ids = files.values().stream().distinct().toArray(ObjectId[]::new);
+        found = new ArrayList<>(Collections.nCopies(ids.length, null));
+    }
+
+    /** Searches IDS[LO, HI). */
+    private class Search extends RecursiveAction {
+        /** Range of IDS to search. */
+        private final int lo, hi;
+
+        Search(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Search(lo, mid), new Search(mid, hi));
+                return;
+            }
+            Matcher matcher = pattern.matcher("");
+            for (int i = lo; i < hi; i += 1) {
+                try {
+                    found.set(i, search(Blob.content(
+                            Repository.objectFile(Repository.blobsDir(), ids[i])), matcher));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Searches every Blob, and writes the matching lines to OUT, each
+     *  after PREFIX, its file name and a colon, in order of file name then
+     *  line.  A binary file with a match gives "Binary file NAME matches"
+     *  in place of its lines, with PREFIX ahead of NAME.  The lines are
+     *  written as the bytes they are stored as. */
+    void run(String prefix, OutputStream out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Search(0, ids.length));
+        } finally {
+            pool.shutdown();
+        }
+        Map<ObjectId, List<byte[]>> byId = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 1) {
+            if (found.get(i) != null) {
+                byId.put(ids[i], found.get(i));
+            }
+        }
+        for (String name: names) {
+            List<byte[]> lines = byId.get(files.get(name));
+            if (lines == BINARY) {
+                out.write(("Binary file " + prefix + name + " matches\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            } else if (lines != null) {
+                byte[] head = (prefix + name + ":").getBytes(StandardCharsets.UTF_8);
+                for (byte[] line: lines) {
+                    out.write(head);
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /** Returns the lines of CONTENT that MATCHER's pattern matches, BINARY
+     *  if it matches binary CONTENT, or null if it matches nothing.  Each
+     *  match in the whole content is checked against the line it starts in
+     *  alone, and the search goes on after that line, so lines with no
+     *  match are passed over as the whole content is. */
+    private static List<byte[]> search(ByteBuffer content, Matcher matcher) {
+        Bytes text = new Bytes(content);
+        matcher.reset(text);
+        if (!matcher.find()) {
+            return null;
+        }
+        if (Diff.isBinary(content)) {
+            return BINARY;
+        }
+        List<byte[]> result = new ArrayList<>();
+        int from = 0;
+        do {
+            int start = text.lineStart(matcher.start(), from);
+            int end = text.lineEnd(matcher.start());
+            matcher.region(start, end);
+            if (matcher.find()) {
+                byte[] line = new byte[end - start];
+                content.get(start, line);
+                result.add(line);
+            }
+            from = end + 1;
+            if (from >= text.length()) {
+                break;
+            }
+            matcher.region(from, text.length());
+        } while (matcher.find());
+        return result.isEmpty() ? null : result;
+    }
+
+    /** A view of a buffer of bytes as chars, one per byte. */
+    private static class Bytes implements CharSequence {
+        /** The bytes. */
+        private final ByteBuffer data;
+
+        Bytes(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int length() {
+            return data.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data.get(index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Bytes(data.slice(start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[data.limit()];
+            data.get(0, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        /** Returns the index of the start of the line holding INDEX, which
+         *  is no earlier than FROM. */
+        int lineStart(int index, int from) {
+            for (int i = index; i > from; i -= 1) {
+                if (data.get(i - 1) == '\n') {
+                    return i;
+                }
+            }
+            return from;
+        }
+
+        /** Returns the index of the newline ending the line holding INDEX,
+         *  or the length if it is the last line and has none. */
+        int lineEnd(int index) {
+            for (int i = index; i < data.limit(); i += 1) {
+                if (data.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return data.limit();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** Queries on the Commit graph.
+ *  @author Enran Wu
+ */
+class History {
+
+    /** Flag of a Commit reached from the first Commit of splitPoint. */
+    private static final int FROM_A = 1;
+
+    /** Flag of a Commit reached from the second Commit of splitPoint. */
+    private static final int FROM_B = 2;
+
+    /** Returns whether the Commit with UID ANCESTOR is reachable by
+     *  following parents from the Commit with UID DESCENDANT (a Commit is
+     *  its own ancestor).  Stops at the first match. */
+    static boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        Set<ObjectId> seen = new HashSet<>();
+        queue.add(descendant);
+        seen.add(descendant);
+        while (!queue.isEmpty()) {
+            ObjectId id = queue.poll();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            for (ObjectId parent: Commit.findCommit(id).getParents()) {
+                if (seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the latest common ancestor of the Commits with UIDs A and B,
+     *  or null if they have none.  Both histories are walked at once, in
+     *  order of generation, highest first, flagging each Commit with the
+     *  side or sides it was reached from, so that a Commit is visited only
+     *  once every walked Commit it is an ancestor of has passed its flags
+     *  on.  The first Commit visited with both flags is a common ancestor
+     *  none of whose descendants is one, and the walk stops there, having
+     *  gone no further back than it.  Generations are taken from the
+     *  commit-graph, and worked out for the Commits made since it was
+     *  written. */
+    static ObjectId splitPoint(ObjectId a, ObjectId b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        CommitGraph graph = CommitGraph.read();
+        Map<ObjectId, List<ObjectId>> parents = new HashMap<>();
+        Map<ObjectId, Integer> generations = new HashMap<>();
+        Map<ObjectId, Integer> flags = new HashMap<>();
+        PriorityQueue<ObjectId> queue = new PriorityQueue<>(
+                Comparator.comparing((ObjectId id) -> generations.get(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()));
+        for (ObjectId id: List.of(a, b)) {
+            generation(graph, parents, generations, id);
+            flags.put(id, id == a ? FROM_A : FROM_B);
+            queue.add(id);
+        }
+        while (!queue.isEmpty()) {
+            ObjectId id = queue.poll();
+            int flag = flags.get(id);
+            if (flag == (FROM_A | FROM_B)) {
+                return id;
+            }
+            for (ObjectId parent: parents(graph, parents, id)) {
+                Integer had = flags.get(parent);
+                int now = had == null ? flag : had | flag;
+                flags.put(parent, now);
+                if (had == null) {
+                    generation(graph, parents, generations, parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the generation of the Commit with UID ID, recording it and
+     *  those of any of its ancestors worked out on the way in GENERATIONS.
+     *  A Commit GRAPH does not hold gets one more than the greatest of its
+     *  parents', whose UIDs are recorded in PARENTS. */
+    private static int generation(CommitGraph graph, Map<ObjectId, List<ObjectId>> parents,
+                                  Map<ObjectId, Integer> generations, ObjectId id) {
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            ObjectId at = stack.peek();
+            if (generations.containsKey(at)) {
+                stack.pop();
+                continue;
+            }
+            int position = graph == null ? -1 : graph.find(at);
+            if (position >= 0) {
+                generations.put(at, graph.generation(position));
+                stack.pop();
+                continue;
+            }
+            int highest = 0;
+            boolean ready = true;
+            for (ObjectId parent: parents(graph, parents, at)) {
+                Integer generation = generations.get(parent);
+                if (generation == null) {
+                    stack.push(parent);
+                    ready = false;
+                } else {
+                    highest = Math.max(highest, generation);
+                }
+            }
+            if (ready) {
+                generations.put(at, highest + 1);
+                stack.pop();
+            }
+        }
+        return generations.get(id);
+    }
+
+    /** Returns the UIDs of the parents of the Commit with UID ID, as
+     *  parents does, looking them up once only by keeping them in
+     *  CACHE. */
+    private static List<ObjectId> parents(CommitGraph graph,
+                                          Map<ObjectId, List<ObjectId>> cache, ObjectId id) {
+        List<ObjectId> result = cache.get(id);
+        if (result == null) {
+            result = parents(graph, id);
+            cache.put(id, result);
+        }
+        return result;
+    }
+
+    /** Returns the UIDs of the Commit with UID ID and all its ancestors,
+     *  taking parents from GRAPH where it has them. */
+    static Set<ObjectId> ancestors(CommitGraph graph, ObjectId id) {
+        Set<ObjectId> result = new HashSet<>();
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        queue.add(id);
+        result.add(id);
+        while (!queue.isEmpty()) {
+            for (ObjectId parent: parents(graph, queue.poll())) {
+                if (result.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the UIDs of the parents of the Commit with UID ID, from
+     *  GRAPH if it is not null and holds the Commit. */
+    static List<ObjectId> parents(CommitGraph graph, ObjectId id) {
+        int position = graph == null ? -1 : graph.find(id);
+        if (position < 0) {
+            return Commit.findCommit(id).getParents();
+        }
+        List<ObjectId> result = new ArrayList<>(2);
+        if (graph.parent(position) != null) {
+            result.add(graph.parent(position));
+        }
+        if (graph.secondParent(position) != null) {
+            result.add(graph.secondParent(position));
+        }
+        return result;
+    }
+}
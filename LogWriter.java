@@ -0,0 +1,314 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/** Writes Commits for log and global-log.
+ *  Output goes through one large buffer straight to the standard output
+ *  file descriptor, so a commit costs one append per field rather than a
+ *  println per line.  Once the reader goes away (as with "gitlet log |
+ *  head"), write returns false and the caller stops walking history.
+ *
+ *  Options, as given on the command line after the command name:
+ *      -n N            stop after N commits
+ *      --since DATE    only commits made at or after DATE
+ *      --until DATE    only commits made at or before DATE
+ *      --format FMT    print each commit as FMT, in which
+ *                          %H is the commit id, %h its first 7 digits,
+ *                          %P the parents' ids, %ad the date as log shows it,
+ *                          %at the date in seconds since the epoch,
+ *                          %s the message, %n a newline and %% a '%'
+ *      --json          print each commit as one JSON object per line
+ *  DATE is yyyy-MM-dd, yyyy-MM-ddTHH:mm:ss (both in the local time zone)
+ *  or @SECONDS since the epoch.
+ *  @author Enran Wu
+ */
+class LogWriter {
+
+    /** Size of the output buffer, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Date format used by log, matching "%ta %tb %td %tT %tY %tz". */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z",
+                    Locale.getDefault(Locale.Category.FORMAT));
+
+    /** Time zone dates are shown in. */
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /** Template tokens: literal text, or a one-letter field code. */
+    private static final char LITERAL = 0, ID = 'H', ABBREV = 'h', PARENT = 'P',
+            DATE = 'd', SECONDS = 't', MESSAGE = 's';
+
+    /** Maximum number of commits to write, or -1 for no limit. */
+    private long limit = -1;
+
+    /** Earliest time shown, in milliseconds since the epoch. */
+    private long since = Long.MIN_VALUE;
+
+    /** Latest time shown, in milliseconds since the epoch. */
+    private long until = Long.MAX_VALUE;
+
+    /** Whether to write JSON lines. */
+    private boolean json;
+
+    /** Kinds of the parts of the compiled --format template, or null
+     *  for the standard log layout. */
+    private char[] kinds;
+
+    /** Text of the LITERAL parts of the compiled --format template. */
+    private String[] literals;
+
+    /** Where output goes. */
+    private final Writer out;
+
+    /** Scratch buffer each commit is formatted into. */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /** Number of commits written so far. */
+    private long written;
+
+    /** Whether the reader has gone away. */
+    private boolean closed;
+
+    /** Initiates a LogWriter on standard output with no options set. */
+    LogWriter() {
+        out = new BufferedWriter(new OutputStreamWriter(
+                Repository.outputStream(),
+                Charset.defaultCharset()), BUFFER_SIZE);
+    }
+
+    /** Returns a LogWriter configured from ARGS[FROM..], or null if they
+     *  are not valid log options. */
+    static LogWriter fromArgs(String[] args, int from) {
+        LogWriter writer = new LogWriter();
+        try {
+            for (int i = from; i < args.length; i += 1) {
+                switch (args[i]) {
+                    case "-n":
+                        writer.limit = Long.parseLong(args[++i]);
+                        break;
+                    case "--since":
+                        writer.since = parseDate(args[++i], false);
+                        break;
+                    case "--until":
+                        writer.until = parseDate(args[++i], true);
+                        break;
+                    case "--format":
+                        writer.compile(args[++i]);
+                        break;
+                    case "--json":
+                        writer.json = true;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException
+                 | DateTimeParseException excp) {
+            return null;
+        }
+        return writer.limit < -1 ? null : writer;
+    }
+
+    /** Returns DATE in milliseconds since the epoch.  A date without a time
+     *  of day denotes its start or, if END, its end. */
+    private static long parseDate(String date, boolean end) {
+        if (date.startsWith("@")) {
+            return Long.parseLong(date.substring(1)) * 1000;
+        }
+        if (date.contains("T")) {
+            return LocalDateTime.parse(date).atZone(ZONE).toInstant().toEpochMilli();
+        }
+        LocalDate day = LocalDate.parse(date);
+        if (end) {
+            return day.plusDays(1).atStartOfDay(ZONE).toInstant().toEpochMilli() - 1;
+        }
+        return day.atStartOfDay(ZONE).toInstant().toEpochMilli();
+    }
+
+    /** Compiles the --format template FMT into kinds and literals. */
+    private void compile(String fmt) {
+        StringBuilder parts = new StringBuilder();
+        ArrayList<String> texts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < fmt.length(); i += 1) {
+            char c = fmt.charAt(i);
+            if (c != '%' || i + 1 == fmt.length()) {
+                literal.append(c);
+                continue;
+            }
+            char code = fmt.charAt(++i);
+            char kind;
+            switch (code) {
+                case 'H': case 'h': case 'P': case 's':
+                    kind = code;
+                    break;
+                case 'a':
+                    if (i + 1 < fmt.length()
+                            && (fmt.charAt(i + 1) == 'd' || fmt.charAt(i + 1) == 't')) {
+                        kind = fmt.charAt(++i);
+                        break;
+                    }
+                    literal.append('%').append(code);
+                    continue;
+                case 'n':
+                    literal.append('\n');
+                    continue;
+                case '%':
+                    literal.append('%');
+                    continue;
+                default:
+                    literal.append('%').append(code);
+                    continue;
+            }
+            if (literal.length() > 0) {
+                parts.append(LITERAL);
+                texts.add(literal.toString());
+                literal.setLength(0);
+            }
+            parts.append(kind);
+            texts.add(null);
+        }
+        literal.append('\n');
+        parts.append(LITERAL);
+        texts.add(literal.toString());
+        kinds = parts.toString().toCharArray();
+        literals = texts.toArray(new String[0]);
+    }
+
+    /** Returns whether a commit made at TIME, in milliseconds since the
+     *  epoch, is older than --since.  A commit may be older than its
+     *  parent, as rebase and fast-import keep the times they are given, so
+     *  log passes over such commits rather than stopping at them. */
+    boolean isTooOld(long time) {
+        return time < since;
+    }
+
+    /** Returns whether the writer will take no more commits, because the
+     *  limit was reached or the reader has gone away. */
+    boolean isDone() {
+        return closed || (limit >= 0 && written >= limit);
+    }
+
+    /** Writes COMMIT, whose UID is ID, if it passes the date filters.
+     *  Returns false once no further commits should be written. */
+    boolean write(ObjectId id, Commit commit) {
+        if (isDone()) {
+            return false;
+        }
+        long time = commit.getTime().getTime();
+        if (time < since || time > until) {
+            return true;
+        }
+        line.setLength(0);
+        if (json) {
+            formatJson(id, commit);
+        } else if (kinds != null) {
+            formatTemplate(id, commit);
+        } else {
+            line.append("===\ncommit ");
+            id.appendHex(line);
+            if (commit.getSecondParent() != null) {
+                line.append("\nMerge: ").append(commit.getParent().abbreviate(7))
+                        .append(' ').append(commit.getSecondParent().abbreviate(7));
+            }
+            line.append("\nDate: ");
+            formatDate(time);
+            line.append('\n').append(commit.getMessage()).append("\n\n");
+        }
+        try {
+            out.append(line);
+        } catch (IOException excp) {
+            closed = true;
+            return false;
+        }
+        written += 1;
+        return !isDone();
+    }
+
+    /** Appends the standard log form of the date TIME to line. */
+    private void formatDate(long time) {
+        DATE_FORMAT.formatTo(ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZONE),
+                line);
+    }
+
+    /** Appends COMMIT, whose UID is ID, to line as the --format template
+     *  says. */
+    private void formatTemplate(ObjectId id, Commit commit) {
+        for (int i = 0; i < kinds.length; i += 1) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    line.append(literals[i]);
+                    break;
+                case ID:
+                    id.appendHex(line);
+                    break;
+                case ABBREV:
+                    line.append(id.abbreviate(7));
+                    break;
+                case PARENT:
+                    if (commit.getParent() != null) {
+                        commit.getParent().appendHex(line);
+                    }
+                    if (commit.getSecondParent() != null) {
+                        line.append(' ');
+                        commit.getSecondParent().appendHex(line);
+                    }
+                    break;
+                case DATE:
+                    formatDate(commit.getTime().getTime());
+                    break;
+                case SECONDS:
+                    line.append(commit.getTime().getTime() / 1000);
+                    break;
+                default:
+                    line.append(commit.getMessage());
+                    break;
+            }
+        }
+    }
+
+    /** Appends COMMIT, whose UID is ID, to line as a JSON object. */
+    private void formatJson(ObjectId id, Commit commit) {
+        line.append("{\"commit\":\"");
+        id.appendHex(line);
+        line.append("\",\"parent\":");
+        if (commit.getParent() == null) {
+            line.append("null");
+        } else {
+            line.append('"');
+            commit.getParent().appendHex(line);
+            line.append('"');
+        }
+        if (commit.getSecondParent() != null) {
+            line.append(",\"merge_parent\":\"");
+            commit.getSecondParent().appendHex(line);
+            line.append('"');
+        }
+        line.append(",\"timestamp\":").append(commit.getTime().getTime() / 1000);
+        line.append(",\"message\":\"").append(Utils.escapeJson(commit.getMessage()))
+                .append("\"}\n");
+    }
+
+    /** Flushes any buffered output. */
+    void close() {
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            closed = true;
+        }
+    }
+}
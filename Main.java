@@ -1,51 +1,104 @@
 package gitlet;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Enran Wu
  */
 public class Main {
 
+    /** Commands that do not change the repository, so run without its
+     *  lock. */
+    private static final Set<String> READ_ONLY = Set.of("log", "global-log", "find",
+            "status", "diff", "blame", "stats", "fsck", "fast-export", "archive", "grep");
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  [--trace] <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  With --trace (or GITLET_TRACE set), a JSON summary of the work done
+     *  by the command is printed to standard error when it is done.
      */
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--trace")) {
+            Trace.enable();
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        try {
+            if (args.length > 0) {
+                Trace.begin(args[0]);
+            }
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            Trace.end();
+        }
+    }
+
+    /** Runs the command in ARGS, which holds
+     *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  in the Repository of this thread, holding the lock of the
+     *  repository unless the command is READ_ONLY.  A command that cannot
+     *  be done throws a GitletException whose message says why. */
+    static void run(String[] args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw new GitletException("Please enter a command.");
         }
+        if (!Repository.gitletDir().isDirectory()) {
+            dispatch(args);
+            return;
+        }
+        Format.upgrade(Repository.commonDir());
+        if (READ_ONLY.contains(args[0])) {
+            dispatch(args);
+            return;
+        }
+        RepositoryLock.holding(Repository.commonDir(), () -> {
+            dispatch(args);
+            return null;
+        });
+    }
+
+    /** Runs the command in ARGS, with the repository locked if it is not
+     *  READ_ONLY. */
+    private static void dispatch(String[] args) throws IOException {
         String firstArg = args[0];
         switch(firstArg) {
             case "init":
                 Commands.init();
                 break;
             case "add":
-                validateNumArgs("add", args, 2);
+                validateNumArgs(args, 2);
                 Commands.add(args[1]);
                 break;
             case "commit":
-                validateNumArgs("commit", args, 2);
+                validateNumArgs(args, 2);
                 Commands.commit(args[1]);
                 break;
             case "rm":
-                validateNumArgs("rm", args, 2);
+                validateNumArgs(args, 2);
                 Commands.rm(args[1]);
                 break;
             case "log":
-                validateNumArgs("log", args, 1);
-                Commands.log();
+                validateNumArgs(args, args.length);
+                if (args.length >= 3 && args[args.length - 2].equals("--")) {
+                    Commands.log(logWriter(Arrays.copyOf(args, args.length - 2)),
+                            args[args.length - 1]);
+                } else {
+                    Commands.log(logWriter(args), null);
+                }
                 break;
             case "global-log":
-                validateNumArgs("global-log", args, 1);
-                Commands.globalLog();
+                validateNumArgs(args, args.length);
+                Commands.globalLog(logWriter(args));
                 break;
             case "find":
-                validateNumArgs("find", args, 2);
+                validateNumArgs(args, 2);
                 Commands.find(args[1]);
                 break;
             case "status":
-                validateNumArgs("status", args, 1);
+                validateNumArgs(args, 1);
                 Commands.status();
                 break;
             case "checkout":
@@ -59,47 +112,269 @@ public class Main {
                     Commands.checkoutBranch(args[1]);
                     break;
                 } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
             case "branch":
-                validateNumArgs("branch", args, 2);
+                validateNumArgs(args, 2);
                 Commands.branch(args[1]);
                 break;
             case "rm-branch":
-                validateNumArgs("rm-branch", args, 2);
+                validateNumArgs(args, 2);
                 Commands.rmBranch(args[1]);
                 break;
             case "reset":
-                validateNumArgs("reset", args, 2);
+                validateNumArgs(args, 2);
                 Commands.reset(args[1]);
                 break;
             case "merge":
-                validateNumArgs("merge", args, 2);
-                Commands.merge(args[1]);
+                if (args.length == 3 && args[1].equals("--dry-run")) {
+                    validateNumArgs(args, 3);
+                    Commands.merge(args[2], true);
+                } else {
+                    validateNumArgs(args, 2);
+                    Commands.merge(args[1], false);
+                }
+                break;
+            case "stats":
+                if (args.length == 2 && args[1].equals("--json")) {
+                    validateNumArgs(args, 2);
+                    Commands.stats(true);
+                } else {
+                    validateNumArgs(args, 1);
+                    Commands.stats(false);
+                }
+                break;
+            case "gc":
+                validateNumArgs(args, args.length);
+                if (args.length == 1) {
+                    Commands.gc(false, GarbageCollector.DEFAULT_GRACE);
+                } else if (args.length == 2 && args[1].equals("--prune")) {
+                    Commands.gc(true, GarbageCollector.DEFAULT_GRACE);
+                } else if (args.length == 2 && args[1].startsWith("--prune=")
+                        && GarbageCollector.parseGrace(args[1].substring(8)) >= 0) {
+                    Commands.gc(true, GarbageCollector.parseGrace(args[1].substring(8)));
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "pack-refs":
+                validateNumArgs(args, 1);
+                Commands.packRefs();
+                break;
+            case "fsck":
+                if (args.length == 2 && args[1].equals("--connectivity-only")) {
+                    validateNumArgs(args, 2);
+                    Commands.fsck(true);
+                } else {
+                    validateNumArgs(args, 1);
+                    Commands.fsck(false);
+                }
+                break;
+            case "add-remote":
+                validateNumArgs(args, 3);
+                Commands.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validateNumArgs(args, 2);
+                Commands.rmRemote(args[1]);
+                break;
+            case "fetch":
+                validateNumArgs(args, 3);
+                Commands.fetch(args[1], args[2]);
+                break;
+            case "push":
+                validateNumArgs(args, 3);
+                Commands.push(args[1], args[2]);
+                break;
+            case "pull":
+                validateNumArgs(args, 3);
+                Commands.pull(args[1], args[2]);
+                break;
+            case "diff":
+                validateNumArgs(args, args.length);
+                diff(args);
+                break;
+            case "commit-graph":
+                validateNumArgs(args, 2);
+                if (!args[1].equals("write")) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Commands.commitGraph();
+                break;
+            case "sparse-checkout":
+                validateNumArgs(args, args.length);
+                if (args.length >= 3 && args[1].equals("set")) {
+                    Commands.sparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    Commands.sparseCheckout(null);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    Commands.sparseCheckoutList();
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "blame":
+                validateNumArgs(args, 2);
+                Commands.blame(args[1]);
+                break;
+            case "bundle":
+                validateNumArgs(args, args.length);
+                if (args.length == 4 && args[1].equals("create")) {
+                    Commands.bundleCreate(args[2], args[3], null);
+                } else if (args.length == 6 && args[1].equals("create")
+                        && args[4].equals("--since")) {
+                    Commands.bundleCreate(args[2], args[3], args[5]);
+                } else if (args.length == 3 && args[1].equals("unbundle")) {
+                    Commands.unbundle(args[2]);
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "fast-export":
+                if (args.length == 2) {
+                    validateNumArgs(args, 2);
+                    Commands.fastExport(args[1], null);
+                } else {
+                    validateNumArgs(args, 3);
+                    Commands.fastExport(args[1], args[2]);
+                }
+                break;
+            case "fast-import":
+                if (args.length == 1) {
+                    validateNumArgs(args, 1);
+                    Commands.fastImport(null);
+                } else {
+                    validateNumArgs(args, 2);
+                    Commands.fastImport(args[1]);
+                }
+                break;
+            case "archive":
+                validateNumArgs(args, args.length);
+                archive(args);
+                break;
+            case "grep":
+                validateNumArgs(args, args.length);
+                grep(args);
+                break;
+            case "rebase":
+                validateNumArgs(args, 2);
+                Commands.rebase(args[1]);
+                break;
+            case "cherry-pick":
+                validateNumArgs(args, args.length);
+                if (args.length < 2) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Commands.cherryPick(Arrays.asList(args).subList(1, args.length));
+                break;
+            case "worktree":
+                validateNumArgs(args, args.length);
+                if (args.length == 4 && args[1].equals("add")) {
+                    Commands.worktreeAdd(args[2], args[3]);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    Commands.worktreeList();
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                throw new GitletException("No command with that name exists.");
+        }
+    }
+
+    /** Runs diff with ARGS: an optional -M[N] or --no-renames, up to two
+     *  commit ids, then optionally "--" and a file name. */
+    private static void diff(String[] args) throws IOException {
+        String[] ids = new String[2];
+        int count = 0;
+        String path = null;
+        int threshold = Renames.DEFAULT_THRESHOLD;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--") && i + 2 == args.length) {
+                path = args[i + 1];
+                break;
+            } else if (args[i].equals("--no-renames")) {
+                threshold = Integer.MAX_VALUE;
+            } else if (args[i].matches("-M[0-9]{0,3}")) {
+                threshold = args[i].length() == 2 ? Renames.DEFAULT_THRESHOLD
+                        : Integer.parseInt(args[i].substring(2));
+            } else if (args[i].startsWith("-") || count == 2) {
+                throw new GitletException("Incorrect operands.");
+            } else {
+                ids[count++] = args[i];
+            }
+        }
+        Commands.diff(ids[0], ids[1], path, threshold);
+    }
+
+    /** Runs archive with ARGS: a commit id, then optionally --format=tar
+     *  or --format=zip and -o with a file name, in either order.  With no
+     *  format given, a file name ending in .zip gives a zip, and anything
+     *  else a tar. */
+    private static void archive(String[] args) throws IOException {
+        String commitID = null;
+        String format = null;
+        String fileName = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=") && format == null) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && fileName == null && i + 1 < args.length) {
+                fileName = args[i + 1];
+                i += 1;
+            } else if (args[i].startsWith("-") || commitID != null) {
+                throw new GitletException("Incorrect operands.");
+            } else {
+                commitID = args[i];
+            }
+        }
+        if (format == null) {
+            format = fileName != null && fileName.endsWith(".zip") ? Archive.ZIP : Archive.TAR;
+        }
+
+        // Exception Case
+        if (commitID == null || !(format.equals(Archive.TAR) || format.equals(Archive.ZIP))) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Commands.archive(commitID, format, fileName);
+    }
+
+    /** Runs grep with ARGS: a pattern, after -e if it starts with a dash,
+     *  then optionally a commit id. */
+    private static void grep(String[] args) throws IOException {
+        int first = args.length > 1 && args[1].equals("-e") ? 2 : 1;
+
+        // Exception Case
+        if (args.length <= first || args.length > first + 2
+                || (first == 1 && args[1].startsWith("-"))) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Commands.grep(args[first], args.length == first + 2 ? args[first + 1] : null);
+    }
+
+    /** Returns the LogWriter for the options following the command in
+     *  ARGS, exiting with a message if they are not valid. */
+    private static LogWriter logWriter(String[] args) {
+        LogWriter writer = LogWriter.fromArgs(args, 1);
+        if (writer == null) {
+            throw new GitletException("Incorrect operands.");
         }
+        return writer;
     }
 
     /**
      * Checks the number of arguments versus the expected number,
-     * throws a RuntimeException if they do not match.
+     * throws a GitletException if they do not match.
      *
-     * @param cmd Name of command you are validating
      * @param args Argument array from command line
      * @param n Number of expected arguments
      * NOTE: this method is taking directly from lab6 but with added init checker
      */
-    public static void validateNumArgs(String cmd, String[] args, int n) {
+    public static void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            throw new RuntimeException(
-                    String.format("Invalid number of arguments for: %s.", cmd));
+            throw new GitletException("Incorrect operands.");
         }
-        if (!Repository.GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+        if (!Repository.gitletDir().exists()) {
+            throw new NotARepositoryException("Not in an initialized Gitlet directory.");
         }
     }
 }
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The result of merging two Commits with a common ancestor.
+ *
+ *  Files are first settled by Blob UID alone: a file only one side changed
+ *  since the split point takes that side's Blob, and a file both sides
+ *  left alone or changed the same way needs nothing.  Only files changed
+ *  differently on both sides are read, and their lines merged three ways:
+ *  the split point's version is diffed against each side, changes from
+ *  either side that touch different lines are both kept, and changes that
+ *  overlap become a conflict block
+ *      <<<<<<< HEAD
+ *      (the current branch's lines)
+ *      =======
+ *      (the given branch's lines)
+ *      >>>>>>>
+ *  Renames on either side are detected first, so a file renamed on one
+ *  side and edited on the other is merged rather than left as a deleted
+ *  file and an added one.  The whole result is worked out in memory;
+ *  nothing is written until the caller asks for it, so merge --dry-run
+ *  costs no more than the reads.
+ *  @author Enran Wu
+ */
+class Merge {
+
+    /** Files of the merged Commit, mapped to the UIDs of their Blobs. */
+    private final TreeMap<String, ObjectId> files = new TreeMap<>();
+
+    /** Blobs of merged content, not stored yet, by file name. */
+    private final TreeMap<String, Blob> created = new TreeMap<>();
+
+    /** Names of the files with conflicts, in order. */
+    private final List<String> conflicts = new ArrayList<>();
+
+    /** Merges OURS and THEIRS, whose latest common ancestor is BASE.  A
+     *  file one side renamed and the other kept under its old name is
+     *  merged under the new name. */
+    Merge(Commit base, Commit ours, Commit theirs) {
+        HashMap<String, String> oursFrom = renamed(base, ours, theirs);
+        HashMap<String, String> theirsFrom = renamed(base, theirs, ours);
+        HashSet<String> moved = new HashSet<>(oursFrom.values());
+        moved.addAll(theirsFrom.values());
+
+        TreeSet<String> names = new TreeSet<>(base.getNames());
+        names.addAll(ours.getNames());
+        names.addAll(theirs.getNames());
+        for (String name: names) {
+            if (moved.contains(name)) {
+                continue;
+            }
+            ObjectId b = base.getFiles().get(name);
+            ObjectId o = ours.getFiles().get(name);
+            ObjectId t = theirs.getFiles().get(name);
+            if (oursFrom.containsKey(name)) {
+                b = base.getFiles().get(oursFrom.get(name));
+                t = theirs.getFiles().get(oursFrom.get(name));
+            } else if (theirsFrom.containsKey(name)) {
+                b = base.getFiles().get(theirsFrom.get(name));
+                o = ours.getFiles().get(theirsFrom.get(name));
+            }
+            ObjectId result;
+            if (Objects.equals(o, t) || Objects.equals(b, t)) {
+                result = o;
+            } else if (Objects.equals(b, o)) {
+                result = t;
+            } else {
+                result = mergeFile(name, b, o, t);
+            }
+            if (result != null) {
+                files.put(name, result);
+            }
+        }
+    }
+
+    /** Returns the files SIDE renamed since BASE while OTHER kept them
+     *  under their old names, as new name mapped to old name. */
+    private static HashMap<String, String> renamed(Commit base, Commit side, Commit other) {
+        HashMap<String, String> result = new HashMap<>();
+        for (Renames.Pair pair: Renames.detect(base.getFiles(), side.getFiles(),
+                Renames.DEFAULT_THRESHOLD, id -> Blob.findBlob(id).getContent())) {
+            if (!pair.copy && other.contains(pair.from) && !other.contains(pair.to)) {
+                result.put(pair.to, pair.from);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the UID of the Blob holding the merge of the versions of
+     *  file NAME with UIDs B, O and T (null for an absent file), which all
+     *  differ.  Records a conflict if they cannot be merged cleanly. */
+    private ObjectId mergeFile(String name, ObjectId b, ObjectId o, ObjectId t) {
+        byte[] base = content(b), ours = content(o), theirs = content(t);
+        StringBuilder out = new StringBuilder();
+        boolean conflict;
+        if (Diff.isBinary(base) || Diff.isBinary(ours) || Diff.isBinary(theirs)) {
+            out.append("<<<<<<< HEAD\n").append(text(ours)).append("=======\n")
+                    .append(text(theirs)).append(">>>>>>>\n");
+            conflict = true;
+        } else {
+            conflict = merge(Diff.textLines(text(base)), Diff.textLines(text(ours)),
+                    Diff.textLines(text(theirs)), out);
+        }
+        if (conflict) {
+            conflicts.add(name);
+        }
+        Blob blob = new Blob(name, out.toString().getBytes(StandardCharsets.ISO_8859_1));
+        created.put(name, blob);
+        return blob.hash();
+    }
+
+    /** Returns the content of the Blob with UID ID, or nothing if ID is
+     *  null. */
+    private static byte[] content(ObjectId id) {
+        return id == null ? new byte[0] : Blob.findBlob(id).getContent();
+    }
+
+    /** Returns CONTENT as one char per byte, so it comes back unchanged. */
+    private static String text(byte[] content) {
+        return new String(content, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Appends to OUT the three-way merge of the lines OURS and THEIRS,
+     *  whose common version is BASE, all as given by Diff.textLines.
+     *  Returns whether there were conflicts. */
+    static boolean merge(List<String> base, List<String> ours, List<String> theirs,
+                         StringBuilder out) {
+        List<Diff.Edit> left = Diff.diff(base, ours);
+        List<Diff.Edit> right = Diff.diff(base, theirs);
+        boolean conflict = false;
+        int pos = 0, i = 0, j = 0;
+        while (i < left.size() || j < right.size()) {
+            // A chunk starts at the next Edit on either side, and takes in
+            // every Edit from either side that overlaps or touches it
+            int lo, hi;
+            if (j == right.size()
+                    || (i < left.size() && left.get(i).beginA <= right.get(j).beginA)) {
+                lo = left.get(i).beginA;
+                hi = left.get(i).endA;
+            } else {
+                lo = right.get(j).beginA;
+                hi = right.get(j).endA;
+            }
+            int firstLeft = i, firstRight = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < left.size() && left.get(i).beginA <= hi) {
+                    hi = Math.max(hi, left.get(i++).endA);
+                    grew = true;
+                }
+                while (j < right.size() && right.get(j).beginA <= hi) {
+                    hi = Math.max(hi, right.get(j++).endA);
+                    grew = true;
+                }
+            }
+
+            appendLines(out, base, pos, lo, false);
+            List<String> mine = side(base, ours, left, firstLeft, i, lo, hi);
+            List<String> yours = side(base, theirs, right, firstRight, j, lo, hi);
+            if (firstLeft == i) {
+                appendLines(out, yours, 0, yours.size(), false);
+            } else if (firstRight == j || mine.equals(yours)) {
+                appendLines(out, mine, 0, mine.size(), false);
+            } else {
+                out.append("<<<<<<< HEAD\n");
+                appendLines(out, mine, 0, mine.size(), true);
+                out.append("=======\n");
+                appendLines(out, yours, 0, yours.size(), true);
+                out.append(">>>>>>>\n");
+                conflict = true;
+            }
+            pos = hi;
+        }
+        appendLines(out, base, pos, base.size(), false);
+        return conflict;
+    }
+
+    /** Returns the lines of VERSION standing for BASE[LO, HI), given that
+     *  EDITS[FROM, TO) are the Edits from BASE to VERSION in that range. */
+    private static List<String> side(List<String> base, List<String> version,
+                                     List<Diff.Edit> edits, int from, int to,
+                                     int lo, int hi) {
+        if (from == to) {
+            return base.subList(lo, hi);
+        }
+        Diff.Edit first = edits.get(from), last = edits.get(to - 1);
+        return version.subList(first.beginB - (first.beginA - lo),
+                last.endB + (hi - last.endA));
+    }
+
+    /** Appends LINES[FROM, TO) to OUT.  A last line without a terminator
+     *  gets one only if TERMINATE, as inside a conflict block. */
+    private static void appendLines(StringBuilder out, List<String> lines,
+                                    int from, int to, boolean terminate) {
+        for (int k = from; k < to; k += 1) {
+            String line = lines.get(k);
+            if (!line.endsWith("\n")) {
+                out.append(line).append('\n');
+            } else if (terminate) {
+                out.append(line);
+            } else {
+                out.append(line, 0, line.length() - 1);
+            }
+        }
+    }
+
+    /** Returns the files of the merged Commit. */
+    TreeMap<String, ObjectId> getFiles() {
+        return files;
+    }
+
+    /** Returns the Blobs of merged content, which must be stored before
+     *  the merged Commit is. */
+    TreeMap<String, Blob> getCreated() {
+        return created;
+    }
+
+    /** Returns the names of the files with conflicts. */
+    List<String> getConflicts() {
+        return conflicts;
+    }
+}
@@ -0,0 +1,13 @@
+package gitlet;
+
+/** A GitletException saying that a command needing a repository was
+ *  run where there is none.
+ *  @author Enran Wu
+ */
+public class NotARepositoryException extends GitletException {
+
+    /** A NotARepositoryException with MSG as its message. */
+    NotARepositoryException(String msg) {
+        super(msg);
+    }
+}
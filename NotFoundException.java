@@ -0,0 +1,13 @@
+package gitlet;
+
+/** A GitletException saying that a branch, commit, file or remote
+ *  named by a command does not exist.
+ *  @author Enran Wu
+ */
+public class NotFoundException extends GitletException {
+
+    /** A NotFoundException with MSG as its message. */
+    NotFoundException(String msg) {
+        super(msg);
+    }
+}
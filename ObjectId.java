@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/** The SHA-1 UID of a Gitlet object, held as the 20 raw digest bytes.
+ *  An ObjectId is immutable.  It takes 32 bytes of heap (against about
+ *  100 for the equivalent 40-character hex String) and serializes as its
+ *  20 raw bytes.  The hex form is only produced on demand, for file names
+ *  and output.
+ *  @author Enran Wu
+ */
+final class ObjectId implements Serializable, Comparable<ObjectId> {
+
+    /** Number of bytes in a SHA-1 digest. */
+    static final int RAW_LENGTH = 20;
+
+    /** Lowercase hex digits, indexed by value. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The digest, as five big-endian 32-bit words. */
+    private transient int w0, w1, w2, w3, w4;
+
+    /** Initiates an ObjectId from the five big-endian words of a digest. */
+    private ObjectId(int w0, int w1, int w2, int w3, int w4) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.w4 = w4;
+    }
+
+    /** Returns the ObjectId whose raw digest is the 20 bytes of RAW
+     *  starting at OFFSET. */
+    static ObjectId fromRaw(byte[] raw, int offset) {
+        return new ObjectId(word(raw, offset), word(raw, offset + 4),
+                word(raw, offset + 8), word(raw, offset + 12),
+                word(raw, offset + 16));
+    }
+
+    /** Returns the ObjectId whose raw digest is RAW. */
+    static ObjectId fromRaw(byte[] raw) {
+        if (raw.length != RAW_LENGTH) {
+            throw new IllegalArgumentException("not a SHA-1 digest");
+        }
+        return fromRaw(raw, 0);
+    }
+
+    /** Returns the ObjectId written as the 40-digit hex numeral HEX.
+     *  Throws IllegalArgumentException if HEX is not one. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not a full UID: " + hex);
+        }
+        return new ObjectId(hexWord(hex, 0), hexWord(hex, 8),
+                hexWord(hex, 16), hexWord(hex, 24), hexWord(hex, 32));
+    }
+
+    /** Returns whether S is a full 40-digit lowercase hex UID. */
+    static boolean isHex(String s) {
+        if (s.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Copies the raw digest into DEST starting at OFFSET. */
+    void copyRawTo(byte[] dest, int offset) {
+        putWord(dest, offset, w0);
+        putWord(dest, offset + 4, w1);
+        putWord(dest, offset + 8, w2);
+        putWord(dest, offset + 12, w3);
+        putWord(dest, offset + 16, w4);
+    }
+
+    /** Returns a fresh copy of the raw digest. */
+    byte[] toRaw() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /** Returns the 40-digit lowercase hex form of this ObjectId. */
+    String toHex() {
+        char[] out = new char[Utils.UID_LENGTH];
+        putHex(out, 0, w0);
+        putHex(out, 8, w1);
+        putHex(out, 16, w2);
+        putHex(out, 24, w3);
+        putHex(out, 32, w4);
+        return new String(out);
+    }
+
+    /** Appends the 40-digit lowercase hex form of this ObjectId to OUT. */
+    void appendHex(StringBuilder out) {
+        appendHex(out, w0);
+        appendHex(out, w1);
+        appendHex(out, w2);
+        appendHex(out, w3);
+        appendHex(out, w4);
+    }
+
+    /** Returns the first N hex digits of this ObjectId. */
+    String abbreviate(int n) {
+        return toHex().substring(0, n);
+    }
+
+    /** Returns whether the hex form of this ObjectId starts with PREFIX. */
+    boolean startsWith(String prefix) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int word = i < 8 ? w0 : i < 16 ? w1 : i < 24 ? w2 : i < 32 ? w3 : w4;
+            int digit = (word >>> (28 - 4 * (i % 8))) & 0xf;
+            if (HEX[digit] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2
+                && w3 == other.w3 && w4 == other.w4;
+    }
+
+    @Override
+    public int hashCode() {
+        /* The digest is already uniformly distributed. */
+        return w1;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Integer.compareUnsigned(w0, other.w0);
+        if (c == 0) {
+            c = Integer.compareUnsigned(w1, other.w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w2, other.w2);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w3, other.w3);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w4, other.w4);
+        }
+        return c;
+    }
+
+    /** Writes this ObjectId to OUT as its 20 raw bytes. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(w0);
+        out.writeInt(w1);
+        out.writeInt(w2);
+        out.writeInt(w3);
+        out.writeInt(w4);
+    }
+
+    /** Reads an ObjectId written by writeObject from IN. */
+    private void readObject(ObjectInputStream in) throws IOException {
+        w0 = in.readInt();
+        w1 = in.readInt();
+        w2 = in.readInt();
+        w3 = in.readInt();
+        w4 = in.readInt();
+    }
+
+    /** Returns the big-endian word in RAW at OFFSET. */
+    private static int word(byte[] raw, int offset) {
+        return (raw[offset] & 0xff) << 24 | (raw[offset + 1] & 0xff) << 16
+                | (raw[offset + 2] & 0xff) << 8 | (raw[offset + 3] & 0xff);
+    }
+
+    /** Stores WORD big-endian into DEST at OFFSET. */
+    private static void putWord(byte[] dest, int offset, int word) {
+        dest[offset] = (byte) (word >>> 24);
+        dest[offset + 1] = (byte) (word >>> 16);
+        dest[offset + 2] = (byte) (word >>> 8);
+        dest[offset + 3] = (byte) word;
+    }
+
+    /** Returns the word written as the 8 hex digits of HEX at OFFSET. */
+    private static int hexWord(String hex, int offset) {
+        int result = 0;
+        for (int i = offset; i < offset + 8; i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("not a full UID: " + hex);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /** Appends WORD to OUT as 8 hex digits. */
+    private static void appendHex(StringBuilder out, int word) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            out.append(HEX[(word >>> shift) & 0xf]);
+        }
+    }
+
+    /** Writes WORD as 8 hex digits into OUT at OFFSET. */
+    private static void putHex(char[] out, int offset, int word) {
+        for (int i = 7; i >= 0; i -= 1) {
+            out[offset + i] = HEX[word & 0xf];
+            word >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package gitlet;
+
+/** A GitletException saying that a push would lose commits of the
+ *  remote branch, which must be pulled first.
+ *  @author Enran Wu
+ */
+public class PushRejectedException extends GitletException {
+
+    /** A PushRejectedException with MSG as its message. */
+    PushRejectedException(String msg) {
+        super(msg);
+    }
+}
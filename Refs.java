@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The branches of a .gitlet directory, mapped to the UIDs of their
+ *  Commits.
+ *
+ *  Most branches live in one text file, packed-refs, holding a line
+ *      [UID] [branch name]
+ *  per branch, sorted by name.  It is read once, into a hash map, the first
+ *  time a branch is asked for, so listing the branches costs one read and
+ *  looking one up costs a map lookup however many there are.  A branch
+ *  that is created or moved is written on its own as a loose Branch file
+ *  in branches/, which overrides its packed line, so updating a branch
+ *  never rewrites the packed file.  pack-refs (and gc) folds the loose
+ *  files back into the packed file.
+ *  @author Enran Wu
+ */
+class Refs {
+
+    /** Name of the packed file in a .gitlet directory. */
+    static final String PACKED = "packed-refs";
+
+    /** First line of the packed file. */
+    private static final String SIGNATURE = "# gitlet packed-refs v1";
+
+    /** The packed file. */
+    private final File packedFile;
+
+    /** Directory of the loose Branch files. */
+    private final File looseDir;
+
+    /** The branches in the packed file, or null until it is read. */
+    private HashMap<String, ObjectId> packed;
+
+    private Refs(File gitletDir) {
+        packedFile = Utils.join(gitletDir, PACKED);
+        looseDir = Utils.join(gitletDir, "branches");
+    }
+
+    /** Returns the Refs of the .gitlet directory GITLETDIR. */
+    static Refs of(File gitletDir) {
+        if (gitletDir.equals(Repository.commonDir())) {
+            return local();
+        }
+        return read(gitletDir);
+    }
+
+    /** Returns new Refs of the .gitlet directory GITLETDIR, which read
+     *  its packed file the first time a branch is asked for. */
+    static Refs read(File gitletDir) {
+        return new Refs(gitletDir);
+    }
+
+    /** Returns the Refs of the current repository. */
+    static Refs local() {
+        return Repository.refs();
+    }
+
+    /** Returns the branches in the packed file, reading it if need be. */
+    private HashMap<String, ObjectId> packed() {
+        if (packed != null) {
+            return packed;
+        }
+        packed = new HashMap<>();
+        if (!packedFile.isFile()) {
+            return packed;
+        }
+        for (String line: Utils.readContentsAsString(packedFile).split("\n")) {
+            int space = line.indexOf(' ');
+            if (line.startsWith("#") || space < 0
+                    || !ObjectId.isHex(line.substring(0, space))) {
+                continue;
+            }
+            packed.put(line.substring(space + 1), ObjectId.fromHex(line.substring(0, space)));
+        }
+        return packed;
+    }
+
+    /** Returns the UID of the Commit of branch NAME, or null if there is
+     *  no such branch. */
+    ObjectId get(String name) {
+        File file = Utils.join(looseDir, name);
+        if (file.isFile()) {
+            return Branch.findBranch(file).getCurrCommit();
+        }
+        return packed().get(name);
+    }
+
+    /** Returns whether there is a branch NAME. */
+    boolean contains(String name) {
+        return Utils.join(looseDir, name).isFile() || packed().containsKey(name);
+    }
+
+    /** Points branch NAME at the Commit with UID ID, creating it if
+     *  need be.  The Branch is written beside the branches directory and
+     *  moved into place, so a worktree reading it meanwhile finds it
+     *  whole. */
+    void set(String name, ObjectId id) throws IOException {
+        File file = Utils.join(looseDir, name);
+        File temp = Files.createTempFile(looseDir.getParentFile().toPath(),
+                "branch", ".tmp").toFile();
+        new Branch(name, id).writeTo(temp);
+        file.getParentFile().mkdirs();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Points every branch in REFS at its Commit, creating them if need
+     *  be, with a single rewrite of the packed file. */
+    void setAll(Map<String, ObjectId> refs) {
+        if (refs.isEmpty()) {
+            return;
+        }
+        HashMap<String, ObjectId> all = packed();
+        all.putAll(refs);
+        writePacked(all);
+        for (String name: refs.keySet()) {
+            Utils.join(looseDir, name).delete();
+        }
+    }
+
+    /** Deletes branch NAME, rewriting the packed file only if NAME is in
+     *  it. */
+    void delete(String name) {
+        Utils.join(looseDir, name).delete();
+        if (packed().remove(name) != null) {
+            writePacked(packed());
+        }
+    }
+
+    /** Returns the names of all branches in lexicographic order,
+     *  including remote-tracking ones such as R1/master. */
+    List<String> names() {
+        TreeSet<String> result = new TreeSet<>(packed().keySet());
+        result.addAll(looseNames());
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the names of the loose Branch files. */
+    private List<String> looseNames() {
+        List<String> result = new ArrayList<>();
+        List<String> top = Utils.plainFilenamesIn(looseDir);
+        if (top == null) {
+            return result;
+        }
+        result.addAll(top);
+        File[] dirs = looseDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir: dirs) {
+                for (String name: Utils.plainFilenamesIn(dir)) {
+                    result.add(dir.getName() + "/" + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Moves every loose branch into the packed file, and returns the
+     *  number moved. */
+    int pack() {
+        List<String> loose = looseNames();
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        HashMap<String, ObjectId> all = packed();
+        for (String name: loose) {
+            all.put(name, Branch.findBranch(Utils.join(looseDir, name)).getCurrCommit());
+        }
+        writePacked(all);
+        for (String name: loose) {
+            File file = Utils.join(looseDir, name);
+            file.delete();
+            if (!file.getParentFile().equals(looseDir)) {
+                file.getParentFile().delete();
+            }
+        }
+        return loose.size();
+    }
+
+    /** Replaces the packed file with one holding REFS.  The new file is
+     *  written aside and renamed over the old one, so readers see one or
+     *  the other whole. */
+    private void writePacked(Map<String, ObjectId> refs) {
+        StringBuilder text = new StringBuilder(SIGNATURE).append('\n');
+        for (Map.Entry<String, ObjectId> entry: new TreeMap<>(refs).entrySet()) {
+            text.append(entry.getValue().toHex()).append(' ')
+                    .append(entry.getKey()).append('\n');
+        }
+        File temp = new File(packedFile.getPath() + ".tmp");
+        Utils.writeContents(temp, text.toString());
+        try {
+            Files.move(temp.toPath(), packedFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
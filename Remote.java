@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Represents a gitlet Remote: a name for another .gitlet directory on
+ *  the local filesystem that history can be fetched from and pushed to.
+ *
+ *  Before copying anything, a transfer works out what the receiving side
+ *  lacks by walking back from the branch tip being sent and stopping at
+ *  every Commit the receiver already has.  Only the Commits on that walk
+ *  are copied, along with the Blobs they introduce relative to their first
+ *  parent that the receiver does not hold yet, so syncing a repository one
+ *  commit behind copies one commit's worth of objects.
+ *  @author Enran Wu
+ */
+public class Remote implements Serializable {
+
+    /** The UID Remote files are written with, which must not change with
+     *  the methods of the class. */
+    private static final long serialVersionUID = -4615175869538553782L;
+
+    /** Name of the Remote. */
+    private String name;
+
+    /** Path of the remote .gitlet directory, as given to add-remote. */
+    private String path;
+
+    /** Initiates a Remote with the given name and path to its .gitlet. */
+    public Remote(String name, String path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    /** Returns the name of the Remote. */
+    public String getName() {
+        return name;
+    }
+
+    /** Returns the remote .gitlet directory, resolved against the CWD. */
+    public File getGitletDir() {
+        File dir = new File(path.replace("/", File.separator));
+        if (!dir.isAbsolute()) {
+            dir = Utils.join(Repository.cwd(), dir.getPath());
+        }
+        return dir;
+    }
+
+    /** Writes the Remote to the given File. */
+    public void writeTo(File file) {
+        Utils.writeObject(file, this);
+    }
+
+    /** Finds the Remote with the given name, or returns null if there is
+     *  none. */
+    public static Remote findRemote(String remoteName) {
+        File file = Utils.join(Repository.remotesDir(), remoteName);
+        if (!file.exists()) {
+            return null;
+        }
+        return Utils.readObject(file, Remote.class);
+    }
+
+    /** Copies the Commit with UID TIP and everything it needs from the
+     *  .gitlet directory SRC to the .gitlet directory DEST, skipping what
+     *  DEST already has, holding the lock of DEST.  Returns the number of
+     *  Commits copied. */
+    static int transfer(File src, File dest, ObjectId tip) throws IOException {
+        Format.upgrade(src);
+        return RepositoryLock.holding(dest, () -> {
+            Format.upgrade(dest);
+            return copy(src, dest, tip);
+        });
+    }
+
+    /** Copies the Commit with UID TIP and everything it needs from SRC to
+     *  DEST, as transfer does, and returns the number of Commits copied. */
+    private static int copy(File src, File dest, ObjectId tip) {
+        File srcCommits = Utils.join(src, "commits");
+        File destCommits = Utils.join(dest, "commits");
+
+        // Negotiation: walk back from the tip, stopping at Commits DEST
+        // has, and list the others each after its parents
+        List<ObjectId> missing = new ArrayList<>();
+        Map<ObjectId, Commit> loaded = new HashMap<>();
+        Set<ObjectId> seen = new HashSet<>();
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        ArrayDeque<Boolean> expanded = new ArrayDeque<>();
+        seen.add(tip);
+        if (!Repository.objectFile(destCommits, tip).exists()) {
+            stack.push(tip);
+            expanded.push(false);
+        }
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (expanded.pop()) {
+                stack.pop();
+                missing.add(id);
+                continue;
+            }
+            expanded.push(true);
+            Commit commit = Commit.findCommit(Repository.objectFile(srcCommits, id));
+            loaded.put(id, commit);
+            List<ObjectId> parents = commit.getParents();
+            for (int i = parents.size() - 1; i >= 0; i -= 1) {
+                ObjectId parent = parents.get(i);
+                if (seen.add(parent)
+                        && !Repository.objectFile(destCommits, parent).exists()) {
+                    stack.push(parent);
+                    expanded.push(false);
+                }
+            }
+        }
+
+        // Blobs each missing Commit introduces over its first parent
+        Set<ObjectId> blobs = new HashSet<>();
+        for (ObjectId id: missing) {
+            Commit commit = loaded.get(id);
+            Commit parent = null;
+            if (commit.getParent() != null) {
+                parent = loaded.get(commit.getParent());
+                if (parent == null) {
+                    parent = Commit.findCommit(Repository.objectFile(destCommits,
+                            commit.getParent()));
+                }
+            }
+            blobs.addAll(commit.changedBlobs(parent));
+        }
+        for (ObjectId blob: blobs) {
+            File destBlob = Repository.newObjectFile(Utils.join(dest, "blobs"), blob);
+            if (!destBlob.exists()) {
+                Utils.copyFileAtomically(Repository.objectFile(Utils.join(src, "blobs"), blob),
+                        destBlob);
+            }
+        }
+
+        // Parents first, so DEST never holds a Commit without its parents
+        for (ObjectId id: missing) {
+            Utils.copyFileAtomically(Repository.objectFile(srcCommits, id),
+                    Repository.newObjectFile(destCommits, id));
+        }
+        return missing.size();
+    }
+
+    /** Returns the remote .gitlet directory of the Remote named REMOTENAME,
+     *  upgraded to the current format, throwing a GitletException if the
+     *  remote or its directory is missing. */
+    static File findGitletDir(String remoteName) throws IOException {
+        Remote remote = findRemote(remoteName);
+        if (remote == null) {
+            throw new NotFoundException("A remote with that name does not exist.");
+        }
+        File dir = remote.getGitletDir();
+        if (!dir.isDirectory()) {
+            throw new NotFoundException("Remote directory not found.");
+        }
+        File result = Repository.commonDir(dir);
+        Format.upgrade(result);
+        return result;
+    }
+
+    /** Returns the Branch named BRANCHNAME in the .gitlet directory DIR, or
+     *  null if there is none. */
+    static Branch findBranch(File dir, String branchName) {
+        ObjectId id = Refs.of(dir).get(branchName);
+        return id == null ? null : new Branch(branchName, id);
+    }
+
+    /** Points the Branch named BRANCHNAME in the .gitlet directory DIR at
+     *  the Commit with UID ID, creating the Branch if needed. */
+    static void setBranch(File dir, String branchName, ObjectId id) throws IOException {
+        Refs.of(dir).set(branchName, id);
+    }
+}
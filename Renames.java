@@ -0,0 +1,246 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** Finds files that were renamed or copied between two file maps.
+ *
+ *  A Blob's UID depends only on its content, so a file moved unchanged
+ *  keeps its UID and is matched through a hash map on UIDs.  The files
+ *  left over are matched by similarity: each is reduced to a MinHash
+ *  sketch of its set of lines, whose agreement estimates the share of
+ *  lines two files have in common.  Sketches are split into bands, and
+ *  only files that agree on a whole band are ever compared, so a large
+ *  move does not cost a comparison of every added file with every deleted
+ *  one.
+ *  @author Enran Wu
+ */
+class Renames {
+
+    /** Default similarity threshold, as a percentage. */
+    static final int DEFAULT_THRESHOLD = 50;
+
+    /** Number of hashes in a sketch. */
+    private static final int HASHES = 128;
+
+    /** Number of hashes in a band. */
+    private static final int ROWS = 4;
+
+    /** FNV-1a parameters for hashing lines. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L, FNV_PRIME = 0x100000001b3L;
+
+    /** Seeds of the hash functions of a sketch. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0;
+        for (int h = 0; h < HASHES; h += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            SEEDS[h] = mix(seed);
+        }
+    }
+
+    /** A file of the new map found to come from a file of the old one. */
+    static class Pair {
+        /** Name in the old map. */
+        final String from;
+
+        /** Name in the new map. */
+        final String to;
+
+        /** Estimated percentage of lines the two have in common. */
+        final int score;
+
+        /** Whether FROM is kept as well, making TO a copy. */
+        final boolean copy;
+
+        Pair(String from, String to, int score, boolean copy) {
+            this.from = from;
+            this.to = to;
+            this.score = score;
+            this.copy = copy;
+        }
+    }
+
+    /** Returns the renames and copies from BEFORE to AFTER whose similarity
+     *  is at least THRESHOLD percent, ordered by new name.  A file of
+     *  AFTER not in BEFORE is a rename of a file of BEFORE not in AFTER, or
+     *  else an exact copy of any file of BEFORE.  A THRESHOLD over 100
+     *  turns detection off.  CONTENT gives the content of a Blob from its
+     *  UID. */
+    static List<Pair> detect(Map<String, ObjectId> before, Map<String, ObjectId> after,
+                             int threshold, Function<ObjectId, byte[]> content) {
+        if (threshold > 100) {
+            return new ArrayList<>();
+        }
+        List<String> deleted = new ArrayList<>();
+        for (String name: before.keySet()) {
+            if (!after.containsKey(name)) {
+                deleted.add(name);
+            }
+        }
+        List<String> added = new ArrayList<>();
+        for (String name: after.keySet()) {
+            if (!before.containsKey(name)) {
+                added.add(name);
+            }
+        }
+        TreeMap<String, Pair> found = new TreeMap<>();
+
+        // Exact matches, deleted files first so that a move is a rename
+        Map<ObjectId, String> sources = new HashMap<>();
+        for (Map.Entry<String, ObjectId> entry: before.entrySet()) {
+            sources.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        for (String name: deleted) {
+            sources.put(before.get(name), name);
+        }
+        Set<String> used = new HashSet<>();
+        List<String> unmatched = new ArrayList<>();
+        for (String name: added) {
+            String source = sources.get(after.get(name));
+            if (source == null) {
+                unmatched.add(name);
+            } else {
+                boolean copy = after.containsKey(source) || !used.add(source);
+                found.put(name, new Pair(source, name, 100, copy));
+            }
+        }
+        List<String> unused = new ArrayList<>();
+        for (String name: deleted) {
+            if (!used.contains(name)) {
+                unused.add(name);
+            }
+        }
+        if (!unmatched.isEmpty() && !unused.isEmpty()) {
+            for (Pair pair: similar(unused, before, unmatched, after, threshold, content)) {
+                found.put(pair.to, pair);
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /** Returns the best match in OLDNAMES, whose UIDs are in BEFORE, of
+     *  each file in NEWNAMES, whose UIDs are in AFTER, that is at least
+     *  THRESHOLD percent similar.  Each old file is renamed at most once;
+     *  further matches to it are copies. */
+    private static List<Pair> similar(List<String> oldNames, Map<String, ObjectId> before,
+                                      List<String> newNames, Map<String, ObjectId> after,
+                                      int threshold, Function<ObjectId, byte[]> content) {
+        long[][] oldSketches = new long[oldNames.size()][];
+        HashMap<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < oldNames.size(); i += 1) {
+            oldSketches[i] = sketch(content.apply(before.get(oldNames.get(i))));
+            if (oldSketches[i] == null) {
+                continue;
+            }
+            for (int band = 0; band < HASHES / ROWS; band += 1) {
+                buckets.computeIfAbsent(bandKey(oldSketches[i], band),
+                        k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Candidate pairs, best first
+        List<long[]> candidates = new ArrayList<>();
+        for (int j = 0; j < newNames.size(); j += 1) {
+            long[] sketch = sketch(content.apply(after.get(newNames.get(j))));
+            if (sketch == null) {
+                continue;
+            }
+            Set<Integer> seen = new HashSet<>();
+            for (int band = 0; band < HASHES / ROWS; band += 1) {
+                List<Integer> bucket = buckets.get(bandKey(sketch, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i: bucket) {
+                    if (seen.add(i)) {
+                        int score = similarity(oldSketches[i], sketch);
+                        if (score >= threshold) {
+                            candidates.add(new long[] {score, i, j});
+                        }
+                    }
+                }
+            }
+        }
+        candidates.sort((x, y) -> Long.compare(y[0], x[0]));
+
+        List<Pair> result = new ArrayList<>();
+        boolean[] renamed = new boolean[oldNames.size()];
+        boolean[] matched = new boolean[newNames.size()];
+        for (long[] candidate: candidates) {
+            int i = (int) candidate[1], j = (int) candidate[2];
+            if (matched[j]) {
+                continue;
+            }
+            matched[j] = true;
+            result.add(new Pair(oldNames.get(i), newNames.get(j), (int) candidate[0],
+                    renamed[i]));
+            renamed[i] = true;
+        }
+        return result;
+    }
+
+    /** Returns the MinHash sketch of the set of lines of CONTENT, or null
+     *  if CONTENT is empty or binary. */
+    static long[] sketch(byte[] content) {
+        if (content.length == 0 || Diff.isBinary(content)) {
+            return null;
+        }
+        long[] result = new long[HASHES];
+        Arrays.fill(result, Long.MAX_VALUE);
+        long line = FNV_OFFSET;
+        for (int k = 0; k <= content.length; k += 1) {
+            if (k < content.length && content[k] != '\n') {
+                line = (line ^ (content[k] & 0xff)) * FNV_PRIME;
+                continue;
+            }
+            if (k == content.length && line == FNV_OFFSET) {
+                break;
+            }
+            for (int h = 0; h < HASHES; h += 1) {
+                long value = mix(line + SEEDS[h]);
+                if (value < result[h]) {
+                    result[h] = value;
+                }
+            }
+            line = FNV_OFFSET;
+        }
+        return result;
+    }
+
+    /** Returns the estimated similarity of the files with sketches A and
+     *  B, as a percentage. */
+    static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int h = 0; h < HASHES; h += 1) {
+            if (a[h] == b[h]) {
+                same += 1;
+            }
+        }
+        return same * 100 / HASHES;
+    }
+
+    /** Returns the hash of band BAND of SKETCH. */
+    private static long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int h = band * ROWS; h < (band + 1) * ROWS; h += 1) {
+            key = mix(key ^ sketch[h]);
+        }
+        return key;
+    }
+
+    /** Returns a well-mixed 64-bit hash of X (the splitmix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/** Replays Commits on top of another Commit, as rebase and cherry-pick do.
+ *
+ *  Everything is worked out on FileMaps in memory.  Each Commit's changes
+ *  against its first parent are found with FileMap.diff, which costs about
+ *  the files it changed, and applied to the files of the Commit made before
+ *  it.  A change to a file that the tip has changed since as well is merged
+ *  three ways with Merge; nothing else reads a Blob.  The new Commits are
+ *  kept in memory, and stored together by write once every Commit has been
+ *  replayed, so a replay that stops on a conflict leaves no Commit behind.
+ *  Blobs of merged content are stored as they are made, since a later
+ *  Commit may be merged with them; those of a replay that stops are left
+ *  for gc.  A Commit whose changes the tip already has is dropped.
+ *  @author Enran Wu
+ */
+class Replay {
+
+    /** The Commit replayed onto last, or the one first replayed onto. */
+    private Commit tip;
+
+    /** The new Commits, not stored yet, in order. */
+    private final List<Commit> made = new ArrayList<>();
+
+    /** Number of Commits dropped, as the tip already had their changes. */
+    private int dropped;
+
+    /** The Commit last picked, which is likely the parent of the next. */
+    private Commit last;
+
+    /** Replays Commits on top of ONTO. */
+    Replay(Commit onto) {
+        tip = onto;
+    }
+
+    /** Applies the changes COMMIT made to its first parent on top of the
+     *  tip, as a new Commit with COMMIT's message and time which becomes
+     *  the tip.  Throws a GitletException, and leaves the tip alone, if
+     *  the changes conflict with the tip's. */
+    void pick(Commit commit) {
+        Commit parent;
+        if (commit.getParent() == null) {
+            parent = new Commit("", new Date(0), null);
+        } else if (last != null && last.getId().equals(commit.getParent())) {
+            parent = last;
+        } else {
+            parent = Commit.findCommit(commit.getParent());
+        }
+        last = commit;
+        Commit applied = tip.copy(commit.getMessage(), commit.getTime());
+        applied.setParent(tip);
+        boolean[] overlap = new boolean[1];
+        commit.getFiles().diff(parent.getFiles(), (name, was, now) -> {
+            ObjectId ours = tip.getFiles().get(name);
+            if (!Objects.equals(ours, was)) {
+                overlap[0] |= !Objects.equals(ours, now);
+            } else if (now == null) {
+                applied.removeFile(name);
+            } else {
+                applied.putFile(name, now);
+            }
+        });
+
+        // Every change applied above is a real one, so the files are the
+        // tip's own map only if nothing was applied
+        Commit next = overlap[0] ? merge(parent, commit) : applied;
+        if (next.getFiles() == tip.getFiles()
+                || (overlap[0] && next.getFiles().equals(tip.getFiles()))) {
+            dropped += 1;
+            return;
+        }
+        next.seal();
+        tip = next;
+        made.add(next);
+    }
+
+    /** Returns a copy of COMMIT on top of the tip, with the tip's files
+     *  and the changes COMMIT made to PARENT merged in three ways.  Stores
+     *  the Blobs of merged content. */
+    private Commit merge(Commit parent, Commit commit) {
+        Merge merge = new Merge(parent, tip, commit);
+        if (!merge.getConflicts().isEmpty()) {
+            throw new ConflictException("Encountered a merge conflict in "
+                    + String.join(", ", merge.getConflicts()) + " replaying commit "
+                    + commit.getId().abbreviate(7) + "; nothing was changed.");
+        }
+        try {
+            for (Blob blob: merge.getCreated().values()) {
+                blob.createBlobFile();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Commit result = tip.copy(commit.getMessage(), commit.getTime());
+        result.setParent(tip);
+        FileMap.of(merge.getFiles()).diff(tip.getFiles(), (name, was, now) -> {
+            if (now == null) {
+                result.removeFile(name);
+            } else {
+                result.putFile(name, now);
+            }
+        });
+        return result;
+    }
+
+    /** Stores every new Commit, in order.  Each was sealed when it was
+     *  made, so that the next could name it as its parent. */
+    void write() {
+        for (Commit commit: made) {
+            byte[] content = commit.seal();
+            File file = Repository.newObjectFile(Repository.commitsDir(), commit.getId());
+            Utils.writeContentsAtomically(file, (Object) content);
+        }
+    }
+
+    /** Returns the tip: the last new Commit, or the Commit replayed onto
+     *  if there is none. */
+    Commit tip() {
+        return tip;
+    }
+
+    /** Returns the number of new Commits. */
+    int made() {
+        return made.size();
+    }
+
+    /** Returns the number of Commits dropped. */
+    int dropped() {
+        return dropped;
+    }
+
+    /** Returns the Commits on the first-parent line from HEAD back to, and
+     *  not including, SPLIT, the latest common ancestor of HEAD and
+     *  UPSTREAM, oldest first.  If the line passes SPLIT by, it ends
+     *  instead at the first Commit UPSTREAM has.  The Commits are loaded
+     *  oldest last, so each shares the nodes of its files with its parent,
+     *  and pick finds their changes quickly. */
+    static List<Commit> toReplay(Commit head, ObjectId upstream, ObjectId split) {
+        List<Commit> result = new ArrayList<>();
+        Commit commit = head;
+        while (commit != null && !commit.getId().equals(split)) {
+            result.add(commit);
+            commit = commit.getParent() == null ? null : Commit.findCommit(commit.getParent());
+        }
+        if (commit == null) {
+            Set<ObjectId> theirs = History.ancestors(CommitGraph.read(), upstream);
+            for (int i = 0; i < result.size(); i += 1) {
+                if (theirs.contains(result.get(i).getId())) {
+                    result = result.subList(0, i);
+                    break;
+                }
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Builds a synthetic Gitlet repository for benchmarking.
+ *  The repository is built in the current working directory through the
+ *  regular Commands API, so the resulting .gitlet/ is exactly what a user
+ *  would get by running the same sequence of commands.
+ *
+ *  Usage: java -Duser.dir=DIR gitlet.RepoGenerator COMMITS FILES BRANCHES
+ *                                                  SIZES [TOUCH] [SEED]
+ *  where
+ *      COMMITS  number of commits to make after the initial commit,
+ *      FILES    number of distinct files in the working tree,
+ *      BRANCHES number of branches the history fans out into,
+ *      SIZES    file-size distribution: fixed:N, uniform:MIN:MAX or
+ *               pareto:MIN:ALPHA (sizes in bytes),
+ *      TOUCH    number of files changed by each commit (default 3),
+ *      SEED     seed of the random generator (default 0).
+ *
+ *  On completion, prints one line per branch of the form
+ *      branch NAME COMMIT_ID
+ *  followed by the line "message MESSAGE" naming a message that exactly
+ *  one commit carries, for use by the benchmark runner.
+ *  @author Enran Wu
+ */
+public class RepoGenerator {
+
+    /** Upper bound on the size of a single generated file. */
+    private static final int MAX_SIZE = 1 << 24;
+
+    /** Characters that generated file contents are drawn from. */
+    private static final byte[] ALPHABET =
+            "abcdefghijklmnopqrstuvwxyz0123456789 \n".getBytes();
+
+    /** The random generator driving sizes and contents. */
+    private final Random random;
+
+    /** Kind of the file-size distribution. */
+    private final String sizeKind;
+
+    /** First parameter of the file-size distribution. */
+    private final double sizeA;
+
+    /** Second parameter of the file-size distribution. */
+    private final double sizeB;
+
+    /** Initiates a RepoGenerator with the given SIZES distribution and SEED. */
+    RepoGenerator(String sizes, long seed) {
+        String[] parts = sizes.split(":");
+        random = new Random(seed);
+        sizeKind = parts[0];
+        switch (sizeKind) {
+            case "fixed":
+                sizeA = Double.parseDouble(parts[1]);
+                sizeB = 0;
+                break;
+            case "uniform":
+            case "pareto":
+                sizeA = Double.parseDouble(parts[1]);
+                sizeB = Double.parseDouble(parts[2]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown size distribution: "
+                        + sizes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: java gitlet.RepoGenerator COMMITS FILES "
+                    + "BRANCHES SIZES [TOUCH] [SEED]");
+            System.exit(0);
+        }
+        int commits = Integer.parseInt(args[0]);
+        int files = Integer.parseInt(args[1]);
+        int branches = Math.max(1, Integer.parseInt(args[2]));
+        int touch = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+        RepoGenerator generator = new RepoGenerator(args[3], seed);
+        generator.generate(commits, files, branches, touch);
+    }
+
+    /** Builds the repository. The first commit tracks all FILES files; each
+     *  of the remaining COMMITS - 1 commits rewrites TOUCH of them. History
+     *  is split into BRANCHES equal segments: each new branch forks off the
+     *  tip of the previous one, so the commit graph fans out into one line
+     *  per branch without any per-commit checkouts.
+     */
+    void generate(int commits, int files, int branches,
+                  int touch) throws IOException {
+        Commands.init();
+
+        int perBranch = Math.max(1, commits / branches);
+        ArrayList<String> branchNames = new ArrayList<>();
+        branchNames.add("master");
+        int made = 0;
+        for (int b = 0; made < commits; b += 1) {
+            if (b > 0 && b < branches) {
+                String name = "branch-" + b;
+                Commands.branch(name);
+                Commands.checkoutBranch(name);
+                branchNames.add(name);
+            }
+            int end = (b >= branches - 1) ? commits : Math.min(commits, made + perBranch);
+            for (; made < end; made += 1) {
+                if (made == 0) {
+                    for (int f = 0; f < files; f += 1) {
+                        writeFile(f, made);
+                    }
+                } else {
+                    for (int t = 0; t < touch; t += 1) {
+                        writeFile(random.nextInt(files), made);
+                    }
+                }
+                Commands.commit(message(made));
+            }
+        }
+
+        for (String name: branchNames) {
+            System.out.println("branch " + name + " "
+                    + Branch.findBranch(name).getCurrCommit());
+        }
+        System.out.println("message " + message(commits / 2));
+    }
+
+    /** Writes new contents for file number F as of commit number C and
+     *  stages it.  The contents always start with C, so they never match
+     *  the committed version and add never short-circuits. */
+    private void writeFile(int f, int c) throws IOException {
+        String name = fileName(f);
+        File file = Utils.join(Repository.cwd(), name);
+        byte[] header = ("commit " + c + " file " + f + "\n").getBytes();
+        int size = Math.max(header.length, nextSize());
+        byte[] content = new byte[size];
+        System.arraycopy(header, 0, content, 0, header.length);
+        for (int i = header.length; i < size; i += 1) {
+            content[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        Utils.writeContents(file, content);
+        Commands.add(name);
+    }
+
+    /** Returns the next file size drawn from the distribution. */
+    private int nextSize() {
+        double size;
+        switch (sizeKind) {
+            case "fixed":
+                size = sizeA;
+                break;
+            case "uniform":
+                size = sizeA + random.nextDouble() * (sizeB - sizeA);
+                break;
+            default:
+                size = sizeA / Math.pow(1 - random.nextDouble(), 1 / sizeB);
+                break;
+        }
+        return (int) Math.min(MAX_SIZE, size);
+    }
+
+    /** Returns the name of file number F. */
+    private static String fileName(int f) {
+        return "file-" + f + ".txt";
+    }
+
+    /** Returns the message of commit number C. */
+    private static String message(int c) {
+        return "synthetic commit " + c;
+    }
+}
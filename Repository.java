@@ -1,8 +1,14 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import static gitlet.Utils.*;
@@ -14,101 +20,308 @@ import static gitlet.Utils.*;
  *  .gitlet/ -- top level folder for all persistent data
  *        - head/
  *        - commits/ -- folder with commits made
- *        - blobs/ -- folder with the persistent data for files in the commits
+ *            - xx/yyyy... -- a commit, under the first two hex digits of its UID
+ *        - blobs/ -- folder with the persistent data for files in the commits,
+ *                    split the same way
  *        - staging_area/ -- folder with the persistent data files ready to be commit
  *            - removed/
  *            - added/
- *        - branches/
+ *        - branches/ -- branches written since the last pack-refs, one file each
+ *        - packed-refs -- every other branch, one line each
+ *        - remotes/ -- folder with a Remote object for each add-remote
+ *        - commit-graph -- index of the commits, written by commit-graph write
+ *        - sparse-checkout -- path prefixes to keep in the working directory
+ *        - format -- the version of the format of the directory
+ *        - old-ids -- the UIDs objects had before an upgrade from version 1
+ *        - worktrees -- the working directory of each worktree added, one a line
+ *        - lock -- locked by each command that changes the repository
+ *
+ *  A worktree added with worktree add has a .gitlet directory of its own
+ *  holding only head.txt, staging_area/, sparse-checkout and a file,
+ *  commondir, naming the .gitlet directory above.  Its objects, branches,
+ *  remotes and commit-graph are those of that directory, so a worktree
+ *  costs its checked-out files and nothing more.
  *
  * @author Enran Wu
  * Note: inspired by lab6 capersRepository
  */
 public class Repository {
 
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** The Repository of each thread.  A thread a command starts, such as
+     *  a worker of one of its fork-join pools, runs in the Repository the
+     *  command runs in. */
+    private static final InheritableThreadLocal<Repository> CURRENT =
+        new InheritableThreadLocal<>();
+
+    /** The Repository of the current working directory, which commands
+     *  run in unless they are run through runIn. */
+    private static final Repository DEFAULT =
+        new Repository(new File(System.getProperty("user.dir")), null);
+
+    /** The working directory. */
+    private final File cwd;
 
     /** The .gitlet directory. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    private final File gitletDir;
 
-    /** Text file containing name of the HEAD branch. */
-    static final File HEAD = Utils.join(GITLET_DIR, "head.txt");
+    /** The .gitlet directory holding the objects and branches, which is
+     *  GITLETDIR but in a worktree. */
+    private final File commonDir;
 
-    /** Denotes HEAD. */
-    static String head;
+    /** Text file containing name of the HEAD branch. */
+    private final File headFile;
 
     /** Folder containing all Commit objects made. */
-    static final File COMMITS = Utils.join(GITLET_DIR, "commits");
+    private final File commits;
 
     /** Folder containing all Blob objects made. */
-    static final File BLOBS = Utils.join(GITLET_DIR, "blobs");
+    private final File blobs;
 
     /** Folder containing all Blob objects staged or ready to be committed. */
-    static final File STAGING_AREA = Utils.join(GITLET_DIR, "staging_area");
+    private final File stagingArea;
 
     /** Text file containing Stage objects that are being removed. */
-    static final File REMOVED = Utils.join(STAGING_AREA, "removals.txt");
+    private final File removed;
 
     /** Text file containing Stage objects that are being added. */
-    static final File ADDED = Utils.join(STAGING_AREA, "additions.txt");
+    private final File added;
 
     /** Folder containing all Branch objects made. */
-    static final File BRANCHES = Utils.join(GITLET_DIR, "branches");
+    private final File branches;
+
+    /** Folder containing all Remote objects made. */
+    private final File remotes;
+
+    /** Index of the Commit graph with changed-path filters, if written. */
+    private final File commitGraph;
+
+    /** Text file of sparse-checkout patterns, if any are set. */
+    private final File sparseCheckout;
+
+    /** Where commands print, or null for standard output. */
+    private final PrintStream out;
+
+    /** The branches, once read. */
+    private Refs refs;
+
+    /** A Repository whose working directory is CWD, printing to OUT, or
+     *  to standard output if OUT is null. */
+    Repository(File cwd, PrintStream out) {
+        this.cwd = cwd;
+        this.out = out;
+        gitletDir = join(cwd, ".gitlet");
+        commonDir = commonDir(gitletDir);
+        headFile = join(gitletDir, "head.txt");
+        commits = join(commonDir, "commits");
+        blobs = join(commonDir, "blobs");
+        stagingArea = join(gitletDir, "staging_area");
+        removed = join(stagingArea, "removals.txt");
+        added = join(stagingArea, "additions.txt");
+        branches = join(commonDir, "branches");
+        remotes = join(commonDir, "remotes");
+        commitGraph = join(commonDir, "commit-graph");
+        sparseCheckout = join(gitletDir, "sparse-checkout");
+    }
+
+    /** Work done in a Repository by runIn. */
+    interface Action<T> {
+        /** Does the work, and returns its result. */
+        T run() throws IOException;
+    }
+
+    /** Runs ACTION in REPO on this thread, and returns what it returns. */
+    static <T> T runIn(Repository repo, Action<T> action) throws IOException {
+        Repository previous = CURRENT.get();
+        CURRENT.set(repo);
+        try {
+            return action.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /** Returns the Repository commands on this thread run in. */
+    static Repository current() {
+        Repository repo = CURRENT.get();
+        return repo == null ? DEFAULT : repo;
+    }
+
+    /** Returns the working directory. */
+    static File cwd() {
+        return current().cwd;
+    }
+
+    /** Returns the .gitlet directory. */
+    static File gitletDir() {
+        return current().gitletDir;
+    }
+
+    /** Returns the .gitlet directory holding the objects and branches. */
+    static File commonDir() {
+        return current().commonDir;
+    }
+
+    /** Returns the .gitlet directory holding the objects and branches of
+     *  the .gitlet directory GITLETDIR: the one its commondir file names
+     *  if it is a worktree's, else GITLETDIR itself. */
+    static File commonDir(File gitletDir) {
+        File file = join(gitletDir, COMMONDIR);
+        if (!file.isFile()) {
+            return gitletDir;
+        }
+        return new File(readContentsAsString(file).trim());
+    }
+
+    /** Returns the text file containing name of the HEAD branch. */
+    static File headFile() {
+        return current().headFile;
+    }
+
+    /** Returns the folder containing all Commit objects made. */
+    static File commitsDir() {
+        return current().commits;
+    }
+
+    /** Returns the folder containing all Blob objects made. */
+    static File blobsDir() {
+        return current().blobs;
+    }
+
+    /** Returns the folder containing the Stages. */
+    static File stagingArea() {
+        return current().stagingArea;
+    }
+
+    /** Returns the text file containing the Stage of removals. */
+    static File removedFile() {
+        return current().removed;
+    }
+
+    /** Returns the text file containing the Stage of additions. */
+    static File addedFile() {
+        return current().added;
+    }
+
+    /** Returns the folder containing the loose Branch files. */
+    static File branchesDir() {
+        return current().branches;
+    }
+
+    /** Returns the folder containing all Remote objects made. */
+    static File remotesDir() {
+        return current().remotes;
+    }
+
+    /** Returns the commit-graph file, which may not exist. */
+    static File commitGraphFile() {
+        return current().commitGraph;
+    }
+
+    /** Returns the text file of sparse-checkout patterns, which may not
+     *  exist. */
+    static File sparseCheckoutFile() {
+        return current().sparseCheckout;
+    }
+
+    /** Returns where commands print. */
+    static PrintStream out() {
+        PrintStream result = current().out;
+        return result == null ? System.out : result;
+    }
+
+    /** Returns a stream to write bulk output to: standard output itself,
+     *  unbuffered, so that a reader going away is seen, or where this
+     *  Repository prints if it is not standard output. */
+    static OutputStream outputStream() {
+        PrintStream result = current().out;
+        if (result != null) {
+            return result;
+        }
+        System.out.flush();
+        return new FileOutputStream(FileDescriptor.out);
+    }
+
+    /** Returns the branches. */
+    static Refs refs() {
+        Repository repo = current();
+        if (repo.refs == null) {
+            repo.refs = Refs.read(repo.commonDir);
+        }
+        return repo.refs;
+    }
+
+    /** Returns the name of the HEAD branch. */
+    static String headName() {
+        return Utils.readContentsAsString(headFile());
+    }
+
+    /** File of a worktree's .gitlet directory naming the .gitlet directory
+     *  it shares. */
+    private static final String COMMONDIR = "commondir";
+
+    /** File of the working directories of the worktrees. */
+    private static final String WORKTREES = "worktrees";
+
+    /** Number of leading hex digits of a UID naming its subdirectory. */
+    private static final int FANOUT_DIGITS = 2;
 
     /** Does required filesystem operations to allow for persistence. */
     public static void setupPersistence() throws IOException {
-        if (!GITLET_DIR.exists()) {
-            GITLET_DIR.mkdir();
+        if (!gitletDir().exists()) {
+            gitletDir().mkdir();
         }
 
-        if (!COMMITS.exists()) {
-            COMMITS.mkdir();
+        if (!commitsDir().exists()) {
+            commitsDir().mkdir();
         }
 
-        if (!BLOBS.exists()) {
-            BLOBS.mkdir();
+        if (!blobsDir().exists()) {
+            blobsDir().mkdir();
         }
 
-        if (!STAGING_AREA.exists()) {
-            STAGING_AREA.mkdir();
+        Format.write(gitletDir());
+
+        if (!stagingArea().exists()) {
+            stagingArea().mkdir();
+        }
+
+        if (!headFile().exists()) {
+            headFile().createNewFile();
         }
 
-        if (!HEAD.exists()) {
-            HEAD.createNewFile();
+        if (!addedFile().exists()) {
+            addedFile().createNewFile();
         }
 
-        if (!ADDED.exists()) {
-            ADDED.createNewFile();
+        if (!removedFile().exists()) {
+            removedFile().createNewFile();
         }
 
-        if (!REMOVED.exists()) {
-            REMOVED.createNewFile();
+        if (!branchesDir().exists()) {
+            branchesDir().mkdir();
         }
 
-        if (!BRANCHES.exists()) {
-            BRANCHES.mkdir();
+        if (!remotesDir().exists()) {
+            remotesDir().mkdir();
         }
     }
 
     /** Updates the Stages. */
     public static void updateStages(Stage addStage, Stage rmStage) {
-        addStage.writeTo(ADDED);
-        rmStage.writeTo(REMOVED);
+        addStage.writeTo(addedFile());
+        rmStage.writeTo(removedFile());
     }
 
     /** Finds the current Commit the head is on. */
     public static Commit findCurrCommit() {
-        head = Utils.readContentsAsString(HEAD);
-        Branch currBranch = Branch.findBranch(head);
+        Branch currBranch = Branch.findBranch(headName());
         Commit currCommit = Commit.findCommit(currBranch.getCurrCommit());
         return currCommit;
     }
 
     /** Finds the current Branch the head is on. */
     public static Branch findCurrBranch() {
-        head = Utils.readContentsAsString(HEAD);
-        Branch currBranch = Branch.findBranch(head);
-        return currBranch;
+        return Branch.findBranch(headName());
     }
 
     /** Checks if the Stages is empty. */
@@ -122,29 +335,195 @@ public class Repository {
         rmStage.clear();
     }
 
+    /** Deletes the file with the given name from the working directory,
+     *  along with any of its directories left empty. */
+    static void deleteWorkingFile(String fileName) {
+        File file = join(cwd(), fileName);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        for (File dir = file.getParentFile(); !dir.equals(cwd()) && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** Makes ROOT a worktree of the repository, with the branch
+     *  BRANCHNAME as its HEAD and nothing staged, and returns it.  Its
+     *  files are left to be checked out. */
+    static Repository addWorktree(File root, String branchName) {
+        File dir = join(root, ".gitlet");
+        dir.mkdirs();
+        writeContents(join(dir, COMMONDIR), commonDir().getAbsolutePath() + "\n");
+        Repository tree = new Repository(root, current().out);
+        tree.stagingArea.mkdir();
+        new Stage("Additions").writeTo(tree.added);
+        new Stage("Removals").writeTo(tree.removed);
+        writeContents(tree.headFile, branchName);
+
+        StringBuilder roots = new StringBuilder();
+        for (File each: worktreeRoots()) {
+            if (!each.equals(commonDir().getAbsoluteFile().getParentFile())) {
+                roots.append(each.getPath()).append('\n');
+            }
+        }
+        roots.append(root.getAbsolutePath()).append('\n');
+        writeContents(join(commonDir(), WORKTREES), roots.toString());
+        return tree;
+    }
+
+    /** Returns the working directory of every worktree of the repository,
+     *  the first one first, leaving out any whose .gitlet directory is
+     *  gone. */
+    static List<File> worktreeRoots() {
+        List<File> result = new ArrayList<>();
+        result.add(commonDir().getAbsoluteFile().getParentFile());
+        File file = join(commonDir(), WORKTREES);
+        if (file.isFile()) {
+            for (String line: readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty() && join(line, ".gitlet", COMMONDIR).isFile()) {
+                    result.add(new File(line));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the Repository of each worktree of the repository, the
+     *  first one first. */
+    static List<Repository> worktrees() {
+        List<Repository> result = new ArrayList<>();
+        for (File root: worktreeRoots()) {
+            result.add(new Repository(root, current().out));
+        }
+        return result;
+    }
+
+    /** Returns the working directory of the worktree whose HEAD is the
+     *  branch BRANCHNAME, or null if there is none. */
+    static File checkedOutIn(String branchName) {
+        for (Repository tree: worktrees()) {
+            if (tree.headFile.isFile()
+                    && readContentsAsString(tree.headFile).equals(branchName)) {
+                return tree.cwd;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the name of the HEAD branch of TREE. */
+    static String headName(Repository tree) {
+        return readContentsAsString(tree.headFile);
+    }
+
+    /** Returns the working directory of TREE. */
+    static File cwd(Repository tree) {
+        return tree.cwd;
+    }
+
+    /** Returns the Stage files of every worktree of the repository. */
+    static List<File> allStageFiles() {
+        List<File> result = new ArrayList<>();
+        for (Repository tree: worktrees()) {
+            result.add(tree.added);
+            result.add(tree.removed);
+        }
+        return result;
+    }
+
     /** Prints everything inside the given ArrayList line by line. */
     public static void printLineByLine(ArrayList<String> stringArrayList) {
         for (String each: stringArrayList) {
-            System.out.println(each);
+            out().println(each);
         }
     }
 
     /** Prints everything inside the given Set line by line. */
     public static void printLineByLine(Set<String> stringSet) {
         for (String each: stringSet) {
-            System.out.println(each);
+            out().println(each);
         }
     }
 
     /** Gets the full UID of the Commit given the shorten version of the UID
-     * i.e. less than 40 characters.
+     * i.e. less than 40 characters.  Only the one subdirectory of commits/
+     * the UID falls in is listed.
      */
     public static String getFullId(String shortId) {
-        for (String commitId: Utils.plainFilenamesIn(COMMITS)) {
-            if (commitId.substring(0, shortId.length()).equals(shortId)) {
+        for (String commitId: objectNames(commitsDir(), shortId)) {
+            if (commitId.startsWith(shortId)) {
                 shortId = commitId;
             }
         }
         return shortId;
     }
+
+    /** Returns the file of the object named HEX in the object directory
+     *  DIR, which is DIR/xx/yyyy... for a UID xxyyyy...  A name too short
+     *  to be split names no object file. */
+    static File objectFile(File dir, String hex) {
+        if (hex.length() <= FANOUT_DIGITS) {
+            return join(dir, hex);
+        }
+        return join(dir, hex.substring(0, FANOUT_DIGITS), hex.substring(FANOUT_DIGITS));
+    }
+
+    /** Returns the file of the object with UID ID in the object directory
+     *  DIR. */
+    static File objectFile(File dir, ObjectId id) {
+        return objectFile(dir, id.toHex());
+    }
+
+    /** Returns the file of the object with UID ID in the object directory
+     *  DIR, creating its subdirectory if need be, ready to be written. */
+    static File newObjectFile(File dir, ObjectId id) {
+        File file = objectFile(dir, id);
+        file.getParentFile().mkdir();
+        return file;
+    }
+
+    /** Returns the UIDs, in hex and in order, of the objects in the object
+     *  directory DIR. */
+    static List<String> objectNames(File dir) {
+        return objectNames(dir, "");
+    }
+
+    /** Returns the UIDs, in hex and in order, of the objects in the object
+     *  directory DIR that start with PREFIX.  A PREFIX of at least two
+     *  digits lists one subdirectory only.  Names are told apart by their
+     *  form alone, so nothing in DIR is stat'ed. */
+    static List<String> objectNames(File dir, String prefix) {
+        List<String> result = new ArrayList<>();
+        String[] shards;
+        if (prefix.length() >= FANOUT_DIGITS) {
+            shards = new String[] {prefix.substring(0, FANOUT_DIGITS)};
+        } else {
+            Trace.listed();
+            shards = dir.list();
+            if (shards == null) {
+                return result;
+            }
+            Arrays.sort(shards);
+        }
+        for (String shard: shards) {
+            if (shard.length() != FANOUT_DIGITS
+                    || !(shard.startsWith(prefix) || prefix.startsWith(shard))) {
+                continue;
+            }
+            Trace.listed();
+            String[] names = join(dir, shard).list();
+            if (names == null) {
+                continue;
+            }
+            Arrays.sort(names);
+            for (String name: names) {
+                String hex = shard + name;
+                if (ObjectId.isHex(hex) && hex.startsWith(prefix)) {
+                    result.add(hex);
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** The lock a command holds while it changes a repository, so that
+ *  commands run from its worktrees at once do not write its branches and
+ *  objects over each other.
+ *
+ *  The lock is the lock file of the .gitlet directory holding the objects,
+ *  locked by the operating system, which keeps out other programs, and a
+ *  ReentrantLock of this program for the same directory, which keeps out
+ *  other threads, since a file lock is held by the whole program.  A thread
+ *  may take the lock again while it holds it.
+ *
+ *  Commands that only read do not take it.  What they read of what the
+ *  worktrees share is never found half written: objects, branches, the
+ *  packed-refs file and the commit-graph are each written to a new file
+ *  and renamed into place.  A worktree's head and stages are its own, and
+ *  are changed only by commands run in it.
+ *  @author Enran Wu
+ */
+class RepositoryLock implements AutoCloseable {
+
+    /** Name of the lock file. */
+    private static final String LOCK = "lock";
+
+    /** The lock of this program for each .gitlet directory, by its
+     *  canonical path. */
+    private static final ConcurrentHashMap<String, ReentrantLock> LOCKS =
+            new ConcurrentHashMap<>();
+
+    /** The lock of this program. */
+    private final ReentrantLock lock;
+
+    /** The lock file, open while this holds it first. */
+    private RandomAccessFile file;
+
+    /** The lock on FILE. */
+    private FileLock fileLock;
+
+    /** Runs ACTION holding the lock of the .gitlet directory GITLETDIR,
+     *  which holds the objects, and returns what it returns. */
+    static <T> T holding(File gitletDir, Repository.Action<T> action) throws IOException {
+        RepositoryLock lock = new RepositoryLock(gitletDir);
+        try {
+            return action.run();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Takes the lock of the .gitlet directory GITLETDIR, holding the
+     *  objects, waiting for whoever holds it. */
+    RepositoryLock(File gitletDir) throws IOException {
+        lock = LOCKS.computeIfAbsent(gitletDir.getCanonicalPath(),
+                path -> new ReentrantLock());
+        lock.lock();
+        if (lock.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            file = new RandomAccessFile(Utils.join(gitletDir, LOCK), "rw");
+            FileChannel channel = file.getChannel();
+            fileLock = channel.lock();
+        } catch (IOException excp) {
+            release();
+            throw excp;
+        }
+    }
+
+    /** Gives up the lock. */
+    @Override
+    public void close() throws IOException {
+        release();
+    }
+
+    /** Unlocks the lock file if this locked it, then the lock of this
+     *  program. */
+    private void release() throws IOException {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+            if (file != null) {
+                file.close();
+            }
+        } finally {
+            fileLock = null;
+            file = null;
+            lock.unlock();
+        }
+    }
+}
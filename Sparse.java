@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The sparse-checkout patterns of the repository, kept one per line in
+ *  .gitlet/sparse-checkout.
+ *
+ *  Each pattern is a path prefix: "docs" selects the file docs and every
+ *  file under the directory docs/.  Blank lines and lines starting with #
+ *  are ignored.  With no pattern file, every file is selected.  Files not
+ *  selected stay tracked in Commits as usual but are never written, read
+ *  or looked for in the working directory, so checkout, reset and merge
+ *  only do work for the selected part of the tree.  A name is tested by
+ *  looking up each of its leading directories among the patterns, so the
+ *  test costs the depth of the name, not the number of patterns.
+ *  @author Enran Wu
+ */
+class Sparse {
+
+    /** The patterns, or null if every file is selected. */
+    private final TreeSet<String> patterns;
+
+    private Sparse(TreeSet<String> patterns) {
+        this.patterns = patterns;
+    }
+
+    /** Returns the sparse-checkout patterns of the repository. */
+    static Sparse read() {
+        if (!Repository.sparseCheckoutFile().isFile()) {
+            return new Sparse(null);
+        }
+        return of(Arrays.asList(
+                Utils.readContentsAsString(Repository.sparseCheckoutFile()).split("\n")));
+    }
+
+    /** Returns the sparse-checkout patterns made of the lines LINES, or
+     *  those selecting every file if LINES is null. */
+    static Sparse of(Collection<String> lines) {
+        if (lines == null) {
+            return new Sparse(null);
+        }
+        TreeSet<String> patterns = new TreeSet<>();
+        for (String line: lines) {
+            String pattern = normalize(line);
+            if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+                patterns.add(pattern);
+            }
+        }
+        return new Sparse(patterns);
+    }
+
+    /** Writes PATTERNS as the sparse-checkout patterns of the repository. */
+    static void write(Collection<String> patterns) {
+        StringBuilder text = new StringBuilder();
+        for (String pattern: patterns) {
+            text.append(normalize(pattern)).append('\n');
+        }
+        Utils.writeContents(Repository.sparseCheckoutFile(), text.toString());
+    }
+
+    /** Removes the sparse-checkout patterns, selecting every file. */
+    static void disable() {
+        Repository.sparseCheckoutFile().delete();
+    }
+
+    /** Returns PATTERN without surrounding blanks or slashes. */
+    private static String normalize(String pattern) {
+        String result = pattern.trim();
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /** Returns whether the file NAME is selected. */
+    boolean includes(String name) {
+        if (patterns == null || patterns.contains(name)) {
+            return true;
+        }
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            if (patterns.contains(name.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the names in NAMES that are selected, in order. */
+    List<String> filter(Collection<String> names) {
+        List<String> result = new ArrayList<>();
+        for (String name: names) {
+            if (includes(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the patterns, in order. */
+    List<String> getPatterns() {
+        return patterns == null ? new ArrayList<>() : new ArrayList<>(patterns);
+    }
+}
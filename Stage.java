@@ -1,21 +1,55 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /** Represents a gitlet Stage Object.
  *  A Stage contains files with Blob's UID; it can be a Stage for adding or removing.
+ *
+ *  A Stage is kept in two files: a snapshot, holding a line
+ *      [UID] [file name]
+ *  per file in order of name, and beside it an append-only log of the
+ *  changes made since, a line
+ *      +[UID] [file name]    or    -[file name]
+ *  per change.  Reading a Stage replays the log over the snapshot.
+ *  Staging or unstaging one file appends one line to the log without
+ *  reading either, so it costs the same however large the Stage is.  Once
+ *  the log outgrows the snapshot it is folded into a new one, which keeps
+ *  the cost of reading proportional to the size of the Stage.
+ *  Both files start with a generation number, bumped by every new
+ *  snapshot; a log whose generation does not match the snapshot's was
+ *  left behind by an interrupted fold, and is already part of the
+ *  snapshot, so it is ignored.
  *  @author Enran Wu
  *  */
 public class Stage implements Serializable {
 
+    /** Start of the first line of a snapshot. */
+    private static final String SIGNATURE = "# gitlet stage ";
+
+    /** Smallest log, in bytes, that is folded into the snapshot. */
+    private static final long FOLD_MIN = 64 * 1024;
+
     /** Name of the Stage. */
     private String name;
 
     /** Files in Stage. */
-    private HashMap<String, String> files;
+    private HashMap<String, ObjectId> files;
+
+    /** Generation of the snapshot the Stage was read from. */
+    private transient long generation;
 
     /** Initiates a Stage Object, */
     public Stage(String name) {
@@ -29,7 +63,7 @@ public class Stage implements Serializable {
     }
 
     /** Gets the files in the Stage. */
-    public HashMap<String, String> getFiles() {
+    public HashMap<String, ObjectId> getFiles() {
         return this.files;
     }
 
@@ -58,19 +92,118 @@ public class Stage implements Serializable {
         files.clear();
     }
 
-    /** Writes the Stage to a file. */
+    /** Writes the Stage to a file, as a new snapshot with an empty log.
+     *  The snapshot is written aside and renamed into place, so a reader
+     *  sees either the old Stage or the new one. */
     public void writeTo(File file) {
-        Utils.writeObject(file, this);
+        generation += 1;
+        StringBuilder text = new StringBuilder(SIGNATURE).append(generation).append('\n');
+        for (Map.Entry<String, ObjectId> entry: new TreeMap<>(files).entrySet()) {
+            text.append(entry.getValue().toHex()).append(' ')
+                    .append(entry.getKey()).append('\n');
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(temp, text.toString());
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        logFile(file).delete();
     }
 
-    /** Finds the Stage in File. */
+    /** Finds the Stage in File: its snapshot, with its log replayed. */
     public static Stage findStage(File file) {
-        return Utils.readObject(file, Stage.class);
+        Stage stage = readSnapshot(file);
+        File log = logFile(file);
+        if (!log.isFile()) {
+            return stage;
+        }
+        String[] lines = Utils.readContentsAsString(log).split("\n");
+        if (!lines[0].equals("# " + stage.generation)) {
+            return stage;
+        }
+        for (int i = 1; i < lines.length; i += 1) {
+            String line = lines[i];
+            if (line.startsWith("-")) {
+                stage.files.remove(line.substring(1));
+            } else if (line.startsWith("+") && line.length() > Utils.UID_LENGTH + 2) {
+                stage.files.put(line.substring(Utils.UID_LENGTH + 2),
+                        ObjectId.fromHex(line.substring(1, Utils.UID_LENGTH + 1)));
+            }
+        }
+        return stage;
+    }
+
+    /** Returns the Stage in the snapshot FILE, which may also be empty.
+     *  Stages serialized by the first version of Gitlet are rewritten as
+     *  snapshots by Format before any command reads them. */
+    private static Stage readSnapshot(File file) {
+        byte[] content = Utils.readContents(file);
+        if (content.length == 0) {
+            return new Stage(file.getName());
+        }
+        String[] lines = new String(content, StandardCharsets.UTF_8).split("\n");
+        Stage stage = new Stage(file.getName());
+        stage.generation = Long.parseLong(lines[0].substring(SIGNATURE.length()));
+        for (int i = 1; i < lines.length; i += 1) {
+            stage.files.put(lines[i].substring(Utils.UID_LENGTH + 1),
+                    ObjectId.fromHex(lines[i].substring(0, Utils.UID_LENGTH)));
+        }
+        return stage;
+    }
+
+    /** Records in the Stage in FILE that the file NAME is staged with the
+     *  Blob with UID ID, or is no longer staged if ID is null.  Only
+     *  appends to the log, folding it into the snapshot once it has grown
+     *  larger than the snapshot. */
+    public static void append(File file, String name, ObjectId id) {
+        File log = logFile(file);
+        StringBuilder line = new StringBuilder();
+        if (!log.isFile()) {
+            line.append("# ").append(readGeneration(file)).append('\n');
+        }
+        if (id == null) {
+            line.append('-').append(name).append('\n');
+        } else {
+            line.append('+').append(id.toHex()).append(' ').append(name).append('\n');
+        }
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new FileOutputStream(log, true)) {
+            out.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.written(bytes.length);
+        long logLength = log.length();
+        if (logLength > FOLD_MIN && logLength > file.length()) {
+            findStage(file).writeTo(file);
+        }
+    }
+
+    /** Returns the generation of the snapshot FILE, reading only its first
+     *  line. */
+    private static long readGeneration(File file) {
+        try (BufferedReader in = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String first = in.readLine();
+            if (first == null || !first.startsWith(SIGNATURE)) {
+                return 0;
+            }
+            return Long.parseLong(first.substring(SIGNATURE.length()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the log of the Stage whose snapshot is FILE. */
+    static File logFile(File file) {
+        return new File(file.getPath() + ".log");
     }
 
-    /** Checks if the Stage contains given Blob. */
+    /** Checks if the Stage contains given Blob under the Blob's name. */
     public boolean contains(Blob blob) {
-        return this.files.containsValue(blob.hash());
+        return blob.hash().equals(this.files.get(blob.getName()));
     }
 
     /** Checks if the Stage contains Blob with given name. */
@@ -89,21 +222,23 @@ public class Stage implements Serializable {
     }
 
     /** Gets the name of the file of the Blob with the given name. */
-    public String get(String newName) {
+    public ObjectId get(String newName) {
         return this.files.get(newName);
     }
 
     /** Adds all files in the Stage to the given Commit. */
     public void addTo(Commit commit) {
         for (String blobName: getNames()) {
-            commit.getFiles().put(blobName, get(blobName));
+            commit.putFile(blobName, get(blobName));
         }
     }
 
     /** Removes all files in the Stage from the given Commit. */
     public void rmFrom(Commit commit) {
         for (String blobName: getNames()) {
-            commit.getFiles().remove(blobName, get(blobName));
+            if (get(blobName).equals(commit.getFiles().get(blobName))) {
+                commit.removeFile(blobName);
+            }
         }
     }
 }
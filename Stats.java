@@ -0,0 +1,257 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** Collects statistics about the contents of a .gitlet directory.
+ *  Object counts and sizes come from a single listing of each object
+ *  subdirectory, reading sizes from file metadata.  Only commits are
+ *  deserialized, to count the files they track and to name the blobs
+ *  reported as the largest.
+ *  @author Enran Wu
+ */
+class Stats {
+
+    /** Number of largest blobs reported. */
+    static final int LARGEST = 10;
+
+    /** Number of loose commits. */
+    private long commits;
+
+    /** Bytes taken by loose commits. */
+    private long commitBytes;
+
+    /** Number of loose blobs. */
+    private long blobs;
+
+    /** Bytes taken by loose blobs. */
+    private long blobBytes;
+
+    /** Total number of files tracked, summed over all commits. */
+    private long trackedFiles;
+
+    /** Number of branches. */
+    private int branches;
+
+    /** Number of entries staged for addition. */
+    private int staged;
+
+    /** Number of entries staged for removal. */
+    private int removed;
+
+    /** Bytes taken by the two stage files. */
+    private long stageBytes;
+
+    /** Bytes taken by the packed-refs file, or -1 if there is none. */
+    private long packedRefsBytes = -1;
+
+    /** Number of commits in the commit-graph, or -1 if there is none. */
+    private int graphCommits = -1;
+
+    /** Number of loose commits the commit-graph does not hold. */
+    private long notCovered;
+
+    /** Bytes taken by the commit-graph. */
+    private long graphBytes;
+
+    /** A name each blob is tracked under by some commit. */
+    private final HashMap<ObjectId, String> blobNames = new HashMap<>();
+
+    /** The largest blobs, largest first. */
+    private final List<ObjectFile> largest = new ArrayList<>();
+
+    /** A file in an object directory. */
+    private static class ObjectFile {
+        /** Name of the file, i.e. the UID of the object. */
+        private final String id;
+
+        /** Size of the file in bytes. */
+        private final long size;
+
+        ObjectFile(String id, long size) {
+            this.id = id;
+            this.size = size;
+        }
+    }
+
+    /** Gathers the statistics of the current repository. */
+    static Stats collect() {
+        Stats stats = new Stats();
+        CommitGraph graph = CommitGraph.read();
+        stats.scanCommits(graph);
+        stats.scanBlobs();
+        stats.branches = Branch.names().size();
+        stats.staged = Stage.findStage(Repository.addedFile()).getFiles().size();
+        stats.removed = Stage.findStage(Repository.removedFile()).getFiles().size();
+        stats.stageBytes = Repository.addedFile().length() + Repository.removedFile().length()
+                + Stage.logFile(Repository.addedFile()).length()
+                + Stage.logFile(Repository.removedFile()).length();
+        File packedRefs = Utils.join(Repository.commonDir(), Refs.PACKED);
+        if (packedRefs.isFile()) {
+            stats.packedRefsBytes = packedRefs.length();
+        }
+        if (graph != null) {
+            stats.graphCommits = graph.size();
+            stats.graphBytes = Repository.commitGraphFile().length();
+        }
+        return stats;
+    }
+
+    /** Counts the commits and the files they track, and the commits not
+     *  in GRAPH, if it is not null. */
+    private void scanCommits(CommitGraph graph) {
+        for (ObjectFile entry: list(Repository.commitsDir())) {
+            commits += 1;
+            commitBytes += entry.size;
+            if (graph != null && graph.find(ObjectId.fromHex(entry.id)) < 0) {
+                notCovered += 1;
+            }
+            Map<String, ObjectId> files = Commit.findCommit(entry.id).getFiles();
+            trackedFiles += files.size();
+            for (Map.Entry<String, ObjectId> file: files.entrySet()) {
+                blobNames.putIfAbsent(file.getValue(), file.getKey());
+            }
+        }
+    }
+
+    /** Counts the blobs and keeps the LARGEST biggest ones. */
+    private void scanBlobs() {
+        PriorityQueue<ObjectFile> top =
+                new PriorityQueue<>(Comparator.comparingLong(e -> e.size));
+        for (ObjectFile entry: list(Repository.blobsDir())) {
+            blobs += 1;
+            blobBytes += entry.size;
+            top.add(entry);
+            if (top.size() > LARGEST) {
+                top.poll();
+            }
+        }
+        while (!top.isEmpty()) {
+            largest.add(0, top.poll());
+        }
+    }
+
+    /** Returns every object file in the object directory DIR, named by
+     *  its UID, reading each file's attributes once.  Files whose names
+     *  are not UIDs, such as temporary ones, are left out. */
+    private static List<ObjectFile> list(File dir) {
+        List<ObjectFile> result = new ArrayList<>();
+        Trace.listed();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir.toPath())) {
+            for (Path shard: shards) {
+                String prefix = shard.getFileName().toString();
+                if (!Files.isDirectory(shard)) {
+                    continue;
+                }
+                Trace.listed();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(shard)) {
+                    for (Path entry: entries) {
+                        BasicFileAttributes attrs =
+                                Files.readAttributes(entry, BasicFileAttributes.class);
+                        String id = prefix + entry.getFileName();
+                        if (attrs.isRegularFile() && ObjectId.isHex(id)) {
+                            result.add(new ObjectFile(id, attrs.size()));
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns a name the blob ENTRY is tracked under, or "-" if no commit
+     *  tracks it.  Blobs do not store their names. */
+    private String nameOf(ObjectFile entry) {
+        return blobNames.getOrDefault(ObjectId.fromHex(entry.id), "-");
+    }
+
+    /** Returns the average number of files tracked per commit. */
+    private double filesPerCommit() {
+        return commits == 0 ? 0 : (double) trackedFiles / commits;
+    }
+
+    /** Prints the statistics in human-readable form. */
+    void print() {
+        Repository.out().printf("loose objects: %d (%d bytes)%n", commits + blobs,
+                commitBytes + blobBytes);
+        Repository.out().printf("  commits: %d (%d bytes)%n", commits, commitBytes);
+        Repository.out().printf("  blobs: %d (%d bytes)%n", blobs, blobBytes);
+        Repository.out().printf(Locale.ROOT, "files per commit: %.2f%n", filesPerCommit());
+        Repository.out().printf("branches: %d%n", branches);
+        Repository.out().printf("staged for addition: %d%n", staged);
+        Repository.out().printf("staged for removal: %d%n", removed);
+        Repository.out().printf("stage files: %d bytes%n", stageBytes);
+        if (packedRefsBytes < 0) {
+            Repository.out().println("packed-refs: none");
+        } else {
+            Repository.out().printf("packed-refs: %d bytes%n", packedRefsBytes);
+        }
+        if (graphCommits < 0) {
+            Repository.out().println("commit-graph: none");
+        } else {
+            Repository.out().printf("commit-graph: %d commits (%d bytes), %d commits not covered%n",
+                    graphCommits, graphBytes, notCovered);
+        }
+        Repository.out().println("largest blobs:");
+        for (ObjectFile entry: largest) {
+            Repository.out().printf("  %s %d %s%n", entry.id, entry.size,
+                    nameOf(entry));
+        }
+    }
+
+    /** Prints the statistics as a single JSON object. */
+    void printJson() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"loose\":{\"count\":").append(commits + blobs)
+                .append(",\"bytes\":").append(commitBytes + blobBytes).append('}');
+        out.append(",\"commits\":{\"count\":").append(commits)
+                .append(",\"bytes\":").append(commitBytes).append('}');
+        out.append(",\"blobs\":{\"count\":").append(blobs)
+                .append(",\"bytes\":").append(blobBytes).append('}');
+        out.append(",\"files_per_commit\":")
+                .append(String.format(Locale.ROOT, "%.2f", filesPerCommit()));
+        out.append(",\"branches\":").append(branches);
+        out.append(",\"stage\":{\"added\":").append(staged)
+                .append(",\"removed\":").append(removed)
+                .append(",\"bytes\":").append(stageBytes).append('}');
+        out.append(",\"packed_refs\":");
+        if (packedRefsBytes < 0) {
+            out.append("null");
+        } else {
+            out.append("{\"bytes\":").append(packedRefsBytes).append('}');
+        }
+        if (graphCommits < 0) {
+            out.append(",\"commit_graph\":null");
+        } else {
+            out.append(",\"commit_graph\":{\"commits\":").append(graphCommits)
+                    .append(",\"bytes\":").append(graphBytes)
+                    .append(",\"not_covered\":").append(notCovered)
+                    .append('}');
+        }
+        out.append(",\"largest_blobs\":[");
+        String sep = "";
+        for (ObjectFile entry: largest) {
+            out.append(sep).append("{\"id\":\"").append(entry.id)
+                    .append("\",\"bytes\":").append(entry.size)
+                    .append(",\"name\":\"")
+                    .append(Utils.escapeJson(nameOf(entry)))
+                    .append("\"}");
+            sep = ",";
+        }
+        out.append("]}");
+        Repository.out().println(out);
+    }
+}
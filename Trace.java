@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Per-command tracing for Gitlet.
+ *  When enabled (by setting the GITLET_TRACE environment variable to
+ *  anything but "" or "0", or by passing --trace before the command),
+ *  Gitlet counts the I/O, hashing and serialization work a command does,
+ *  times its phases, and prints a one-line JSON summary to standard error
+ *  once the command is done.  Main.main calls end when the command returns,
+ *  throws a GitletException, or fails, so no shutdown hook is needed; a
+ *  command run in process through GitletRepository is not traced.
+ *
+ *  The counters may be bumped from several threads at once.  When tracing
+ *  is disabled, each hook costs a single static field read.
+ *  @author Enran Wu
+ */
+class Trace {
+
+    /** Whether tracing is on. */
+    static boolean enabled = isRequested(System.getenv("GITLET_TRACE"));
+
+    /** Number of files opened for reading or writing. */
+    private static final LongAdder FILES_OPENED = new LongAdder();
+
+    /** Number of bytes read from files. */
+    private static final LongAdder BYTES_READ = new LongAdder();
+
+    /** Number of bytes written to files. */
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    /** Number of objects deserialized. */
+    private static final LongAdder OBJECTS_READ = new LongAdder();
+
+    /** Number of objects serialized. */
+    private static final LongAdder OBJECTS_WRITTEN = new LongAdder();
+
+    /** Number of SHA-1 hashes computed. */
+    private static final LongAdder SHA1_CALLS = new LongAdder();
+
+    /** Number of bytes fed to SHA-1. */
+    private static final LongAdder SHA1_BYTES = new LongAdder();
+
+    /** Number of directory listings. */
+    private static final LongAdder DIR_LISTINGS = new LongAdder();
+
+    /** Name of the command being traced. */
+    private static String command = "";
+
+    /** Whether a command is being traced. */
+    private static boolean begun;
+
+    /** Wall time in nanoseconds spent in each phase, in phase order. */
+    private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+    /** Name of the phase currently running. */
+    private static String currPhase;
+
+    /** Start of the current phase, in System.nanoTime units. */
+    private static long phaseStart;
+
+    /** Start of the whole command, in System.nanoTime units. */
+    private static long start;
+
+    /** Returns whether the value VAL of GITLET_TRACE asks for tracing. */
+    static boolean isRequested(String val) {
+        return val != null && !val.isEmpty() && !val.equals("0");
+    }
+
+    /** Turns tracing on, if it is not on already. */
+    static void enable() {
+        enabled = true;
+    }
+
+    /** Starts tracing the command named NAME.  Does nothing unless tracing
+     *  is enabled. */
+    static void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        command = name;
+        begun = true;
+        start = System.nanoTime();
+        phase("command");
+    }
+
+    /** Ends the current phase and starts the phase named NAME.  Time spent
+     *  in phases with the same name is added together. */
+    static void phase(String name) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        endPhase(now);
+        currPhase = name;
+        phaseStart = now;
+    }
+
+    /** Records the time spent in the current phase as of NOW. */
+    private static synchronized void endPhase(long now) {
+        if (currPhase != null) {
+            PHASES.merge(currPhase, now - phaseStart, Long::sum);
+            currPhase = null;
+        }
+    }
+
+    /** Records that a file of LENGTH bytes was read whole. */
+    static void read(long length) {
+        if (enabled) {
+            FILES_OPENED.increment();
+            BYTES_READ.add(length);
+        }
+    }
+
+    /** Records that a file of LENGTH bytes was written whole. */
+    static void written(long length) {
+        if (enabled) {
+            FILES_OPENED.increment();
+            BYTES_WRITTEN.add(length);
+        }
+    }
+
+    /** Records that LENGTH bytes were hashed by a single SHA-1 computation. */
+    static void hashed(long length) {
+        if (enabled) {
+            SHA1_CALLS.increment();
+            SHA1_BYTES.add(length);
+        }
+    }
+
+    /** Records that an object was deserialized. */
+    static void deserialized() {
+        if (enabled) {
+            OBJECTS_READ.increment();
+        }
+    }
+
+    /** Records that an object was serialized. */
+    static void serialized() {
+        if (enabled) {
+            OBJECTS_WRITTEN.increment();
+        }
+    }
+
+    /** Records that a directory was listed. */
+    static void listed() {
+        if (enabled) {
+            DIR_LISTINGS.increment();
+        }
+    }
+
+    /** Prints the summary of the traced command on standard error.  Does
+     *  nothing unless a command is being traced. */
+    static void end() {
+        if (!begun) {
+            return;
+        }
+        long now = System.nanoTime();
+        endPhase(now);
+        StringBuilder out = new StringBuilder();
+        out.append("{\"command\":\"").append(Utils.escapeJson(command)).append('"');
+        out.append(",\"wall_ms\":").append(millis(now - start));
+        out.append(",\"phases_ms\":{");
+        String sep = "";
+        for (Map.Entry<String, Long> phase: PHASES.entrySet()) {
+            out.append(sep).append('"').append(Utils.escapeJson(phase.getKey()))
+                    .append("\":").append(millis(phase.getValue()));
+            sep = ",";
+        }
+        out.append('}');
+        out.append(",\"files_opened\":").append(FILES_OPENED.sum());
+        out.append(",\"bytes_read\":").append(BYTES_READ.sum());
+        out.append(",\"bytes_written\":").append(BYTES_WRITTEN.sum());
+        out.append(",\"objects_deserialized\":").append(OBJECTS_READ.sum());
+        out.append(",\"objects_serialized\":").append(OBJECTS_WRITTEN.sum());
+        out.append(",\"sha1_calls\":").append(SHA1_CALLS.sum());
+        out.append(",\"sha1_bytes\":").append(SHA1_BYTES.sum());
+        out.append(",\"dir_listings\":").append(DIR_LISTINGS.sum());
+        out.append('}');
+        System.out.flush();
+        System.err.println(out);
+    }
+
+    /** Returns NANOS in milliseconds, with three decimals. */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,14 @@
+package gitlet;
+
+/** A GitletException saying that a command would lose changes that
+ *  are staged, untracked or outside the sparse-checkout patterns, and so
+ *  was not done.
+ *  @author Enran Wu
+ */
+public class UncommittedChangesException extends GitletException {
+
+    /** An UncommittedChangesException with MSG as its message. */
+    UncommittedChangesException(String msg) {
+        super(msg);
+    }
+}
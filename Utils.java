@@ -1,6 +1,8 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -11,11 +13,11 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,28 +35,41 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** Per-thread SHA-1 engines, reset and reused by every hash. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        return sha1Id(vals).toHex();
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings, as an ObjectId. */
+    static ObjectId sha1Id(Object... vals) {
+        MessageDigest md = SHA1.get();
+        long length = 0;
+        for (Object val : vals) {
+            byte[] bytes;
+            if (val instanceof byte[]) {
+                bytes = (byte[]) val;
+            } else if (val instanceof String) {
+                bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            md.update(bytes);
+            length += bytes.length;
         }
+        Trace.hashed(length);
+        return ObjectId.fromRaw(md.digest());
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -98,7 +113,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.read(result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -123,28 +140,91 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long length = 0;
             for (Object obj : contents) {
+                byte[] bytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    bytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                str.write(bytes);
+                length += bytes.length;
             }
             str.close();
+            Trace.written(length);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Writes CONTENTS to FILE as writeContents does, but into a new file
+     *  beside it that is then renamed over it, so whoever reads FILE
+     *  meanwhile finds either the old content or the whole new one. */
+    static void writeContentsAtomically(File file, Object... contents) {
+        File temp = tempFileBeside(file);
+        writeContents(temp, contents);
+        moveOver(temp, file);
+    }
+
+    /** Copies FROM to TO as copyFile does, but into a new file beside TO
+     *  that is then renamed over it, so TO is never found half written. */
+    static void copyFileAtomically(File from, File to) {
+        File temp = tempFileBeside(to);
+        copyFile(from, temp);
+        moveOver(temp, to);
+    }
+
+    /** Returns a new, empty file in the directory of FILE. */
+    private static File tempFileBeside(File file) {
+        try {
+            return Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+                    "tmp", null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames TEMP over FILE in one step, deleting TEMP if that fails. */
+    private static void moveOver(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the contents of the normal file FROM to TO, creating or
+     *  overwriting it as needed.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void copyFile(File from, File to) {
+        try {
+            Files.copy(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            if (Trace.enabled) {
+                Trace.read(to.length());
+                Trace.written(to.length());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            if (Trace.enabled) {
+                Trace.read(file.length());
+                Trace.deserialized();
+            }
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -172,6 +252,7 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        Trace.listed();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
@@ -207,6 +288,20 @@ class Utils {
 
     /* SERIALIZATION UTILITIES */
 
+    /** Returns the object serialized in BYTES, casting it to EXPECTEDCLASS.
+     *  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes, Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            T result = expectedClass.cast(in.readObject());
+            Trace.deserialized();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
         try {
@@ -214,6 +309,7 @@ class Utils {
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
             objectStream.close();
+            Trace.serialized();
             return stream.toByteArray();
         } catch (IOException excp) {
             throw error("Internal error serializing commit.");
@@ -222,6 +318,23 @@ class Utils {
 
 
 
+    /** Returns S escaped for use inside a JSON string. */
+    static String escapeJson(String s) {
+        StringBuilder result = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,223 @@
+import sys, json, time
+from subprocess import run, PIPE, DEVNULL, TimeoutExpired
+from os.path import abspath, dirname, exists, join
+from getopt import getopt, GetoptError
+from os import environ, getcwd, makedirs, access, W_OK
+from shutil import copytree, rmtree
+from math import log
+
+SHORT_USAGE = """\
+Usage: python3 benchmark.py OPTIONS
+
+   OPTIONS may include
+       --scales=N,N,...  Commit counts to benchmark (default 1000,10000,100000).
+       --files=N         Number of files in each generated repository (default 100).
+       --branches=N      Number of branches history fans out into (default 4).
+       --sizes=DIST      File-size distribution passed to gitlet.RepoGenerator
+                         (default uniform:64:4096).
+       --touch=N         Files changed per commit (default 3).
+       --seed=N          Random seed (default 0).
+       --repeat=N        Timed runs per command; the median is kept (default 3).
+       --timeout=SEC     Seconds allowed to each gitlet command (default 600).
+       --progdir=DIR     Directory containing the gitlet classes (default: the
+                         nearest enclosing directory holding gitlet/Main.class).
+       --workdir=DIR     Where generated repositories are kept (default bench_repos).
+       --output=FILE     Where to write the JSON results (default ../bench_output.txt).
+       --keep            Keep the generated repositories.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+For each scale N, generates a repository of N commits with gitlet.RepoGenerator,
+then times each of log, global-log, find, status, checkout, reset and merge on it.
+Each command runs in a fresh JVM, exactly as a user would run it.  Commands that
+change the repository (checkout, reset, merge) run on a private copy, so every
+scale is measured from the same starting state.
+
+Prints a table of median wall-clock seconds per command and scale, followed by
+the empirical scaling exponent between consecutive scales: an exponent near 1
+means the command is O(n) in the number of commits, near 0 means it is
+independent of history size."""
+
+JAVA_COMMAND = "java"
+GITLET_CLASS = "gitlet.Main"
+GENERATOR_CLASS = "gitlet.RepoGenerator"
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def java(cls, args, dir, timeout):
+    return run([JAVA_COMMAND, "-Duser.dir=" + abspath(dir), cls] + args,
+               cwd=dir, stdin=DEVNULL, stdout=PIPE, stderr=PIPE,
+               universal_newlines=True, timeout=timeout)
+
+def generate(dir, commits):
+    rmtree(dir, ignore_errors=True)
+    makedirs(dir)
+    start = time.perf_counter()
+    res = java(GENERATOR_CLASS,
+               [str(commits), str(files), str(branches), sizes, str(touch),
+                str(seed)], dir, None)
+    elapsed = time.perf_counter() - start
+    if res.returncode != 0:
+        raise ValueError("generator failed: {}".format(res.stderr.strip()))
+    info = { "branches": {}, "message": None, "generate_seconds": elapsed }
+    for line in res.stdout.splitlines():
+        parts = line.split(" ", 2)
+        if parts[0] == "branch":
+            info["branches"][parts[1]] = parts[2]
+        elif parts[0] == "message":
+            info["message"] = line.split(" ", 1)[1]
+    return info
+
+def timeCommand(dir, args, mutates):
+    samples = []
+    status = "OK"
+    for n in range(repeat):
+        target = dir
+        if mutates:
+            target = dir + ".scratch"
+            rmtree(target, ignore_errors=True)
+            copytree(dir, target)
+        try:
+            start = time.perf_counter()
+            res = java(GITLET_CLASS, args, target, timeout)
+            samples.append(time.perf_counter() - start)
+            if res.returncode != 0:
+                status = (res.stderr.strip().splitlines() or ["exit {}"
+                          .format(res.returncode)])[0]
+        except TimeoutExpired:
+            samples.append(float(timeout))
+            status = "timeout"
+        finally:
+            if mutates:
+                rmtree(target, ignore_errors=True)
+        if status == "timeout":
+            break
+    samples.sort()
+    return samples[len(samples) // 2], status
+
+def commandsFor(info):
+    names = sorted(info["branches"])
+    other = names[-1] if len(names) > 1 else "master"
+    mid = info["branches"][names[len(names) // 2]]
+    return [ ("log", ["log"], False),
+             ("global-log", ["global-log"], False),
+             ("find", ["find", info["message"]], False),
+             ("status", ["status"], False),
+             ("checkout", ["checkout", other], True),
+             ("reset", ["reset", mid], True),
+             ("merge", ["merge", names[0]], True) ]
+
+def exponent(t1, t2, n1, n2):
+    if t1 <= 0 or t2 <= 0:
+        return None
+    return log(t2 / t1) / log(n2 / n1)
+
+if __name__ == "__main__":
+    scales = [1000, 10000, 100000]
+    files, branches, sizes, touch, seed = 100, 4, "uniform:64:4096", 3, 0
+    repeat, timeout = 3, 600
+    prog_dir = None
+    work_dir = "bench_repos"
+    output = join("..", "bench_output.txt")
+    keep = False
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['scales=', 'files=', 'branches=', 'sizes=', 'touch=',
+                    'seed=', 'repeat=', 'timeout=', 'progdir=', 'workdir=',
+                    'output=', 'keep', 'help'])
+        for opt, val in opts:
+            if opt == '--scales':
+                scales = [int(s) for s in val.split(",")]
+            elif opt == '--files':
+                files = int(val)
+            elif opt == '--branches':
+                branches = int(val)
+            elif opt == '--sizes':
+                sizes = val
+            elif opt == '--touch':
+                touch = int(val)
+            elif opt == '--seed':
+                seed = int(val)
+            elif opt == '--repeat':
+                repeat = int(val)
+            elif opt == '--timeout':
+                timeout = int(val)
+            elif opt == '--progdir':
+                prog_dir = abspath(val)
+            elif opt == '--workdir':
+                work_dir = val
+            elif opt == '--output':
+                output = val
+            elif opt == '--keep':
+                keep = True
+            elif opt == '--help':
+                print(USAGE)
+                sys.exit(0)
+    except (GetoptError, ValueError):
+        Usage()
+    if args:
+        Usage()
+
+    if prog_dir is None:
+        prog_dir = abspath(getcwd())
+        k = 10
+        while k > 0 and access(prog_dir, W_OK):
+            k -= 1
+            if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                break
+            prog_dir = dirname(prog_dir)
+        else:
+            print("Could not find gitlet.Main.", file=sys.stderr)
+            sys.exit(1)
+    if 'CLASSPATH' in environ:
+        environ['CLASSPATH'] = "{}:{}".format(prog_dir, environ['CLASSPATH'])
+    else:
+        environ['CLASSPATH'] = prog_dir
+
+    work_dir = abspath(work_dir)
+    results = { "files": files, "branches": branches, "sizes": sizes,
+                "touch": touch, "seed": seed, "scales": {} }
+    for n in scales:
+        dir = join(work_dir, "repo_{}".format(n))
+        print("Generating {} commits...".format(n), flush=True)
+        info = generate(dir, n)
+        timings = {}
+        for name, args, mutates in commandsFor(info):
+            secs, status = timeCommand(dir, args, mutates)
+            timings[name] = { "seconds": secs, "status": status }
+            print("  {:<12} {:10.3f}s  {}".format(name, secs, status),
+                  flush=True)
+        results["scales"][str(n)] = { "generate_seconds":
+                                      info["generate_seconds"],
+                                      "commands": timings }
+        if not keep:
+            rmtree(dir, ignore_errors=True)
+
+    print()
+    print("{:<12}".format("command")
+          + "".join("{:>12}".format(n) for n in scales)
+          + "".join("{:>14}".format("exp {}->{}".format(a, b))
+                    for a, b in zip(scales, scales[1:])))
+    names = [c[0] for c in commandsFor({"branches": {"master": ""},
+                                        "message": ""})]
+    results["exponents"] = {}
+    for name in names:
+        row = [results["scales"][str(n)]["commands"][name]["seconds"]
+               for n in scales]
+        exps = [exponent(t1, t2, n1, n2)
+                for t1, t2, n1, n2 in zip(row, row[1:], scales, scales[1:])]
+        results["exponents"][name] = exps
+        print("{:<12}".format(name)
+              + "".join("{:12.3f}".format(t) for t in row)
+              + "".join("{:>14}".format("-" if e is None
+                                        else "{:.2f}".format(e))
+                        for e in exps))
+
+    with open(output, "w") as out:
+        json.dump(results, out, indent=2)
+    if not keep:
+        rmtree(work_dir, ignore_errors=True)